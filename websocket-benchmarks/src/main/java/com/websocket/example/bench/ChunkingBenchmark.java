@@ -0,0 +1,71 @@
+package com.websocket.example.bench;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.transfer.ChunkingOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The slicing half of LargePayloadService.sendChunkedPayload: serialize the
+ * payload straight into a ChunkingOutputStream, as
+ * ChunkedTransferService.startTransfer does before it starts streaming. The
+ * paced send that follows depends on subscribers and is covered by the load
+ * harness instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkingBenchmark {
+
+    @Param({"65536", "512000"})
+    private int chunkSize;
+
+    @Param({"5000", "50000"})
+    private int devices;
+
+    private ObjectMapper objectMapper;
+    private List<DeviceData> payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        payload = DeviceFixtures.devices(devices, 42);
+    }
+
+    @Benchmark
+    public List<byte[]> slice() throws IOException {
+        ChunkingOutputStream out = new ChunkingOutputStream(chunkSize);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            objectMapper.writeValue(generator, payload);
+        }
+        out.close();
+        return out.getChunks();
+    }
+
+    /**
+     * Baseline: the same document serialized into one array.
+     */
+    @Benchmark
+    public byte[] serializeWhole() throws IOException {
+        return objectMapper.writeValueAsBytes(payload);
+    }
+}
@@ -0,0 +1,101 @@
+package com.websocket.example.bench;
+
+import com.websocket.example.broker.ClusterBus;
+import com.websocket.example.broker.ClusterBusSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-node publish latency of the cluster bus: two nodes in this JVM on
+ * loopback, node A publishes, and the sample ends when node B's listener
+ * has the frame. Reported as a latency distribution (p50/p99/p99.9).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterBusBenchmark {
+
+    private static final String DESTINATION = "/topic/device-updates/5550000007";
+
+    @Param({"512", "16384"})
+    private int payloadBytes;
+
+    private ClusterBus nodeA;
+    private ClusterBus nodeB;
+    private byte[] payload;
+    private final Map<String, String> headers = Map.of("content-type", "application/json");
+    private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InetSocketAddress addressA = freeAddress();
+        InetSocketAddress addressB = freeAddress();
+        List<InetSocketAddress> peers = List.of(addressA, addressB);
+
+        nodeA = new ClusterBus(settings("bench-a", addressA, peers),
+                destination -> false, List::of, (from, destination, headers, body) -> { });
+        nodeB = new ClusterBus(settings("bench-b", addressB, peers),
+                DESTINATION::equals, () -> List.of(DESTINATION), (from, destination, headers, body) -> received.add(body));
+        nodeA.start();
+        nodeB.start();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!nodeA.hasRemoteInterest(DESTINATION)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Nodes did not exchange interest: " + nodeA.getStats());
+            }
+            Thread.sleep(10);
+        }
+        payload = new byte[payloadBytes];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Benchmark
+    public byte[] publishToPeer() throws InterruptedException {
+        nodeA.publish(DESTINATION, headers, payload);
+        byte[] body = received.poll(5, TimeUnit.SECONDS);
+        if (body == null) {
+            throw new IllegalStateException("Publish not delivered: " + nodeA.getStats());
+        }
+        return body;
+    }
+
+    private static ClusterBusSettings settings(String nodeId, InetSocketAddress bindAddress, List<InetSocketAddress> peers) {
+        return new ClusterBusSettings(nodeId, bindAddress, peers, 65536, 8 * 1024 * 1024, 16 * 1024 * 1024, 200);
+    }
+
+    private static InetSocketAddress freeAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.websocket.example.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.compression.CodecRegistry;
+import com.websocket.example.compression.DictionaryDeflateCodec;
+import com.websocket.example.compression.GzipCodec;
+import com.websocket.example.service.LargePayloadService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LargePayloadService.compressData / decompressData for each codec, on a
+ * single device document and on device lists of the size the chunked path
+ * is meant for. The compressed size is printed once per trial so the ratio
+ * can be read next to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"gzip", "deflate-dict"})
+    private String codec;
+
+    @Param({"1", "100", "5000"})
+    private int devices;
+
+    private LargePayloadService service;
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        DictionaryDeflateCodec dictionaryCodec = new DictionaryDeflateCodec();
+        ReflectionTestUtils.setField(dictionaryCodec, "objectMapper", objectMapper);
+        dictionaryCodec.train();
+
+        service = new LargePayloadService();
+        ReflectionTestUtils.setField(service, "codecRegistry", new CodecRegistry(List.of(new GzipCodec(), dictionaryCodec)));
+
+        List<?> documents = DeviceFixtures.devices(devices, 42);
+        payload = objectMapper.writeValueAsBytes(devices == 1 ? documents.get(0) : documents);
+        compressed = service.compressData(payload, codec);
+        System.out.printf("%n%s, %d device(s): %d -> %d bytes%n", codec, devices, payload.length, compressed.length);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return service.compressData(payload, codec);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        return service.decompressData(compressed, codec);
+    }
+}
@@ -0,0 +1,50 @@
+package com.websocket.example.bench;
+
+import com.websocket.example.model.DeviceData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic device documents shaped like the ones the mobile app posts,
+ * so every run of a benchmark works on the same bytes.
+ */
+public final class DeviceFixtures {
+
+    private static final String[] WIFI = {"Connected", "Disconnected", "Connecting"};
+    private static final String[] SIGNALS = {"Excellent", "Good", "Fair", "Poor"};
+    private static final String[] MODELS = {"iPhone 14", "Samsung Galaxy S23", "Google Pixel 7", "OnePlus 11"};
+    private static final String[] FIRMWARES = {"iOS 17.1", "Android 14", "Android 13", "iOS 16.5"};
+
+    private DeviceFixtures() {
+    }
+
+    public static DeviceData device(int index, SplittableRandom random) {
+        DeviceData device = new DeviceData();
+        device.setId(String.format("%024x", index));
+        device.setDeviceId("DEVICE_" + (100000 + index));
+        device.setPhoneNumber(phoneNumber(index));
+        device.setWifiStatus(WIFI[random.nextInt(WIFI.length)]);
+        device.setBatteryLevel(random.nextInt(101));
+        device.setStorageUsed(String.valueOf(random.nextInt(512)));
+        device.setSignalStrength(SIGNALS[random.nextInt(SIGNALS.length)]);
+        device.setModel(MODELS[index % MODELS.length]);
+        device.setFirmware(FIRMWARES[index % FIRMWARES.length]);
+        device.setImei("IMEI_" + (1700000000000L + index));
+        return device;
+    }
+
+    public static List<DeviceData> devices(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<DeviceData> devices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            devices.add(device(i, random));
+        }
+        return devices;
+    }
+
+    public static String phoneNumber(int index) {
+        return String.valueOf(5550000000L + index);
+    }
+}
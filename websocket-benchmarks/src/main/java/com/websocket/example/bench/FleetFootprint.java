@@ -0,0 +1,97 @@
+package com.websocket.example.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import com.websocket.example.fleet.CompactDeviceStore;
+import com.websocket.example.model.DeviceData;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Retained heap of the latest state of a fleet: DeviceData documents in a
+ * HashMap keyed by deviceId, against the same devices in CompactDeviceStore.
+ *
+ * Each variant is filled from {@link DeviceFixtures} on its own, and its cost
+ * is the growth of used heap between two full GCs, divided by the device
+ * count. Nothing else runs in the JVM, so run it through exec:exec@footprint,
+ * which fixes the heap size and collector. The store's own
+ * estimatedBytes() is reported next to the measurement as a cross-check.
+ *
+ * Options (defaults in brackets): --devices [1000000], --seed [42],
+ * --output [footprint-result.json].
+ */
+public final class FleetFootprint {
+
+    private FleetFootprint() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        int devices = Integer.parseInt(options.getOrDefault("devices", "1000000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        File output = new File(options.getOrDefault("output", "footprint-result.json"));
+
+        long baseline = usedAfterGc();
+        Map<String, DeviceData> documents = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < devices; i++) {
+            DeviceData device = DeviceFixtures.device(i, random);
+            documents.put(device.getDeviceId(), device);
+        }
+        long hashMapBytes = usedAfterGc() - baseline;
+        Reference.reachabilityFence(documents);
+        documents = null;
+
+        baseline = usedAfterGc();
+        CompactDeviceStore store = new CompactDeviceStore();
+        random = new SplittableRandom(seed);
+        for (int i = 0; i < devices; i++) {
+            store.put(DeviceFixtures.device(i, random));
+        }
+        long compactBytes = usedAfterGc() - baseline;
+        long estimatedBytes = store.estimatedBytes();
+        Reference.reachabilityFence(store);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("devices", devices);
+        result.put("seed", seed);
+        result.put("javaVersion", System.getProperty("java.version"));
+        result.put("compressedOops", ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+                .getVMOption("UseCompressedOops").getValue());
+        result.put("hashMapBytes", hashMapBytes);
+        result.put("hashMapBytesPerDevice", (double) hashMapBytes / devices);
+        result.put("compactBytes", compactBytes);
+        result.put("compactBytesPerDevice", (double) compactBytes / devices);
+        result.put("compactEstimatedBytesPerDevice", (double) estimatedBytes / devices);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(output, result);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+        System.out.println("Results written to " + output.getAbsolutePath());
+    }
+
+    // Lowest used heap over a few full GCs, so a late finalizer or reference clearing does not count
+    private static long usedAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,80 @@
+package com.websocket.example.bench;
+
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.publish.DeviceUpdateFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of one DeviceData: the bare document, the envelope the
+ * per-phone topics carry, both as a Map through the generic mapper and as a
+ * DeviceUpdateFrame through the bound, pooled writer TopicPublisher uses, and
+ * parsing a telemetry request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter frameWriter;
+    private DeviceData device;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        frameWriter = objectMapper.copyWith(objectMapper.getFactory().rebuild()
+                        .recyclerPool(JsonRecyclerPools.newConcurrentDequePool())
+                        .build())
+                .writerFor(DeviceUpdateFrame.class);
+        device = DeviceFixtures.device(7, new SplittableRandom(42));
+        json = objectMapper.writeValueAsBytes(device);
+    }
+
+    @Benchmark
+    public byte[] writeDevice() throws IOException {
+        return objectMapper.writeValueAsBytes(device);
+    }
+
+    @Benchmark
+    public byte[] writeEnvelope() throws IOException {
+        Map<String, Object> message = new HashMap<>();
+        message.put("compressed", false);
+        message.put("data", device);
+        message.put("timestamp", System.currentTimeMillis());
+        message.put("version", 1L);
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] writeFrame() throws IOException {
+        return frameWriter.writeValueAsBytes(DeviceUpdateFrame.forPhoneTopic(device, 1L));
+    }
+
+    @Benchmark
+    public DeviceData readDevice() throws IOException {
+        return objectMapper.readValue(json, DeviceData.class);
+    }
+}
@@ -0,0 +1,61 @@
+package com.websocket.example.bench.load;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects raw latency samples from many threads and reports exact
+ * percentiles at the end of a run. Samples are kept, not bucketed: a load
+ * run produces at most a few million of them.
+ */
+class LatencyRecorder {
+
+    private long[] samples = new long[1 << 16];
+    private int size;
+
+    synchronized void record(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    synchronized int count() {
+        return size;
+    }
+
+    /**
+     * Summary in milliseconds: min, mean, p50, p90, p99, p99.9 and max.
+     */
+    synchronized Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("samples", size);
+        if (size == 0) {
+            return summary;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long sample : sorted) {
+            total += sample;
+        }
+        summary.put("minMs", millis(sorted[0]));
+        summary.put("meanMs", millis(total / size));
+        summary.put("p50Ms", millis(percentile(sorted, 50)));
+        summary.put("p90Ms", millis(percentile(sorted, 90)));
+        summary.put("p99Ms", millis(percentile(sorted, 99)));
+        summary.put("p999Ms", millis(percentile(sorted, 99.9)));
+        summary.put("maxMs", millis(sorted[size - 1]));
+        return summary;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
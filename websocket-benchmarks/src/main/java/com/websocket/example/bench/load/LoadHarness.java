@@ -0,0 +1,300 @@
+package com.websocket.example.bench.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.WebsocketDemoApplication;
+import com.websocket.example.bench.DeviceFixtures;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.LargePayloadService;
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Headless end-to-end load run.
+ *
+ * Starts the application against an embedded mongod (or --mongo-uri),
+ * connects --clients SockJS/STOMP clients, each subscribed to its own
+ * per-phone topic, and posts telemetry for those phones to /mobile/telemetry
+ * at a fixed --rate. Every update carries a sequence number in its firmware
+ * field; when a client receives it, publish-to-receive latency is the time
+ * since the HTTP request was sent, so it covers the write-behind batch, the
+ * Mongo round trip, conflation and the broker.
+ *
+ * Updates for the same device that are merged before delivery (write-behind
+ * batching, conflation) only deliver their latest sequence; the others are
+ * reported as superseded, not lost. Results are written as JSON to --output.
+ *
+ * Options (defaults in brackets): --clients [200], --rate updates/s [1000],
+ * --warmup-seconds [5], --duration-seconds [30], --max-in-flight [512],
+ * --max-rate-hz per-phone publish cap [0, off], --mongo-uri [embedded],
+ * --output [load-result.json].
+ */
+public class LoadHarness {
+
+    private static final String FIRMWARE_PREFIX = "bench-";
+
+    private final Map<String, String> options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LatencyRecorder latency = new LatencyRecorder();
+
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    private AtomicLongArray sentAt;
+    private AtomicIntegerArray delivered;
+    private volatile long measureFrom = Long.MAX_VALUE;
+    private volatile long measureUntil = Long.MAX_VALUE;
+
+    LoadHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        new LoadHarness(options).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        int clients = intOption("clients", 200);
+        int rate = intOption("rate", 1000);
+        int warmupSeconds = intOption("warmup-seconds", 5);
+        int durationSeconds = intOption("duration-seconds", 30);
+        int maxInFlight = intOption("max-in-flight", 512);
+        String maxRateHz = options.getOrDefault("max-rate-hz", "0");
+        File output = new File(options.getOrDefault("output", "load-result.json"));
+
+        long capacity = (long) rate * (warmupSeconds + durationSeconds + 5) + 1024;
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("rate * duration too large");
+        }
+        sentAt = new AtomicLongArray((int) capacity);
+        delivered = new AtomicIntegerArray((int) capacity);
+
+        TransitionWalker.ReachedState<RunningMongodProcess> mongod = null;
+        String mongoUri = options.get("mongo-uri");
+        if (mongoUri == null) {
+            mongod = Mongod.instance().start(Version.Main.V7_0);
+            ServerAddress address = mongod.current().getServerAddress();
+            mongoUri = "mongodb://" + address.getHost() + ":" + address.getPort() + "/loadtest";
+        }
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(WebsocketDemoApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.main.banner-mode=off",
+                        "spring.data.mongodb.uri=" + mongoUri,
+                        // A standalone mongod has no change streams; skip the startup probe, DeviceService notifies directly
+                        "changestream.enabled=false",
+                        "websocket.push.max-rate-hz=" + maxRateHz)
+                .run();
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            Map<String, Object> result = drive(port, clients, rate, warmupSeconds, durationSeconds, maxInFlight);
+            result.put("config", Map.of("clients", clients, "rate", rate, "warmupSeconds", warmupSeconds,
+                    "durationSeconds", durationSeconds, "maxInFlight", maxInFlight, "maxRateHz", maxRateHz,
+                    "mongo", options.containsKey("mongo-uri") ? "external" : "embedded"));
+
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(output, result);
+            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+            System.out.println("Results written to " + output.getAbsolutePath());
+        } finally {
+            context.close();
+            if (mongod != null) {
+                mongod.close();
+            }
+        }
+    }
+
+    private Map<String, Object> drive(int port, int clients, int rate, int warmupSeconds, int durationSeconds,
+                                      int maxInFlight) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new ByteArrayMessageConverter());
+
+        List<StompSession> sessions = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            StompSession session = stompClient.connectAsync("http://localhost:" + port + "/socket",
+                    new StompSessionHandlerAdapter() { }).get(10, TimeUnit.SECONDS);
+            session.subscribe(LargePayloadService.phoneTopic(DeviceFixtures.phoneNumber(i)), new UpdateHandler());
+            sessions.add(session);
+        }
+        System.out.println("Connected " + clients + " STOMP clients on port " + port);
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        URI telemetryUri = URI.create("http://localhost:" + port + "/mobile/telemetry");
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        SplittableRandom random = new SplittableRandom(42);
+        AtomicLong sequence = new AtomicLong();
+
+        // Send on a 1 ms tick, catching up to rate * elapsed so the offered load does not drift
+        ScheduledExecutorService driver = Executors.newSingleThreadScheduledExecutor();
+        long startedAt = System.nanoTime();
+        driver.scheduleAtFixedRate(() -> {
+            long due = (System.nanoTime() - startedAt) * rate / 1_000_000_000L;
+            while (sequence.get() < due && sequence.get() < sentAt.length()) {
+                int seq = (int) sequence.getAndIncrement();
+                if (!inFlight.tryAcquire()) {
+                    if (seq >= measureFrom) {
+                        skipped.incrementAndGet();
+                    }
+                    continue;
+                }
+                DeviceData update = DeviceFixtures.device(seq % clients, random);
+                update.setFirmware(FIRMWARE_PREFIX + seq);
+                HttpRequest request;
+                try {
+                    request = HttpRequest.newBuilder(telemetryUri)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(update)))
+                            .build();
+                } catch (IOException e) {
+                    inFlight.release();
+                    throw new IllegalStateException(e);
+                }
+                sentAt.set(seq, System.nanoTime());
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                    inFlight.release();
+                    if (seq < measureFrom || seq >= measureUntil) {
+                        return;
+                    }
+                    if (error != null) {
+                        failed.incrementAndGet();
+                    } else if (response.statusCode() == 202) {
+                        accepted.incrementAndGet();
+                    } else if (response.statusCode() == 429) {
+                        rejected.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                });
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(warmupSeconds * 1000L);
+        measureFrom = sequence.get();
+        long measureStartedAt = System.nanoTime();
+        System.out.println("Warm-up done, measuring for " + durationSeconds + "s");
+        Thread.sleep(durationSeconds * 1000L);
+        measureUntil = sequence.get();
+        double measuredSeconds = (System.nanoTime() - measureStartedAt) / 1e9;
+
+        driver.shutdown();
+        driver.awaitTermination(5, TimeUnit.SECONDS);
+        // Let in-flight requests finish and the last write-behind batch reach subscribers
+        inFlight.tryAcquire(maxInFlight, 10, TimeUnit.SECONDS);
+        Thread.sleep(2000);
+
+        for (StompSession session : sessions) {
+            session.disconnect();
+        }
+        stompClient.stop();
+
+        long sent = measureUntil - measureFrom;
+        long deliveredCount = latency.count();
+        Map<String, Object> ingest = new LinkedHashMap<>();
+        ingest.put("offered", sent);
+        ingest.put("accepted", accepted.get());
+        ingest.put("rejected", rejected.get());
+        ingest.put("failed", failed.get());
+        ingest.put("skippedAtMaxInFlight", skipped.get());
+        ingest.put("acceptedPerSecond", Math.round(accepted.get() / measuredSeconds));
+
+        Map<String, Object> delivery = new LinkedHashMap<>();
+        delivery.put("framesReceived", framesReceived.get());
+        delivery.put("delivered", deliveredCount);
+        delivery.put("superseded", Math.max(0, accepted.get() - deliveredCount));
+        delivery.put("deliveredPerSecond", Math.round(deliveredCount / measuredSeconds));
+        delivery.put("latency", latency.summary());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("measuredSeconds", Math.round(measuredSeconds * 1000) / 1000.0);
+        result.put("ingest", ingest);
+        result.put("delivery", delivery);
+        return result;
+    }
+
+    /**
+     * Records latency for every measured sequence number that reaches a
+     * client, as a full document or a merge patch.
+     */
+    private class UpdateHandler implements StompFrameHandler {
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return byte[].class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            long receivedAt = System.nanoTime();
+            framesReceived.incrementAndGet();
+            JsonNode frame;
+            try {
+                frame = objectMapper.readTree((byte[]) payload);
+            } catch (IOException e) {
+                return;
+            }
+            String firmware = frame.path("data").path("firmware").asText(frame.path("patch").path("firmware").asText(""));
+            if (!firmware.startsWith(FIRMWARE_PREFIX)) {
+                return;
+            }
+            int seq = Integer.parseInt(firmware.substring(FIRMWARE_PREFIX.length()));
+            if (seq >= measureFrom && seq < measureUntil && delivered.compareAndSet(seq, 0, 1)) {
+                latency.record(receivedAt - sentAt.get(seq));
+            }
+        }
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
@@ -0,0 +1,16 @@
+package com.websocket.example.broker;
+
+/**
+ * How topic publishes reach subscribers, selected by websocket.broker.mode.
+ */
+public enum BrokerMode {
+
+    /** In-memory simple broker; only subscribers on this node are reached. */
+    SIMPLE,
+
+    /** STOMP broker relay to an external broker (Artemis, RabbitMQ) shared by all nodes. */
+    RELAY,
+
+    /** Simple broker on every node, with publishes replicated to peers over the cluster bus. */
+    CLUSTER
+}
@@ -0,0 +1,171 @@
+package com.websocket.example.broker;
+
+import com.websocket.example.session.SessionManager;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connects the local simple broker to the cluster bus.
+ *
+ * Registered as an interceptor on the broker channel: every publish to a
+ * /topic destination on this node is also handed to the bus, which forwards
+ * it to peers that have subscribers for it. Publishes arriving from peers are
+ * sent into the local broker channel marked with their origin, so they reach
+ * local subscribers but are never forwarded again.
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.broker.mode", havingValue = "cluster")
+public class ClusterBrokerBridge implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterBrokerBridge.class);
+
+    private static final String ORIGIN_HEADER = "clusterOrigin";
+    private static final String CONTENT_TYPE = "content-type";
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    // Lazy: the broker channel is created by the same configuration that registers this interceptor
+    @Lazy
+    @Autowired
+    @Qualifier("brokerChannel")
+    private MessageChannel brokerChannel;
+
+    @Value("${websocket.broker.cluster.node-id:${spring.application.name}-${HOSTNAME:localhost}-${server.port:8080}}")
+    private String nodeId;
+
+    @Value("${websocket.broker.cluster.bind-host:0.0.0.0}")
+    private String bindHost;
+
+    @Value("${websocket.broker.cluster.port:9400}")
+    private int port;
+
+    @Value("${websocket.broker.cluster.peers:}")
+    private List<String> peers;
+
+    @Value("${websocket.broker.cluster.batch-bytes:65536}")
+    private int batchBytes;
+
+    @Value("${websocket.broker.cluster.max-pending-bytes:8388608}")
+    private long maxPendingBytes;
+
+    @Value("${websocket.broker.cluster.max-frame-bytes:16777216}")
+    private int maxFrameBytes;
+
+    @Value("${websocket.broker.cluster.reconnect-delay-ms:1000}")
+    private long reconnectDelayMs;
+
+    private ClusterBus bus;
+
+    @PostConstruct
+    public void start() {
+        List<InetSocketAddress> peerAddresses = new ArrayList<>();
+        for (String peer : peers) {
+            if (!peer.isBlank()) {
+                peerAddresses.add(parseAddress(peer.trim()));
+            }
+        }
+        ClusterBusSettings settings = new ClusterBusSettings(nodeId, new InetSocketAddress(bindHost, port), peerAddresses,
+                batchBytes, maxPendingBytes, maxFrameBytes, reconnectDelayMs);
+
+        bus = new ClusterBus(settings, sessionManager::hasLocalSubscribers, sessionManager::watchedDestinations, this::deliver);
+        try {
+            bus.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start cluster bus on port " + port, e);
+        }
+        sessionManager.setRemoteSubscribers(bus::hasRemoteInterest);
+        sessionManager.setWatchListener(bus::interestChanged);
+        log.info("Cluster bus {} listening on port {}, peers {}", nodeId, port, peerAddresses);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (bus != null) {
+            bus.stop();
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || destination == null || !destination.startsWith("/topic/")
+                || headers.containsKey(ORIGIN_HEADER)
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+
+        Map<String, String> busHeaders = new LinkedHashMap<>();
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType != null) {
+            busHeaders.put(CONTENT_TYPE, contentType.toString());
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (nativeHeaders != null) {
+            nativeHeaders.forEach((name, values) -> {
+                if (!values.isEmpty()) {
+                    busHeaders.put(name, values.get(0));
+                }
+            });
+        }
+        bus.publish(destination, busHeaders, payload);
+        return message;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(bus.getStats());
+        stats.put("port", port);
+        return stats;
+    }
+
+    private void deliver(String fromNode, String destination, Map<String, String> headers, byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        headers.forEach((name, value) -> {
+            if (CONTENT_TYPE.equals(name)) {
+                accessor.setContentType(MimeType.valueOf(value));
+            } else {
+                accessor.setNativeHeader(name, value);
+            }
+        });
+        accessor.setHeader(ORIGIN_HEADER, fromNode != null ? fromNode : "unknown");
+        brokerChannel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+    private static InetSocketAddress parseAddress(String peer) {
+        int colon = peer.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Cluster peer must be host:port, got " + peer);
+        }
+        return new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1)));
+    }
+}
@@ -0,0 +1,643 @@
+package com.websocket.example.broker;
+
+import com.websocket.example.logging.LogMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Lightweight bus that replicates topic publishes between application nodes
+ * over plain TCP, so a device update handled on one node reaches browsers
+ * connected to any other.
+ *
+ * Every node connects to every configured peer and sends on that outbound
+ * connection only; it receives on the connections its peers opened to it.
+ * Nodes tell each other which destinations they have subscribers for, and a
+ * publish is only sent to peers that want it. Frames queued for a peer are
+ * written in batches by a single selector thread, so publishers never block
+ * on the network; a peer that falls more than maxPendingBytes behind loses
+ * frames rather than stalling the others (telemetry is latest-state anyway).
+ *
+ * The bus has no Spring dependencies, so several nodes can run in one JVM.
+ *
+ * Wire format: [int length][byte type][body], where length covers type and
+ * body. Strings are written with DataOutput.writeUTF.
+ */
+public class ClusterBus {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterBus.class);
+
+    /**
+     * Receives publishes replicated from other nodes, on the bus thread.
+     */
+    public interface Listener {
+        void onPublish(String fromNode, String destination, Map<String, String> headers, byte[] payload);
+    }
+
+    private static final byte HELLO = 1;
+    private static final byte PUBLISH = 2;
+    private static final byte INTEREST = 3;
+    private static final byte INTEREST_RESET = 4;
+
+    private static final long SELECT_TIMEOUT_MS = 100;
+
+    private final ClusterBusSettings settings;
+    private final Predicate<String> localInterest;
+    private final Supplier<Collection<String>> localDestinations;
+    private final Listener listener;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread ioThread;
+    private volatile boolean running;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    // Owned by the bus thread
+    private final List<Connection> connections = new ArrayList<>();
+
+    // Outbound connections that completed the handshake, by remote node id
+    private final Map<String, Connection> peers = new ConcurrentHashMap<>();
+
+    // Destinations each remote node has subscribers for, and how many nodes want each destination
+    private final Map<String, Set<String>> interestByNode = new ConcurrentHashMap<>();
+    private final Map<String, Integer> interestCount = new ConcurrentHashMap<>();
+
+    // Local destinations whose watched state changed since the last sync
+    private final Set<String> interestChanges = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    /**
+     * @param localInterest     whether this node has subscribers for a destination
+     * @param localDestinations every destination this node has subscribers for
+     * @param listener          receives publishes from other nodes
+     */
+    public ClusterBus(ClusterBusSettings settings, Predicate<String> localInterest,
+                      Supplier<Collection<String>> localDestinations, Listener listener) {
+        this.settings = settings;
+        this.localInterest = localInterest;
+        this.localDestinations = localDestinations;
+        this.listener = listener;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        // A restarted node can rebind while connections from its previous run are in TIME_WAIT
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(settings.bindAddress());
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        for (InetSocketAddress address : settings.peers()) {
+            if (!address.equals(settings.bindAddress())) {
+                connections.add(new Connection(address));
+            }
+        }
+
+        running = true;
+        ioThread = Thread.ofPlatform().name("cluster-bus-" + settings.nodeId()).daemon(true).start(this::run);
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (ioThread != null) {
+            try {
+                ioThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Port the bus is listening on; useful when bound to port 0.
+     */
+    public int getLocalPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Replicate a publish to every peer that has subscribers for the
+     * destination. Never blocks.
+     *
+     * @return number of peers the frame was queued for
+     */
+    public int publish(String destination, Map<String, String> headers, byte[] payload) {
+        if (!interestCount.containsKey(destination)) {
+            return 0;
+        }
+        byte[] frame = null;
+        int queued = 0;
+        for (Map.Entry<String, Connection> peer : peers.entrySet()) {
+            Set<String> wanted = interestByNode.get(peer.getKey());
+            if (wanted == null || !wanted.contains(destination)) {
+                continue;
+            }
+            if (frame == null) {
+                frame = encodePublish(destination, headers, payload);
+            }
+            if (peer.getValue().enqueue(frame)) {
+                queued++;
+            } else {
+                dropped.incrementAndGet();
+            }
+        }
+        if (queued > 0) {
+            published.incrementAndGet();
+            wakeup();
+        }
+        return queued;
+    }
+
+    /**
+     * A local destination gained its first or lost its last subscriber.
+     */
+    public void interestChanged(String destination) {
+        interestChanges.add(destination);
+        wakeup();
+    }
+
+    /**
+     * Does any other node have subscribers for the destination?
+     */
+    public boolean hasRemoteInterest(String destination) {
+        return interestCount.containsKey(destination);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long queuedBytes = 0;
+        for (Connection peer : peers.values()) {
+            queuedBytes += peer.queuedBytes.get();
+        }
+        stats.put("nodeId", settings.nodeId());
+        stats.put("connectedPeers", new ArrayList<>(peers.keySet()));
+        stats.put("remoteDestinations", interestCount.size());
+        stats.put("queuedBytes", queuedBytes);
+        stats.put("published", published.get());
+        stats.put("framesSent", framesSent.get());
+        stats.put("batchesWritten", batchesWritten.get());
+        stats.put("framesReceived", framesReceived.get());
+        stats.put("dropped", dropped.get());
+        stats.put("reconnects", reconnects.get());
+        return stats;
+    }
+
+    private void wakeup() {
+        if (selector != null && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                connectDuePeers();
+                selector.select(SELECT_TIMEOUT_MS);
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                syncInterestChanges();
+                for (Connection connection : new ArrayList<>(connections)) {
+                    if (connection.channel != null && connection.channel.isConnected()) {
+                        try {
+                            connection.flush();
+                        } catch (IOException e) {
+                            close(connection, e.getMessage());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Cluster bus error: {}", e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Unexpected cluster bus error", e);
+            }
+        }
+
+        for (Connection connection : new ArrayList<>(connections)) {
+            close(connection, null);
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Error closing cluster bus: {}", e.getMessage());
+        }
+    }
+
+    private void connectDuePeers() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : connections) {
+            if (connection.address == null || connection.channel != null || now < connection.nextAttemptAt) {
+                continue;
+            }
+            try {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connection.channel = channel;
+                connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                if (channel.connect(connection.address)) {
+                    connected(connection);
+                }
+            } catch (IOException e) {
+                close(connection, e.getMessage());
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isConnectable() && connection.channel.finishConnect()) {
+                connected(connection);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException e) {
+            close(connection, e.getMessage());
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = server.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(null);
+            connection.channel = channel;
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        } catch (IOException e) {
+            log.warn("Error accepting cluster peer: {}", e.getMessage());
+        }
+    }
+
+    private void connected(Connection connection) {
+        connection.key.interestOps(SelectionKey.OP_READ);
+        // HELLO must be the first frame; anything enqueued while the connection was down is stale
+        connection.discardQueued();
+        connection.enqueue(encodeString(HELLO, settings.nodeId()));
+    }
+
+    private void read(Connection connection) throws IOException {
+        int n = connection.channel.read(connection.readBuffer);
+        if (n < 0) {
+            close(connection, "closed by peer");
+            return;
+        }
+
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 1 || length > settings.maxFrameBytes()) {
+                close(connection, "invalid frame length " + length);
+                return;
+            }
+            if (buffer.remaining() < 4 + length) {
+                if (4 + length > buffer.capacity()) {
+                    // Grow just enough for this frame
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(buffer);
+                    connection.readBuffer = larger;
+                    return;
+                }
+                break;
+            }
+            buffer.getInt();
+            byte type = buffer.get();
+            byte[] body = new byte[length - 1];
+            buffer.get(body);
+            onFrame(connection, type, body);
+            if (connection.channel == null) {
+                return; // closed while handling the frame
+            }
+        }
+        buffer.compact();
+    }
+
+    private void onFrame(Connection connection, byte type, byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        switch (type) {
+            case HELLO -> onHello(connection, in.readUTF());
+            case PUBLISH -> {
+                String destination = in.readUTF();
+                int headerCount = in.readUnsignedShort();
+                Map<String, String> headers = new LinkedHashMap<>();
+                for (int i = 0; i < headerCount; i++) {
+                    headers.put(in.readUTF(), in.readUTF());
+                }
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                framesReceived.incrementAndGet();
+                try {
+                    listener.onPublish(connection.nodeId, destination, headers, payload);
+                } catch (RuntimeException e) {
+                    log.warn(LogMarkers.EVENT, "Error delivering replicated publish to {}: {}", destination, e.getMessage());
+                }
+            }
+            case INTEREST -> {
+                String destination = in.readUTF();
+                if (in.readBoolean()) {
+                    addInterest(connection.nodeId, destination);
+                } else {
+                    removeInterest(connection.nodeId, destination);
+                }
+            }
+            case INTEREST_RESET -> clearInterest(connection.nodeId);
+            default -> close(connection, "unknown frame type " + type);
+        }
+    }
+
+    private void onHello(Connection connection, String nodeId) {
+        if (connection.address == null) {
+            // Inbound: answer so the peer knows who it is talking to
+            connection.enqueue(encodeString(HELLO, settings.nodeId()));
+            if (!nodeId.equals(settings.nodeId())) {
+                connection.nodeId = nodeId;
+            }
+            return;
+        }
+        if (nodeId.equals(settings.nodeId())) {
+            // Our own address in the peer list under another name: stop trying
+            connection.nextAttemptAt = Long.MAX_VALUE;
+            close(connection, null);
+            return;
+        }
+
+        connection.nodeId = nodeId;
+
+        peers.put(nodeId, connection);
+        connection.enqueue(encodeString(INTEREST_RESET, ""));
+        for (String destination : localDestinations.get()) {
+            connection.enqueue(encodeInterest(destination, true));
+        }
+        log.info("Cluster bus {} connected to {} at {}", settings.nodeId(), nodeId, connection.address);
+    }
+
+    private void syncInterestChanges() {
+        if (interestChanges.isEmpty()) {
+            return;
+        }
+        for (Iterator<String> it = interestChanges.iterator(); it.hasNext(); ) {
+            String destination = it.next();
+            it.remove();
+            // Send the current state rather than the event, so reordered events cannot leave a stale view
+            byte[] frame = encodeInterest(destination, localInterest.test(destination));
+            for (Connection peer : peers.values()) {
+                peer.enqueue(frame);
+            }
+        }
+    }
+
+    private void addInterest(String nodeId, String destination) {
+        if (nodeId != null && interestByNode.computeIfAbsent(nodeId, id -> ConcurrentHashMap.newKeySet()).add(destination)) {
+            interestCount.merge(destination, 1, Integer::sum);
+        }
+    }
+
+    private void removeInterest(String nodeId, String destination) {
+        Set<String> wanted = nodeId != null ? interestByNode.get(nodeId) : null;
+        if (wanted != null && wanted.remove(destination)) {
+            interestCount.computeIfPresent(destination, (d, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private void clearInterest(String nodeId) {
+        Set<String> wanted = nodeId != null ? interestByNode.remove(nodeId) : null;
+        if (wanted != null) {
+            for (String destination : wanted) {
+                interestCount.computeIfPresent(destination, (d, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    private void close(Connection connection, String reason) {
+        if (connection.channel != null && reason != null && connection.nodeId != null) {
+            log.warn("Cluster bus connection to {} closed: {}", connection.nodeId, reason);
+        }
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        if (connection.channel != null) {
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+
+        if (connection.address == null) {
+            connections.remove(connection);
+            // The peer re-sends its full interest when it reconnects
+            clearInterest(connection.nodeId);
+        } else {
+            if (connection.nodeId != null) {
+                peers.remove(connection.nodeId, connection);
+            }
+            if (connection.nextAttemptAt != Long.MAX_VALUE) {
+                connection.nextAttemptAt = System.currentTimeMillis() + settings.reconnectDelayMs();
+                reconnects.incrementAndGet();
+            }
+        }
+        connection.channel = null;
+        connection.key = null;
+        connection.nodeId = null;
+        connection.pendingWrite = null;
+        connection.readBuffer.clear();
+        connection.discardQueued();
+    }
+
+    private static byte[] encodePublish(String destination, Map<String, String> headers, byte[] payload) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(PUBLISH);
+            out.writeUTF(destination);
+            out.writeShort(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+            out.writeInt(payload.length);
+            out.write(payload);
+            return withLength(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown by in-memory streams
+        }
+    }
+
+    private static byte[] encodeInterest(String destination, boolean watched) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(destination.length() + 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(INTEREST);
+            out.writeUTF(destination);
+            out.writeBoolean(watched);
+            return withLength(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encodeString(byte type, String value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length() + 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(type);
+            out.writeUTF(value);
+            return withLength(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] withLength(byte[] frame) {
+        ByteBuffer.wrap(frame).putInt(0, frame.length - 4);
+        return frame;
+    }
+
+    /**
+     * One TCP connection: outbound to a configured peer (address set) or
+     * inbound from a peer that connected to us.
+     */
+    private class Connection {
+        private final InetSocketAddress address;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private String nodeId;
+        private long nextAttemptAt;
+
+        private ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        private final ByteBuffer batch = ByteBuffer.allocate(settings.batchBytes());
+        private ByteBuffer pendingWrite;
+
+        private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+
+        private Connection(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private boolean enqueue(byte[] frame) {
+            if (queuedBytes.addAndGet(frame.length) > settings.maxPendingBytes()) {
+                queuedBytes.addAndGet(-frame.length);
+                return false;
+            }
+            queue.add(frame);
+            return true;
+        }
+
+        /**
+         * Drop every queued frame. Publishers may still be enqueuing, so
+         * frames are taken one at a time and each one's bytes are released
+         * by whoever removes it, keeping queuedBytes equal to what is queued.
+         */
+        private void discardQueued() {
+            byte[] frame;
+            while ((frame = queue.poll()) != null) {
+                queuedBytes.addAndGet(-frame.length);
+            }
+        }
+
+        /**
+         * Write as much as the socket takes, packing queued frames into one
+         * buffer per write; waits for OP_WRITE when the socket is full.
+         */
+        private void flush() throws IOException {
+            while (true) {
+                if (pendingWrite != null) {
+                    channel.write(pendingWrite);
+                    if (pendingWrite.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    pendingWrite = null;
+                }
+
+                byte[] next = queue.peek();
+                if (next == null) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (next.length > batch.capacity()) {
+                    queue.poll();
+                    queuedBytes.addAndGet(-next.length);
+                    framesSent.incrementAndGet();
+                    pendingWrite = ByteBuffer.wrap(next);
+                } else {
+                    batch.clear();
+                    while ((next = queue.peek()) != null && next.length <= batch.remaining()) {
+                        queue.poll();
+                        queuedBytes.addAndGet(-next.length);
+                        framesSent.incrementAndGet();
+                        batch.put(next);
+                    }
+                    batch.flip();
+                    pendingWrite = batch;
+                }
+                batchesWritten.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.websocket.example.broker;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Settings for one cluster bus node.
+ *
+ * @param nodeId           unique name of this node
+ * @param bindAddress      where peers connect to this node
+ * @param peers            addresses of the other nodes (this node's own address is ignored)
+ * @param batchBytes       frames queued for a peer are written together up to this size
+ * @param maxPendingBytes  per-peer queue limit; publishes beyond it are dropped for that peer
+ * @param maxFrameBytes    largest frame accepted from a peer
+ * @param reconnectDelayMs wait before reconnecting to a peer that went away
+ */
+public record ClusterBusSettings(String nodeId, InetSocketAddress bindAddress, List<InetSocketAddress> peers,
+                                 int batchBytes, long maxPendingBytes, int maxFrameBytes, long reconnectDelayMs) {
+}
@@ -0,0 +1,229 @@
+package com.websocket.example.cache;
+
+import com.websocket.example.model.DeviceData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-process cache of device documents keyed by deviceId, with
+ * secondary indexes by phone number and Mongo _id.
+ *
+ * Eviction is LRU, bounded both by entry count and by an estimate of the
+ * bytes held. Entries written through from our own writes or from the change
+ * stream carry the time they were observed, so callers can judge freshness;
+ * entries loaded on a read miss have an unknown age (0). Reads reorder the
+ * LRU list, so all access goes through one lock; every operation under it is
+ * a few map lookups.
+ */
+@Component
+public class DeviceStateCache {
+
+    // Object headers, references and boxed integer of a DeviceData plus cache bookkeeping
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    @Value("${device-cache.max-entries:50000}")
+    private int maxEntries;
+
+    @Value("${device-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    private final LinkedHashMap<String, CachedDevice> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<String, String> deviceIdByPhone = new HashMap<>();
+    private final Map<String, String> deviceIdById = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public DeviceData get(String deviceId) {
+        CachedDevice entry;
+        lock.lock();
+        try {
+            entry = entries.get(deviceId);
+        } finally {
+            lock.unlock();
+        }
+        return record(entry);
+    }
+
+    public CachedDevice getByPhone(String phoneNumber) {
+        CachedDevice entry = null;
+        lock.lock();
+        try {
+            String deviceId = deviceIdByPhone.get(phoneNumber);
+            if (deviceId != null) {
+                entry = entries.get(deviceId);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Cache a document we just wrote or saw in the change stream.
+     */
+    public void write(DeviceData device) {
+        put(device, System.currentTimeMillis());
+    }
+
+    /**
+     * Cache a document read from Mongo on a miss; its age is unknown.
+     */
+    public void load(DeviceData device) {
+        put(device, 0);
+    }
+
+    /**
+     * Whether this exact instance is the cached state of its device, i.e. it
+     * was written here and nothing has replaced, invalidated or evicted it.
+     */
+    public boolean isCurrent(DeviceData device) {
+        if (device == null || device.getDeviceId() == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            CachedDevice entry = entries.get(device.getDeviceId());
+            return entry != null && entry.device() == device;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(String deviceId) {
+        lock.lock();
+        try {
+            if (removeEntry(deviceId) != null) {
+                invalidations.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateById(String id) {
+        lock.lock();
+        try {
+            String deviceId = deviceIdById.get(id);
+            if (deviceId != null && removeEntry(deviceId) != null) {
+                invalidations.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        lock.lock();
+        try {
+            stats.put("entries", entries.size());
+            stats.put("estimatedBytes", bytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    private DeviceData record(CachedDevice entry) {
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.device();
+    }
+
+    private void put(DeviceData device, long observedAt) {
+        if (device == null || device.getDeviceId() == null) {
+            return;
+        }
+        CachedDevice entry = new CachedDevice(device, observedAt, estimateSize(device));
+        lock.lock();
+        try {
+            removeEntry(device.getDeviceId());
+            entries.put(device.getDeviceId(), entry);
+            bytes += entry.bytes();
+            if (device.getPhoneNumber() != null) {
+                deviceIdByPhone.put(device.getPhoneNumber(), device.getDeviceId());
+            }
+            if (device.getId() != null) {
+                deviceIdById.put(device.getId(), device.getDeviceId());
+            }
+
+            Iterator<Map.Entry<String, CachedDevice>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                CachedDevice evicted = eldest.next().getValue();
+                eldest.remove();
+                unindex(evicted);
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private CachedDevice removeEntry(String deviceId) {
+        CachedDevice removed = entries.remove(deviceId);
+        if (removed != null) {
+            unindex(removed);
+        }
+        return removed;
+    }
+
+    // Caller holds the lock; the entry is already out of the LRU map
+    private void unindex(CachedDevice entry) {
+        bytes -= entry.bytes();
+        DeviceData device = entry.device();
+        if (device.getPhoneNumber() != null) {
+            deviceIdByPhone.remove(device.getPhoneNumber(), device.getDeviceId());
+        }
+        if (device.getId() != null) {
+            deviceIdById.remove(device.getId(), device.getDeviceId());
+        }
+    }
+
+    static long estimateSize(DeviceData device) {
+        return ENTRY_OVERHEAD_BYTES + 2L * (length(device.getId()) + length(device.getDeviceId())
+                + length(device.getPhoneNumber()) + length(device.getWifiStatus()) + length(device.getStorageUsed())
+                + length(device.getSignalStrength()) + length(device.getModel()) + length(device.getFirmware())
+                + length(device.getImei()));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * @param device     cached document; treat as read-only
+     * @param observedAt when this state was written or seen in the change stream, 0 if loaded on a miss
+     */
+    public record CachedDevice(DeviceData device, long observedAt, long bytes) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.websocket.example.compression;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Shared raw-deflate encoding loop. Output is written into a per-thread
+ * scratch buffer that grows as needed and is reused across messages, so the
+ * only allocation per message is the exact-size result.
+ */
+public abstract class AbstractDeflaterCodec implements PayloadCodec {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+    protected final DeflaterPool deflaterPool;
+
+    protected AbstractDeflaterCodec(DeflaterPool deflaterPool) {
+        this.deflaterPool = deflaterPool;
+    }
+
+    /**
+     * Called on a freshly borrowed (or reset) Deflater before input is set.
+     */
+    protected void prepare(Deflater deflater) {
+    }
+
+    /**
+     * Deflate the input leaving {@code headerLength} bytes free at the start
+     * and {@code trailerLength} bytes free at the end of the returned array.
+     */
+    protected byte[] deflate(byte[] data, int offset, int length, int headerLength, int trailerLength) {
+        Deflater deflater = deflaterPool.borrow();
+        try {
+            prepare(deflater);
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+
+            byte[] buffer = SCRATCH.get();
+            int position = headerLength;
+            while (!deflater.finished()) {
+                if (position == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    SCRATCH.set(buffer);
+                }
+                position += deflater.deflate(buffer, position, buffer.length - position);
+            }
+
+            byte[] result = new byte[position + trailerLength];
+            System.arraycopy(buffer, headerLength, result, headerLength, position - headerLength);
+            return result;
+        } finally {
+            deflaterPool.release(deflater);
+        }
+    }
+}
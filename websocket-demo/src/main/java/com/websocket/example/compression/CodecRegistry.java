@@ -0,0 +1,46 @@
+package com.websocket.example.compression;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All available payload codecs by name, and the negotiation rule: the first
+ * entry of the client's accept-encoding list that the server supports wins.
+ */
+@Component
+public class CodecRegistry {
+
+    private final Map<String, PayloadCodec> codecs = new LinkedHashMap<>();
+
+    @Autowired
+    public CodecRegistry(List<PayloadCodec> available) {
+        for (PayloadCodec codec : available) {
+            codecs.put(codec.name(), codec);
+        }
+    }
+
+    public PayloadCodec get(String name) {
+        return codecs.get(name);
+    }
+
+    public PayloadCodec negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+        for (String candidate : acceptEncoding.split(",")) {
+            PayloadCodec codec = codecs.get(candidate.trim());
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    public Iterable<String> names() {
+        return codecs.keySet();
+    }
+}
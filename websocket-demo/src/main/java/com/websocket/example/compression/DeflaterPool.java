@@ -0,0 +1,34 @@
+package com.websocket.example.compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of Deflater instances. A Deflater owns native zlib memory, so
+ * allocating one per message is both slow and a source of native memory churn.
+ */
+public class DeflaterPool {
+
+    private final BlockingQueue<Deflater> pool;
+    private final int level;
+    private final boolean nowrap;
+
+    public DeflaterPool(int size, int level, boolean nowrap) {
+        this.pool = new ArrayBlockingQueue<>(size);
+        this.level = level;
+        this.nowrap = nowrap;
+    }
+
+    public Deflater borrow() {
+        Deflater deflater = pool.poll();
+        return deflater != null ? deflater : new Deflater(level, nowrap);
+    }
+
+    public void release(Deflater deflater) {
+        deflater.reset();
+        if (!pool.offer(deflater)) {
+            deflater.end(); // pool is full, free the native memory now
+        }
+    }
+}
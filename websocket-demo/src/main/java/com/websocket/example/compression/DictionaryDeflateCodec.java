@@ -0,0 +1,128 @@
+package com.websocket.example.compression;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.model.DeviceData;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate with a preset dictionary trained on DeviceData JSON. Device
+ * documents are small and repetitive, so most of their bytes (field names and
+ * categorical values) are already in the dictionary and encode as back
+ * references. Clients fetch the same dictionary from /api/compression/dictionary
+ * and check it against the x-dictionary-id header.
+ */
+@Component
+public class DictionaryDeflateCodec extends AbstractDeflaterCodec {
+
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final String[] WIFI = {"Connected", "Disconnected", "Connecting"};
+    private static final String[] SIGNALS = {"Excellent", "Good", "Fair", "Poor"};
+    private static final String[] MODELS = {"iPhone 14", "Samsung Galaxy S23", "Google Pixel 7", "OnePlus 11"};
+    private static final String[] FIRMWARES = {"iOS 17.1", "Android 14", "Android 13", "iOS 16.5"};
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private byte[] dictionary;
+    private String dictionaryId;
+
+    public DictionaryDeflateCodec() {
+        super(new DeflaterPool(32, Deflater.DEFAULT_COMPRESSION, true));
+    }
+
+    @PostConstruct
+    public void train() throws IOException {
+        // zlib favours matches near the end of the dictionary, so the envelope
+        // keys every message carries go last
+        ByteArrayOutputStream samples = new ByteArrayOutputStream();
+        for (int i = 0; i < MODELS.length; i++) {
+            DeviceData sample = new DeviceData();
+            sample.setDeviceId("DEVICE_" + (1000 + i));
+            sample.setPhoneNumber("555000" + (1000 + i));
+            sample.setWifiStatus(WIFI[i % WIFI.length]);
+            sample.setBatteryLevel(20 + i * 20);
+            sample.setStorageUsed(String.valueOf(10 + i * 10));
+            sample.setSignalStrength(SIGNALS[i % SIGNALS.length]);
+            sample.setModel(MODELS[i]);
+            sample.setFirmware(FIRMWARES[i]);
+            sample.setImei("IMEI_" + (1700000000000L + i));
+            samples.write(objectMapper.writeValueAsBytes(sample));
+        }
+        samples.write("{\"compressed\":false,\"version\":1,\"phoneNumber\":\"\",\"timestamp\":1700000000000,\"data\":"
+                .getBytes(StandardCharsets.UTF_8));
+
+        byte[] trained = samples.toByteArray();
+        if (trained.length > MAX_DICTIONARY_SIZE) {
+            trained = Arrays.copyOfRange(trained, trained.length - MAX_DICTIONARY_SIZE, trained.length);
+        }
+        dictionary = trained;
+
+        CRC32 crc = new CRC32();
+        crc.update(dictionary);
+        dictionaryId = Long.toHexString(crc.getValue());
+    }
+
+    @Override
+    public String name() {
+        return "deflate-dict";
+    }
+
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    public String getDictionaryId() {
+        return dictionaryId;
+    }
+
+    @Override
+    protected void prepare(Deflater deflater) {
+        deflater.setDictionary(dictionary);
+    }
+
+    @Override
+    public byte[] encode(byte[] data, int offset, int length) {
+        return deflate(data, offset, length, 0, 0);
+    }
+
+    @Override
+    public byte[] decode(byte[] data) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(dictionary);
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // The stream never reached its final block: a cut-off frame, not a short document
+                    throw new IOException("Truncated deflate-dict payload: " + data.length
+                            + " bytes ended after " + out.size() + " decoded bytes");
+                }
+                out.write(buffer, 0, n);
+            }
+            if (inflater.getRemaining() > 0) {
+                throw new IOException("Invalid deflate-dict payload: " + inflater.getRemaining()
+                        + " bytes after the end of the stream");
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflate-dict payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
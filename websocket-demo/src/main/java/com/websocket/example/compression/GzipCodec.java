@@ -0,0 +1,57 @@
+package com.websocket.example.compression;
+
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * RFC 1952 gzip built on pooled raw Deflaters. Browsers can decode it natively
+ * with DecompressionStream('gzip').
+ */
+@Component
+public class GzipCodec extends AbstractDeflaterCodec {
+
+    private static final int HEADER_LENGTH = 10;
+    private static final int TRAILER_LENGTH = 8;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    public GzipCodec() {
+        super(new DeflaterPool(32, Deflater.DEFAULT_COMPRESSION, true));
+    }
+
+    @Override
+    public String name() {
+        return "gzip";
+    }
+
+    @Override
+    public byte[] encode(byte[] data, int offset, int length) {
+        byte[] result = deflate(data, offset, length, HEADER_LENGTH, TRAILER_LENGTH);
+        System.arraycopy(HEADER, 0, result, 0, HEADER_LENGTH);
+
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        int trailer = result.length - TRAILER_LENGTH;
+        writeIntLE(result, trailer, (int) crc.getValue());
+        writeIntLE(result, trailer + 4, length);
+        return result;
+    }
+
+    @Override
+    public byte[] decode(byte[] data) throws IOException {
+        try (GZIPInputStream gzipIn = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzipIn.readAllBytes();
+        }
+    }
+
+    private static void writeIntLE(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,20 @@
+package com.websocket.example.compression;
+
+import java.io.IOException;
+
+/**
+ * A binary payload encoding that can be negotiated per subscriber.
+ * Implementations are Spring beans and are picked up by {@link CodecRegistry}
+ * by name, so adding a codec (e.g. LZ4 or zstd) is just adding a bean.
+ */
+public interface PayloadCodec {
+
+    /**
+     * Name used in the STOMP accept-encoding / content-encoding headers.
+     */
+    String name();
+
+    byte[] encode(byte[] data, int offset, int length);
+
+    byte[] decode(byte[] data) throws IOException;
+}
@@ -0,0 +1,172 @@
+package com.websocket.example.compression;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-subscriber payload compression for STOMP.
+ *
+ * On the inbound channel it records the codec a subscription negotiated via
+ * the accept-encoding header of its SUBSCRIBE frame. On the outbound channel it
+ * replaces large JSON MESSAGE payloads with the codec's binary encoding, which
+ * the STOMP handler then sends as a binary WebSocket frame. Only sessions that
+ * connected through the raw WebSocket endpoint can negotiate, since SockJS
+ * transports are text only.
+ */
+@Component
+public class PayloadCompressionInterceptor implements ChannelInterceptor {
+
+    public static final String BINARY_CAPABLE_ATTRIBUTE = "binaryCapable";
+    public static final String ACCEPT_ENCODING_HEADER = "accept-encoding";
+    public static final String CONTENT_ENCODING_HEADER = "content-encoding";
+
+    @Autowired
+    private CodecRegistry codecRegistry;
+
+    @Autowired
+    private DictionaryDeflateCodec dictionaryCodec;
+
+    // Device documents are a few hundred bytes; deflate-dict is built for exactly those
+    @Value("${websocket.compression.threshold-bytes:256}")
+    private int thresholdBytes;
+
+    // sessionId -> subscriptionId -> negotiated codec
+    private final Map<String, Map<String, PayloadCodec>> negotiated = new ConcurrentHashMap<>();
+
+    // The broker fans one message out by calling preSend for every subscriber back
+    // to back with the same payload array, so one cached result per codec is enough
+    private final Map<String, AtomicReference<Encoded>> lastEncoded = new ConcurrentHashMap<>();
+
+    private final AtomicLong encodedMessages = new AtomicLong();
+    private final AtomicLong encodeCacheHits = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type == null) {
+            return message;
+        }
+
+        switch (type) {
+            case MESSAGE:
+                return encode(message);
+            case SUBSCRIBE:
+                onSubscribe(message);
+                break;
+            case UNSUBSCRIBE:
+                Map<String, PayloadCodec> subscriptions = negotiated.get(SimpMessageHeaderAccessor.getSessionId(headers));
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                if (subscriptions != null && subscriptionId != null) {
+                    subscriptions.remove(subscriptionId);
+                }
+                break;
+            case DISCONNECT:
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+                if (sessionId != null) {
+                    negotiated.remove(sessionId);
+                }
+                break;
+            default:
+                break;
+        }
+        return message;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("thresholdBytes", thresholdBytes);
+        stats.put("negotiatingSessions", negotiated.size());
+        stats.put("encodedMessages", encodedMessages.get());
+        stats.put("encodeCacheHits", encodeCacheHits.get());
+        stats.put("bytesIn", bytesIn.get());
+        stats.put("bytesOut", bytesOut.get());
+        stats.put("ratio", bytesIn.get() == 0 ? 0.0 : (double) bytesOut.get() / bytesIn.get());
+        return stats;
+    }
+
+    private void onSubscribe(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_CAPABLE_ATTRIBUTE))) {
+            return;
+        }
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        PayloadCodec codec = codecRegistry.negotiate(accessor.getFirstNativeHeader(ACCEPT_ENCODING_HEADER));
+        if (codec != null && accessor.getSessionId() != null && accessor.getSubscriptionId() != null) {
+            negotiated.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                    .put(accessor.getSubscriptionId(), codec);
+        }
+    }
+
+    private Message<?> encode(Message<?> message) {
+        if (!(message.getPayload() instanceof byte[] payload) || payload.length < thresholdBytes) {
+            return message;
+        }
+
+        MessageHeaders headers = message.getHeaders();
+        Map<String, PayloadCodec> subscriptions = negotiated.get(SimpMessageHeaderAccessor.getSessionId(headers));
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        PayloadCodec codec = subscriptions != null && subscriptionId != null ? subscriptions.get(subscriptionId) : null;
+        if (codec == null) {
+            return message;
+        }
+
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        MimeType mimeType = contentType instanceof MimeType type ? type
+                : contentType != null ? MimeTypeUtils.parseMimeType(contentType.toString()) : null;
+        if (mimeType != null && !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(mimeType)) {
+            return message; // already binary or not ours
+        }
+
+        byte[] encoded = encodeShared(codec, payload);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(CONTENT_ENCODING_HEADER, codec.name());
+        accessor.setNativeHeader("x-original-size", String.valueOf(payload.length));
+        if (codec == dictionaryCodec) {
+            accessor.setNativeHeader("x-dictionary-id", dictionaryCodec.getDictionaryId());
+        }
+        return MessageBuilder.createMessage(encoded, accessor.getMessageHeaders());
+    }
+
+    private byte[] encodeShared(PayloadCodec codec, byte[] payload) {
+        AtomicReference<Encoded> slot = lastEncoded.computeIfAbsent(codec.name(), name -> new AtomicReference<>());
+        Encoded cached = slot.get();
+        if (cached != null && cached.source == payload) {
+            encodeCacheHits.incrementAndGet();
+            return cached.encoded;
+        }
+
+        byte[] encoded = codec.encode(payload, 0, payload.length);
+        slot.set(new Encoded(payload, encoded));
+        encodedMessages.incrementAndGet();
+        bytesIn.addAndGet(payload.length);
+        bytesOut.addAndGet(encoded.length);
+        return encoded;
+    }
+
+    private record Encoded(byte[] source, byte[] encoded) {
+    }
+}
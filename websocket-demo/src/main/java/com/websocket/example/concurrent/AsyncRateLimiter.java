@@ -0,0 +1,151 @@
+package com.websocket.example.concurrent;
+
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking concurrency limiter for asynchronous tasks.
+ *
+ * At most {@code maxConcurrent} tasks run at once. Further tasks wait in a
+ * bounded FIFO queue without holding a thread; when the queue is full they
+ * are rejected immediately, and a task that waits longer than the acquire
+ * timeout fails with a {@link TimeoutException}. A permit is released when
+ * the task's own future completes, not when the submitting call returns.
+ */
+public class AsyncRateLimiter {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long acquireTimeoutMs;
+    private final TaskScheduler scheduler;
+
+    private final Queue<Waiter<?>> waiters = new ArrayDeque<>();
+    private int running;
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    public AsyncRateLimiter(String name, int maxConcurrent, int maxQueued, long acquireTimeoutMs, TaskScheduler scheduler) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Run {@code task} once a permit is available.
+     *
+     * @return the task's result; completed exceptionally with
+     *         {@link RejectedExecutionException} when the queue is full or
+     *         {@link TimeoutException} when no permit was granted in time
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> task) {
+        Waiter<T> waiter = new Waiter<>(task);
+        synchronized (this) {
+            if (running < maxConcurrent) {
+                running++;
+            } else if (waiters.size() < maxQueued) {
+                waiters.add(waiter);
+                waiter.timeout = scheduler.schedule(() -> expire(waiter), Instant.now().plusMillis(acquireTimeoutMs));
+                return waiter.result;
+            } else {
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(
+                        new RejectedExecutionException(name + " queue is full (" + maxQueued + " waiting)"));
+            }
+        }
+        start(waiter);
+        return waiter.result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            stats.put("running", running);
+            stats.put("queued", waiters.size());
+        }
+        long startedCount = started.get();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("maxQueued", maxQueued);
+        stats.put("started", startedCount);
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("avgWaitMillis", startedCount == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / startedCount);
+        return stats;
+    }
+
+    private <T> void start(Waiter<T> waiter) {
+        started.incrementAndGet();
+        totalWaitNanos.addAndGet(System.nanoTime() - waiter.enqueuedAt);
+        CompletionStage<T> stage;
+        try {
+            stage = waiter.task.get();
+        } catch (RuntimeException e) {
+            release();
+            waiter.result.completeExceptionally(e);
+            return;
+        }
+        stage.whenComplete((value, error) -> {
+            release();
+            if (error != null) {
+                waiter.result.completeExceptionally(error);
+            } else {
+                waiter.result.complete(value);
+            }
+        });
+    }
+
+    private void release() {
+        Waiter<?> next;
+        synchronized (this) {
+            next = waiters.poll();
+            if (next == null) {
+                running--;
+                return;
+            }
+            // The permit passes straight to the next waiter
+        }
+        if (next.timeout != null) {
+            next.timeout.cancel(false);
+        }
+        start(next);
+    }
+
+    private void expire(Waiter<?> waiter) {
+        synchronized (this) {
+            if (!waiters.remove(waiter)) {
+                return; // already started
+            }
+        }
+        timedOut.incrementAndGet();
+        waiter.result.completeExceptionally(
+                new TimeoutException(name + " permit not granted within " + acquireTimeoutMs + " ms"));
+    }
+
+    private static class Waiter<T> {
+        private final Supplier<? extends CompletionStage<T>> task;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+        private volatile ScheduledFuture<?> timeout;
+
+        private Waiter(Supplier<? extends CompletionStage<T>> task) {
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.websocket.example.config;
+
+import com.websocket.example.scheduling.HierarchicalTimingWheel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executor for blocking work (mock FCM dispatch, Mongo writes) that must stay
+ * off the common ForkJoinPool and the broker's task scheduler.
+ *
+ * spring.threads.virtual.enabled is the single switch: it makes Spring Boot
+ * run Tomcat requests on virtual threads and makes this executor start one
+ * virtual thread per task. With it off, a fixed pool of platform threads is
+ * used, so both modes can be compared under the same load.
+ *
+ * The timing wheel shares one tick task for all short-lived per-topic timers
+ * and hands expired ones to the same executor.
+ */
+@Configuration
+public class ExecutionConfiguration {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${execution.platform-pool-size:64}")
+    private int platformPoolSize;
+
+    @Value("${execution.timing-wheel.tick-ms:10}")
+    private long wheelTickMs;
+
+    @Value("${execution.timing-wheel.wheel-size:64}")
+    private int wheelSize;
+
+    @Value("${execution.timing-wheel.levels:4}")
+    private int wheelLevels;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Bean(destroyMethod = "close")
+    public ExecutorService blockingIoExecutor() {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("io-virtual-", 0).factory());
+        }
+        return Executors.newFixedThreadPool(platformPoolSize, Thread.ofPlatform().name("io-", 0).daemon(true).factory());
+    }
+
+    @Bean(destroyMethod = "stop")
+    public HierarchicalTimingWheel timingWheel() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(wheelTickMs, wheelSize, wheelLevels, blockingIoExecutor());
+        wheel.start(taskScheduler);
+        return wheel;
+    }
+}
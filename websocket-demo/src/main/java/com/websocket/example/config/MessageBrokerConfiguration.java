@@ -0,0 +1,29 @@
+package com.websocket.example.config;
+
+import com.websocket.example.session.QueueingSubProtocolWebSocketHandler;
+import com.websocket.example.session.WebSocketSessionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+/**
+ * What {@code @EnableWebSocketMessageBroker} imports, with the STOMP session
+ * handler swapped for one that leaves outbound buffering to our per-session
+ * queues. The broker itself is configured in {@link WebSocketConfiguration}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MessageBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                       AbstractSubscribableChannel clientOutboundChannel) {
+        return new QueueingSubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel, sessionRegistry);
+    }
+}
@@ -1,29 +1,147 @@
 package com.websocket.example.config;
 
+import com.websocket.example.broker.BrokerMode;
+import com.websocket.example.broker.ClusterBrokerBridge;
+import com.websocket.example.compression.PayloadCompressionInterceptor;
+import com.websocket.example.logging.MdcChannelInterceptor;
+import com.websocket.example.metrics.MessagingMetrics;
+import com.websocket.example.session.OutboundPolicy;
+import com.websocket.example.session.SessionTrackingHandlerDecorator;
+import com.websocket.example.session.WebSocketSessionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfiguration implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private PayloadCompressionInterceptor compressionInterceptor;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private MessagingMetrics messagingMetrics;
+
+    @Autowired
+    private MdcChannelInterceptor mdcChannelInterceptor;
+
+    @Value("${websocket.outbound.queue-limit-bytes:262144}")
+    private int outboundQueueLimitBytes;
+
+    @Value("${websocket.outbound.queue-limit-messages:256}")
+    private int outboundQueueLimitMessages;
+
+    @Value("${websocket.outbound.disconnect-threshold-bytes:2097152}")
+    private int outboundDisconnectThresholdBytes;
+
+    @Value("${websocket.outbound.send-time-limit-ms:10000}")
+    private long outboundSendTimeLimitMs;
+
+    @Value("${websocket.outbound.drop-oldest-prefixes:/topic/device-updates}")
+    private List<String> dropOldestPrefixes;
+
+    // Messages held per SockJS HTTP session while no polling request is open
+    @Value("${websocket.sockjs.http-message-cache-size:100}")
+    private int httpMessageCacheSize;
+
+    @Value("${websocket.broker.mode:simple}")
+    private BrokerMode brokerMode;
+
+    @Value("${websocket.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${websocket.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${websocket.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${websocket.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${websocket.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    // Only present in cluster mode
+    @Autowired(required = false)
+    private ClusterBrokerBridge clusterBrokerBridge;
+
+    // Channel executors: a bounded platform pool, or one virtual thread per message
+    @Value("${websocket.channels.inbound.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean inboundVirtualThreads;
+
+    @Value("${websocket.channels.inbound.core-pool-size:16}")
+    private int inboundCorePoolSize;
+
+    @Value("${websocket.channels.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${websocket.channels.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${websocket.channels.outbound.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean outboundVirtualThreads;
+
+    @Value("${websocket.channels.outbound.core-pool-size:32}")
+    private int outboundCorePoolSize;
+
+    @Value("${websocket.channels.outbound.max-pool-size:64}")
+    private int outboundMaxPoolSize;
+
+    @Value("${websocket.channels.outbound.queue-capacity:50000}")
+    private int outboundQueueCapacity;
+
+    @Value("${websocket.channels.keep-alive-seconds:60}")
+    private int channelKeepAliveSeconds;
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry stompEndpointRegistry) {
         stompEndpointRegistry.addEndpoint("/socket")
             .setAllowedOrigins("http://localhost:4200")
             .withSockJS()
             .setStreamBytesLimit(1024 * 1024) // 1MB for SockJS streaming
-            .setHttpMessageCacheSize(2000)
+            .setHttpMessageCacheSize(httpMessageCacheSize)
             .setDisconnectDelay(30 * 1000); // 30 seconds
+
+        // Plain WebSocket endpoint for clients that can receive binary (compressed) frames
+        stompEndpointRegistry.addEndpoint("/socket-ws")
+            .setAllowedOrigins("http://localhost:4200")
+            .addInterceptors(new HandshakeInterceptor() {
+                @Override
+                public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                               WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                    attributes.put(PayloadCompressionInterceptor.BINARY_CAPABLE_ATTRIBUTE, true);
+                    return true;
+                }
+
+                @Override
+                public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                           WebSocketHandler wsHandler, Exception exception) {
+                }
+            });
     }
 
     @Bean
@@ -39,18 +157,95 @@ public class WebSocketConfiguration implements WebSocketMessageBrokerConfigurer
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic")
-                .setTaskScheduler(taskScheduler())
-                .setHeartbeatValue(new long[]{10000, 20000});
+        if (brokerMode == BrokerMode.RELAY) {
+            // Subscriptions and fan-out live in the external broker, shared by every node
+            StompBrokerRelayRegistration relay = registry.enableStompBrokerRelay("/topic")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(10000)
+                    .setSystemHeartbeatReceiveInterval(10000)
+                    .setTaskScheduler(taskScheduler());
+            if (!relayVirtualHost.isEmpty()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+        } else {
+            registry.enableSimpleBroker("/topic")
+                    .setTaskScheduler(taskScheduler())
+                    .setHeartbeatValue(new long[]{10000, 20000});
+            if (brokerMode == BrokerMode.CLUSTER) {
+                // Local publishes are copied to peers; theirs arrive through the same channel
+                registry.configureBrokerChannel().interceptors(clusterBrokerBridge);
+            }
+        }
         registry.setApplicationDestinationPrefixes("/app");
+        // The outbound channel runs on a pool; without this, two frames for one session can swap
+        // threads and arrive out of order, and a swapped delta version forces a full resync
+        registry.setPreservePublishOrder(true);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Set explicitly so it overrides Spring Boot's default of the application task executor
+        registration.executor(websocketInboundExecutor());
+        registration.interceptors(mdcChannelInterceptor, compressionInterceptor, messagingMetrics.channelInterceptor("inbound"));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.executor(websocketOutboundExecutor());
+        registration.interceptors(mdcChannelInterceptor, compressionInterceptor, messagingMetrics.channelInterceptor("outbound"));
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Spring Boot's converters are already in the list (its configurer runs first); time them
+        messageConverters.replaceAll(messagingMetrics::timed);
+        return messageConverters.isEmpty();
+    }
+
+    @Bean
+    public Executor websocketInboundExecutor() {
+        return channelExecutor("ws-inbound-", inboundVirtualThreads, inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity);
+    }
+
+    @Bean
+    public Executor websocketOutboundExecutor() {
+        return channelExecutor("ws-outbound-", outboundVirtualThreads, outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity);
+    }
+
+    /**
+     * As beans, pool executors are shut down with the context and picked up
+     * by Actuator's executor metrics (pool size, queue depth). A full queue
+     * rejects the message rather than growing without bound.
+     */
+    private Executor channelExecutor(String threadPrefix, boolean virtualThreads,
+                                     int corePoolSize, int maxPoolSize, int queueCapacity) {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadPrefix, 0).factory());
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadPrefix);
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setKeepAliveSeconds(channelKeepAliveSeconds);
+        executor.setAllowCoreThreadTimeOut(true);
+        return executor;
     }
 
     @Override
     public void configureWebSocketTransport(WebSocketTransportRegistration registry) {
         // Configure for large payloads exceeding 400KB
         registry.setMessageSizeLimit(1024 * 1024); // 1MB max message size
-        registry.setSendBufferSizeLimit(2 * 1024 * 1024); // 2MB send buffer
-        registry.setSendTimeLimit(60 * 1000); // 60 seconds timeout
         registry.setTimeToFirstMessage(60 * 1000); // 60 seconds for first message
+        // Per-session outbound queues with slow-consumer policies; producers pace on their depth.
+        // They replace Spring's send buffer (see MessageBrokerConfiguration), so its limits are not set here
+        OutboundPolicy policy = new OutboundPolicy(outboundQueueLimitBytes, outboundQueueLimitMessages,
+                outboundDisconnectThresholdBytes, outboundSendTimeLimitMs, dropOldestPrefixes);
+        registry.addDecoratorFactory(handler -> new SessionTrackingHandlerDecorator(handler, sessionRegistry, policy));
     }
 }
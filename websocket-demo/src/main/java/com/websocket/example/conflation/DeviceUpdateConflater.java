@@ -0,0 +1,230 @@
+package com.websocket.example.conflation;
+
+import com.websocket.example.logging.LogContext;
+import com.websocket.example.logging.LogMarkers;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.scheduling.HierarchicalTimingWheel;
+import com.websocket.example.service.LargePayloadService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the publish rate of each per-phone topic independently of how often
+ * the device writes.
+ *
+ * The first update after a quiet period goes out immediately. Updates that
+ * arrive within the minimum interval after a publish are merged into one
+ * pending state (latest non-null value per field wins) and flushed once the
+ * interval has passed, on the shared timing wheel rather than a scheduled
+ * task per device. A device writing 50 times a second therefore reaches
+ * subscribers at most max-rate-hz times a second, always with its latest
+ * state.
+ *
+ * Sends happen outside the topic lock, so a slow (chunked) send never
+ * blocks writers of that phone. One thread at a time publishes a topic; an
+ * update that becomes due meanwhile is handed to it and sent next, which
+ * keeps the topic in order.
+ */
+@Component
+public class DeviceUpdateConflater {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceUpdateConflater.class);
+
+    @Autowired
+    private LargePayloadService largePayloadService;
+
+    @Autowired
+    private HierarchicalTimingWheel timingWheel;
+
+    @Value("${websocket.push.max-rate-hz:4}")
+    private double maxRateHz;
+
+    private final Map<String, TopicState> topics = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+
+    /**
+     * Publish a device update on its phone topic, now or merged into the
+     * next flush.
+     */
+    public void submit(DeviceData update) {
+        submitted.incrementAndGet();
+        if (maxRateHz <= 0) {
+            publish(update.getPhoneNumber(), update);
+            published.incrementAndGet();
+            return;
+        }
+
+        String phoneNumber = update.getPhoneNumber();
+        long intervalMs = (long) Math.ceil(1000 / maxRateHz);
+        while (true) {
+            TopicState state = topics.computeIfAbsent(LargePayloadService.phoneTopic(phoneNumber), t -> new TopicState(phoneNumber));
+            DeviceData leading;
+            synchronized (state) {
+                if (state.forgotten) {
+                    continue; // raced with forget(), retry on a fresh state
+                }
+                long now = System.currentTimeMillis();
+                if (state.pending == null && now - state.lastPublishedAt >= intervalMs) {
+                    state.lastPublishedAt = now;
+                    leading = claim(state, update);
+                } else {
+                    leading = null;
+                    if (state.pending == null) {
+                        // Copy, the caller's instance may be shared with the device cache
+                        state.pending = new DeviceData();
+                        merge(state.pending, update);
+                        long delay = state.lastPublishedAt + intervalMs - now;
+                        state.timeout = timingWheel.schedule(() -> flush(state), delay);
+                    } else {
+                        merge(state.pending, update);
+                        merged.incrementAndGet();
+                    }
+                }
+            }
+            if (leading != null) {
+                drain(state, leading);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Drop rate state and any pending update once nobody watches the topic.
+     */
+    public void forget(String topic) {
+        TopicState state = topics.remove(topic);
+        if (state != null) {
+            synchronized (state) {
+                state.forgotten = true;
+                state.pending = null;
+                state.handoff = null;
+                if (state.timeout != null) {
+                    state.timeout.cancel();
+                    state.timeout = null;
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long pending = 0;
+        for (TopicState state : topics.values()) {
+            synchronized (state) {
+                if (state.pending != null || state.handoff != null) {
+                    pending++;
+                }
+            }
+        }
+        stats.put("maxRateHz", maxRateHz);
+        stats.put("topics", topics.size());
+        stats.put("pending", pending);
+        stats.put("submitted", submitted.get());
+        stats.put("published", published.get());
+        stats.put("merged", merged.get());
+        stats.put("timingWheel", timingWheel.getStats());
+        return stats;
+    }
+
+    private void flush(TopicState state) {
+        DeviceData next;
+        synchronized (state) {
+            DeviceData pending = state.pending;
+            state.pending = null;
+            state.timeout = null;
+            if (pending == null || state.forgotten) {
+                return;
+            }
+            state.lastPublishedAt = System.currentTimeMillis();
+            next = claim(state, pending);
+        }
+        if (next != null) {
+            drain(state, next);
+        }
+    }
+
+    /**
+     * Called under the topic lock with an update that is due. Returns it if
+     * the caller now publishes the topic, or null after handing it to the
+     * thread that already does.
+     */
+    private DeviceData claim(TopicState state, DeviceData update) {
+        if (!state.publishing) {
+            state.publishing = true;
+            return update;
+        }
+        if (state.handoff == null) {
+            state.handoff = new DeviceData();
+        } else {
+            merged.incrementAndGet();
+        }
+        merge(state.handoff, update);
+        return null;
+    }
+
+    // Publish outside the topic lock, then whatever was handed off meanwhile, in order
+    private void drain(TopicState state, DeviceData update) {
+        DeviceData next = update;
+        while (next != null) {
+            publish(state.phoneNumber, next);
+            published.incrementAndGet();
+            synchronized (state) {
+                next = state.handoff;
+                state.handoff = null;
+                if (next == null) {
+                    state.publishing = false;
+                }
+            }
+        }
+    }
+
+    private void publish(String phoneNumber, DeviceData update) {
+        // Flushes run on the timing wheel's executor, away from the request that produced the update.
+        // Never called under the topic lock: a chunked send can take a while
+        try (LogContext ignored = LogContext.device(update.getDeviceId(), phoneNumber)) {
+            try {
+                largePayloadService.sendLargePayload(phoneNumber, update);
+            } catch (Exception e) {
+                log.warn(LogMarkers.EVENT, "Error publishing update for phone {}: {}", phoneNumber, e.getMessage());
+            }
+        }
+    }
+
+    private static void merge(DeviceData target, DeviceData update) {
+        if (update.getId() != null) target.setId(update.getId());
+        if (update.getDeviceId() != null) target.setDeviceId(update.getDeviceId());
+        if (update.getPhoneNumber() != null) target.setPhoneNumber(update.getPhoneNumber());
+        if (update.getWifiStatus() != null) target.setWifiStatus(update.getWifiStatus());
+        if (update.getBatteryLevel() != null) target.setBatteryLevel(update.getBatteryLevel());
+        if (update.getStorageUsed() != null) target.setStorageUsed(update.getStorageUsed());
+        if (update.getSignalStrength() != null) target.setSignalStrength(update.getSignalStrength());
+        if (update.getModel() != null) target.setModel(update.getModel());
+        if (update.getFirmware() != null) target.setFirmware(update.getFirmware());
+        if (update.getImei() != null) target.setImei(update.getImei());
+    }
+
+    private static class TopicState {
+        private final String phoneNumber;
+        private long lastPublishedAt;
+        private DeviceData pending;
+        private HierarchicalTimingWheel.Timeout timeout;
+        private boolean publishing;
+        private DeviceData handoff; // due while another thread was publishing
+        private boolean forgotten;
+
+        private TopicState(String phoneNumber) {
+            this.phoneNumber = phoneNumber;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.websocket.example.controller;
+
+import com.websocket.example.compression.DictionaryDeflateCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+// Shared dictionary for clients negotiating the deflate-dict codec
+@RestController
+@RequestMapping("/api/compression")
+@CrossOrigin(origins = "http://localhost:4200", exposedHeaders = "X-Dictionary-Id")
+public class CompressionController {
+
+    @Autowired
+    private DictionaryDeflateCodec dictionaryCodec;
+
+    @GetMapping("/dictionary")
+    public ResponseEntity<byte[]> dictionary() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header("X-Dictionary-Id", dictionaryCodec.getDictionaryId())
+                .cacheControl(CacheControl.maxAge(1, TimeUnit.DAYS))
+                .body(dictionaryCodec.getDictionary());
+    }
+}
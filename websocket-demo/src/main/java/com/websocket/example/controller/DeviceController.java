@@ -0,0 +1,159 @@
+package com.websocket.example.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.websocket.example.history.TelemetryHistoryService;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.DeviceService;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.data.domain.Page;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@RestController
+@RequestMapping("/api/devices")
+@CrossOrigin(origins = "http://localhost:4200")
+public class DeviceController {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TelemetryHistoryService historyService;
+
+    @Value("${telemetry.history.max-buckets:5000}")
+    private int maxBuckets;
+
+    @Value("${telemetry.history.default-points:500}")
+    private int defaultPoints;
+
+    @GetMapping
+    public Map<String, Object> getDevices(@RequestParam(defaultValue = "0") int page,
+                                          @RequestParam(defaultValue = "100") int size) {
+        Page<DeviceData> devices = deviceService.findPage(Math.max(0, page), Math.min(Math.max(1, size), MAX_PAGE_SIZE));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("devices", devices.getContent());
+        response.put("page", devices.getNumber());
+        response.put("size", devices.getSize());
+        response.put("totalElements", devices.getTotalElements());
+        response.put("totalPages", devices.getTotalPages());
+        return response;
+    }
+
+    // One JSON document per line, written as the cursor advances instead of building a List
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamDevices() {
+        ObjectWriter writer = objectMapper.writerFor(DeviceData.class);
+        StreamingResponseBody body = out -> {
+            try (Stream<DeviceData> devices = deviceService.streamAll()) {
+                Iterator<DeviceData> it = devices.iterator();
+                while (it.hasNext()) {
+                    out.write(writer.writeValueAsBytes(it.next()));
+                    out.write('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    // Downsampled battery/storage/signal history as a JSON array, one bucket written per cursor step.
+    // from/to are ISO-8601 instants (default: the last 24 hours), step a duration such as 1m, 1h or PT5M.
+    @GetMapping("/{deviceId}/history")
+    public ResponseEntity<?> getHistory(@PathVariable String deviceId,
+                                        @RequestParam(required = false) String from,
+                                        @RequestParam(required = false) String to,
+                                        @RequestParam(required = false) String step) {
+        Instant end;
+        Instant start;
+        try {
+            end = to != null ? Instant.parse(to) : Instant.now();
+            start = from != null ? Instant.parse(from) : end.minus(Duration.ofDays(1));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "from/to must be ISO-8601 instants: " + e.getMessage()));
+        }
+        if (!start.isBefore(end)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "from must be before to"));
+        }
+
+        long rangeMs = Duration.between(start, end).toMillis();
+        Duration bucket;
+        try {
+            bucket = step != null
+                    ? DurationStyle.detectAndParse(step)
+                    : Duration.ofMillis(Math.max(1000, (rangeMs + defaultPoints - 1) / defaultPoints));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid step: " + step));
+        }
+        if (bucket.toMillis() <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "step must be positive"));
+        }
+        // Bounds the response (and the $group state on the server) whatever the range
+        if (rangeMs / bucket.toMillis() > maxBuckets) {
+            return ResponseEntity.badRequest().body(Map.of("error",
+                    "Range/step gives more than " + maxBuckets + " buckets, use a larger step"));
+        }
+
+        StreamingResponseBody body = out -> {
+            try (Stream<Document> buckets = historyService.downsample(deviceId, start, end, bucket);
+                 JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("deviceId", deviceId);
+                json.writeStringField("from", start.toString());
+                json.writeStringField("to", end.toString());
+                json.writeNumberField("stepMs", bucket.toMillis());
+                json.writeArrayFieldStart("buckets");
+                Iterator<Document> it = buckets.iterator();
+                while (it.hasNext()) {
+                    writeBucket(json, it.next());
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private static void writeBucket(JsonGenerator json, Document bucket) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("t", bucket.getDate("_id").toInstant().toString());
+        json.writeNumberField("count", ((Number) bucket.get("n")).longValue());
+        writeSeries(json, "batteryLevel", bucket, "b");
+        writeSeries(json, "storageUsed", bucket, "s");
+        writeSeries(json, "signalStrength", bucket, "g");
+        json.writeEndObject();
+    }
+
+    private static void writeSeries(JsonGenerator json, String name, Document bucket, String field) throws IOException {
+        Number min = (Number) bucket.get(field + "Min");
+        if (min == null) {
+            return; // no reading of this field in the bucket
+        }
+        json.writeObjectFieldStart(name);
+        json.writeNumberField("min", min.doubleValue());
+        json.writeNumberField("max", ((Number) bucket.get(field + "Max")).doubleValue());
+        json.writeNumberField("avg", ((Number) bucket.get(field + "Avg")).doubleValue());
+        json.writeEndObject();
+    }
+}
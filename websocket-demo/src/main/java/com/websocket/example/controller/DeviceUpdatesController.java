@@ -0,0 +1,48 @@
+package com.websocket.example.controller;
+
+import com.websocket.example.service.LargePayloadService;
+import com.websocket.example.transfer.ChunkedTransferService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+import java.util.Map;
+
+// STOMP endpoints under /app for clients of the per-phone device topics
+@Controller
+public class DeviceUpdatesController {
+
+    @Autowired
+    private LargePayloadService largePayloadService;
+
+    @Autowired
+    private ChunkedTransferService chunkedTransferService;
+
+    // Client detected a version gap in the delta stream and needs a fresh snapshot
+    @MessageMapping("/device-updates/{phoneNumber}/resync")
+    public void resync(@DestinationVariable String phoneNumber,
+                       @Payload Map<String, Object> request,
+                       SimpMessageHeaderAccessor headers) {
+        Object subscriptionId = request.get("subscriptionId");
+        if (subscriptionId == null) {
+            return;
+        }
+        largePayloadService.sendSnapshotToSession(phoneNumber, headers.getSessionId(), subscriptionId.toString());
+    }
+
+    // Client reconnected mid-transfer and wants the chunks it is missing
+    @MessageMapping("/transfers/{transferId}/resume")
+    public void resumeTransfer(@DestinationVariable String transferId,
+                               @Payload Map<String, Object> request,
+                               SimpMessageHeaderAccessor headers) {
+        Object subscriptionId = request.get("subscriptionId");
+        Object fromChunk = request.get("fromChunk");
+        if (subscriptionId == null || !(fromChunk instanceof Number)) {
+            return;
+        }
+        chunkedTransferService.resume(transferId, ((Number) fromChunk).intValue(),
+                headers.getSessionId(), subscriptionId.toString());
+    }
+}
@@ -1,46 +1,198 @@
 package com.websocket.example.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.ingest.TelemetryBatchReader;
+import com.websocket.example.ingest.TelemetryIngestionService;
+import com.websocket.example.logging.LogContext;
+import com.websocket.example.logging.LogMarkers;
 import com.websocket.example.model.DeviceData;
 import com.websocket.example.service.DeviceService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+// Servlet endpoints; the reactive profile maps /mobile to ReactiveMobileDeviceController instead
 @RestController
 @RequestMapping("/mobile")
+@Profile("!reactive")
 public class MobileDeviceController {
 
+    private static final Logger log = LoggerFactory.getLogger(MobileDeviceController.class);
+
     @Autowired
     private DeviceService deviceService;
 
-    // Endpoint for mobile devices to send telemetry data (upsert)
+    @Autowired
+    private TelemetryIngestionService ingestionService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${telemetry.batch.max-bytes:2097152}")
+    private long batchMaxBytes;
+
+    @Value("${telemetry.batch.max-line-bytes:65536}")
+    private int batchMaxLineBytes;
+
+    // Endpoint for mobile devices to send telemetry data (queued, upserted in batches)
     @PostMapping("/telemetry")
-    public String receiveTelemetry(@RequestBody DeviceData deviceData) {
-        System.out.println("Received telemetry for device: " + deviceData.getDeviceId() + ", phone: " + deviceData.getPhoneNumber());
-        deviceService.upsert(deviceData);
-        return "Telemetry received for device: " + deviceData.getDeviceId();
+    public ResponseEntity<String> receiveTelemetry(@RequestBody DeviceData deviceData) {
+        if (deviceData.getDeviceId() == null) {
+            return ResponseEntity.badRequest().body("deviceId is required");
+        }
+        try (LogContext ignored = LogContext.device(deviceData.getDeviceId(), deviceData.getPhoneNumber())) {
+            if (!ingestionService.offer(deviceData)) {
+                log.warn(LogMarkers.EVENT, "Telemetry queue full, rejecting update for device {}", deviceData.getDeviceId());
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header("Retry-After", "1")
+                        .body("Telemetry queue full, retry later for device: " + deviceData.getDeviceId());
+            }
+            log.debug(LogMarkers.EVENT, "Telemetry accepted for device {}", deviceData.getDeviceId());
+            return ResponseEntity.accepted().body("Telemetry accepted for device: " + deviceData.getDeviceId());
+        }
+    }
+
+    // Batch telemetry as NDJSON or a JSON array, read record by record and queued like single updates.
+    // Every record gets its own status; a malformed record does not fail the rest of the batch.
+    @PostMapping("/telemetry/batch")
+    public ResponseEntity<Map<String, Object>> receiveTelemetryBatch(HttpServletRequest request) {
+        if (request.getContentLengthLong() > batchMaxBytes) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "Batch exceeds " + batchMaxBytes + " bytes"));
+        }
+
+        boolean ndjson;
+        try {
+            MediaType contentType = MediaType.parseMediaType(request.getContentType());
+            if (contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON)) {
+                ndjson = true;
+            } else if (contentType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                ndjson = false;
+            } else {
+                return unsupportedBatchType();
+            }
+        } catch (InvalidMediaTypeException e) {
+            return unsupportedBatchType();
+        }
+
+        BatchResult result = new BatchResult();
+        TelemetryBatchReader reader = new TelemetryBatchReader(objectMapper, batchMaxBytes, batchMaxLineBytes);
+        try {
+            if (ndjson) {
+                reader.readNdjson(request.getInputStream(), result);
+            } else {
+                reader.readJsonArray(request.getInputStream(), result);
+            }
+        } catch (TelemetryBatchReader.BatchTooLargeException e) {
+            // Records read so far are already queued; report them along with the error
+            Map<String, Object> body = result.toMap();
+            body.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(body);
+        } catch (IOException e) {
+            Map<String, Object> body = result.toMap();
+            body.put("error", "Error reading batch: " + e.getMessage());
+            return ResponseEntity.badRequest().body(body);
+        }
+
+        if (result.rejected == 0) {
+            return ResponseEntity.accepted().body(result.toMap());
+        }
+        // Accepted records are already queued: only a batch with nothing accepted is a plain 429,
+        // otherwise the client resends just the records marked "rejected"
+        HttpStatus status = result.accepted == 0 ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status)
+                .header("Retry-After", "1")
+                .body(result.toMap());
+    }
+
+    private ResponseEntity<Map<String, Object>> unsupportedBatchType() {
+        return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                .body(Map.of("error", "Use application/x-ndjson or application/json (array)"));
+    }
+
+    /**
+     * Queues each record as it is read and collects per-record statuses.
+     */
+    private class BatchResult implements TelemetryBatchReader.RecordHandler {
+        private final List<Map<String, Object>> results = new ArrayList<>();
+        private int accepted;
+        private int rejected;
+        private int invalid;
+        private int malformed;
+
+        @Override
+        public void onRecord(int index, DeviceData record) {
+            String status;
+            if (record.getDeviceId() == null) {
+                status = "invalid";
+                invalid++;
+            } else if (ingestionService.offer(record)) {
+                status = "accepted";
+                accepted++;
+            } else {
+                status = "rejected";
+                rejected++;
+            }
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("index", index);
+            entry.put("deviceId", record.getDeviceId());
+            entry.put("status", status);
+            if (record.getDeviceId() == null) {
+                entry.put("error", "deviceId is required");
+            }
+            results.add(entry);
+        }
+
+        @Override
+        public void onError(int index, String error) {
+            malformed++;
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("index", index);
+            entry.put("status", "malformed");
+            entry.put("error", error);
+            results.add(entry);
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> body = new HashMap<>();
+            body.put("accepted", accepted);
+            body.put("rejected", rejected);
+            body.put("invalid", invalid);
+            body.put("malformed", malformed);
+            body.put("results", results);
+            return body;
+        }
     }
 
     // Endpoint for FCM response handling (upsert)
     @PostMapping("/fcm-response/{deviceId}")
     public String handleFcmResponse(@PathVariable String deviceId, @RequestBody Map<String, Object> response) {
-        DeviceData device = deviceService.findByDeviceId(deviceId);
-        
-        if (device == null) {
-            // Create new device if not exists
-            device = new DeviceData();
-            device.setDeviceId(deviceId);
-        }
-        
-        // Update device with FCM response data
+        // Only the fields present in the response are $set, creating the device if needed
+        DeviceData update = new DeviceData();
+        update.setDeviceId(deviceId);
+
         if (response.get("wifiStatus") != null) {
-            device.setWifiStatus((String) response.get("wifiStatus"));
+            update.setWifiStatus((String) response.get("wifiStatus"));
         }
         if (response.get("batteryLevel") != null) {
-            device.setBatteryLevel((Integer) response.get("batteryLevel"));
+            update.setBatteryLevel((Integer) response.get("batteryLevel"));
         }
-        
-        deviceService.save(device);
+
+        deviceService.upsert(update);
         return "FCM response processed";
     }
 }
@@ -0,0 +1,69 @@
+package com.websocket.example.controller;
+
+import com.websocket.example.logging.LogContext;
+import com.websocket.example.logging.LogMarkers;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.ReactiveDeviceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Mobile endpoints for the reactive profile.
+ *
+ * Handlers return a Mono, so the request thread is released as soon as the
+ * write is issued and the response is completed from the Mongo driver's
+ * callback. Telemetry is upserted directly rather than through the
+ * write-behind queue; when the notification pipeline is full the update is
+ * refused with 429 before anything is written.
+ */
+@RestController
+@RequestMapping("/mobile")
+@Profile("reactive")
+public class ReactiveMobileDeviceController {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveMobileDeviceController.class);
+
+    @Autowired
+    private ReactiveDeviceService reactiveDeviceService;
+
+    @PostMapping("/telemetry")
+    public Mono<ResponseEntity<String>> receiveTelemetry(@RequestBody DeviceData deviceData) {
+        if (deviceData.getDeviceId() == null) {
+            return Mono.just(ResponseEntity.badRequest().body("deviceId is required"));
+        }
+        try (LogContext ignored = LogContext.device(deviceData.getDeviceId(), deviceData.getPhoneNumber())) {
+            if (!reactiveDeviceService.canAccept()) {
+                log.warn(LogMarkers.EVENT, "Notification pipeline full, rejecting update for device {}", deviceData.getDeviceId());
+                return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header("Retry-After", "1")
+                        .body("Notification pipeline full, retry later for device: " + deviceData.getDeviceId()));
+            }
+        }
+        return reactiveDeviceService.upsert(deviceData)
+                .map(saved -> ResponseEntity.ok("Telemetry stored for device: " + saved.getDeviceId()));
+    }
+
+    @PostMapping("/fcm-response/{deviceId}")
+    public Mono<String> handleFcmResponse(@PathVariable String deviceId, @RequestBody Map<String, Object> response) {
+        DeviceData update = new DeviceData();
+        update.setDeviceId(deviceId);
+
+        if (response.get("wifiStatus") != null) {
+            update.setWifiStatus((String) response.get("wifiStatus"));
+        }
+        if (response.get("batteryLevel") != null) {
+            update.setBatteryLevel((Integer) response.get("batteryLevel"));
+        }
+
+        return reactiveDeviceService.upsert(update)
+                .thenReturn("FCM response processed");
+    }
+}
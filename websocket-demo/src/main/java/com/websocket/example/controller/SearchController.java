@@ -1,8 +1,12 @@
 package com.websocket.example.controller;
 
-import com.websocket.example.service.FCMService;
+import com.websocket.example.search.DeviceSearchService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import java.util.HashMap;
 import java.util.Map;
 
 @RestController
@@ -11,15 +15,38 @@ import java.util.Map;
 public class SearchController {
 
     @Autowired
-    private FCMService fcmService;
+    private DeviceSearchService deviceSearchService;
 
     @PostMapping("/search-device")
-    public Map<String, String> searchDevice(@RequestBody Map<String, String> request) {
+    public ResponseEntity<Map<String, Object>> searchDevice(@RequestBody Map<String, String> request) {
         String phoneNumber = request.get("phoneNumber");
-        
-        // Send FCM to device
-        fcmService.sendDeviceInfoRequest(phoneNumber);
-        
-        return Map.of("message", "FCM request sent to device: " + phoneNumber);
+        if (phoneNumber == null || phoneNumber.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "phoneNumber is required"));
+        }
+
+        // Answer from the cache right away; a fresh reading, if requested, arrives over WebSocket
+        DeviceSearchService.SearchResult result = deviceSearchService.search(phoneNumber);
+
+        boolean refreshing = result.refreshing() && !result.refresh().isCompletedExceptionally();
+        if (!refreshing && result.device() == null) {
+            Map<String, Object> body = Map.of("message", "Too many pending FCM requests, retry shortly");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(body);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", refreshing
+                ? "FCM request sent to device: " + phoneNumber
+                : "Served recent device data for: " + phoneNumber);
+        response.put("refreshing", refreshing);
+        if (result.device() != null) {
+            response.put("data", result.device());
+        }
+        if (result.fetchedAt() > 0) {
+            response.put("fetchedAt", result.fetchedAt());
+            response.put("ageMs", System.currentTimeMillis() - result.fetchedAt());
+        }
+        return ResponseEntity.ok(response);
     }
 }
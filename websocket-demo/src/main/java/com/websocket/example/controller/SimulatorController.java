@@ -0,0 +1,48 @@
+package com.websocket.example.controller;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.simulator.DeviceSimulator;
+import com.websocket.example.simulator.SimulatorSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+// Start and stop synthetic device load; progress is on /api/stats/simulator
+@RestController
+@RequestMapping("/api/simulator")
+@CrossOrigin(origins = "http://localhost:4200")
+public class SimulatorController {
+
+    @Autowired
+    private DeviceSimulator deviceSimulator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Body fields override the simulator.* defaults, e.g. {"devices": 100000, "reportIntervalMs": 1000, "target": "http"}
+    @PostMapping("/start")
+    public ResponseEntity<Map<String, Object>> start(@RequestBody(required = false) Map<String, Object> overrides) {
+        SimulatorSettings settings = deviceSimulator.defaultSettings();
+        try {
+            if (overrides != null) {
+                objectMapper.updateValue(settings, overrides);
+            }
+            deviceSimulator.start(settings);
+        } catch (JsonMappingException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.accepted().body(deviceSimulator.getStats());
+    }
+
+    @PostMapping("/stop")
+    public Map<String, Object> stop() {
+        deviceSimulator.stop();
+        return deviceSimulator.getStats();
+    }
+}
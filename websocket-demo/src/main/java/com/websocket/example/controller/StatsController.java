@@ -0,0 +1,214 @@
+package com.websocket.example.controller;
+
+import com.websocket.example.broker.ClusterBrokerBridge;
+import com.websocket.example.cache.DeviceStateCache;
+import com.websocket.example.compression.PayloadCompressionInterceptor;
+import com.websocket.example.conflation.DeviceUpdateConflater;
+import com.websocket.example.fleet.CompactDeviceStore;
+import com.websocket.example.fleet.FleetAggregates;
+import com.websocket.example.history.TelemetryHistoryService;
+import com.websocket.example.ingest.TelemetryIngestionService;
+import com.websocket.example.listener.MongoChangeStreamListener;
+import com.websocket.example.logging.LoggingStats;
+import com.websocket.example.publish.LastValueCache;
+import com.websocket.example.publish.TopicPublisher;
+import com.websocket.example.search.DeviceSearchService;
+import com.websocket.example.service.DeviceNotificationPipeline;
+import com.websocket.example.service.FCMService;
+import com.websocket.example.session.SessionManager;
+import com.websocket.example.session.SessionMemoryManager;
+import com.websocket.example.session.WebSocketSessionRegistry;
+import com.websocket.example.simulator.DeviceSimulator;
+import com.websocket.example.transfer.ChunkedTransferService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.*;
+import java.util.HashMap;
+import java.util.Map;
+
+// Runtime counters for the performance-sensitive pipelines
+@RestController
+@RequestMapping("/api/stats")
+@CrossOrigin(origins = "http://localhost:4200")
+public class StatsController {
+
+    @Autowired
+    private TelemetryIngestionService ingestionService;
+
+    @Autowired(required = false)
+    private MongoChangeStreamListener changeStreamListener;
+
+    @Autowired
+    private PayloadCompressionInterceptor compressionInterceptor;
+
+    @Autowired
+    private ChunkedTransferService chunkedTransferService;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private SessionMemoryManager sessionMemoryManager;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private FCMService fcmService;
+
+    @Autowired
+    private DeviceSearchService deviceSearchService;
+
+    @Autowired
+    private DeviceStateCache deviceStateCache;
+
+    @Autowired
+    private CompactDeviceStore compactDeviceStore;
+
+    @Autowired
+    private FleetAggregates fleetAggregates;
+
+    @Autowired
+    private DeviceUpdateConflater updateConflater;
+
+    @Autowired(required = false)
+    private ClusterBrokerBridge clusterBrokerBridge;
+
+    @Autowired
+    private TopicPublisher topicPublisher;
+
+    @Autowired
+    private LastValueCache lastValueCache;
+
+    @Autowired
+    private DeviceSimulator deviceSimulator;
+
+    @Autowired
+    private LoggingStats loggingStats;
+
+    @Autowired(required = false)
+    private DeviceNotificationPipeline notificationPipeline;
+
+    @Autowired
+    private TelemetryHistoryService historyService;
+
+    @Value("${websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @GetMapping("/ingest")
+    public Map<String, Object> ingestStats() {
+        return ingestionService.getStats();
+    }
+
+    @GetMapping("/changestream")
+    public Map<String, Object> changeStreamStats() {
+        return changeStreamListener != null ? changeStreamListener.getStats() : Map.of("enabled", false);
+    }
+
+    @GetMapping("/compression")
+    public Map<String, Object> compressionStats() {
+        return compressionInterceptor.getStats();
+    }
+
+    @GetMapping("/transfers")
+    public Map<String, Object> transferStats() {
+        return chunkedTransferService.getStats();
+    }
+
+    @GetMapping("/subscriptions")
+    public Map<String, Object> subscriptionStats(@RequestParam(defaultValue = "100") int top) {
+        return sessionManager.getStats(top);
+    }
+
+    @GetMapping("/memory")
+    public Map<String, Object> memoryStats() {
+        return sessionMemoryManager.getStats();
+    }
+
+    @GetMapping("/fcm")
+    public Map<String, Object> fcmStats() {
+        Map<String, Object> stats = new HashMap<>(fcmService.getStats());
+        stats.put("threads", virtualThreads ? "virtual" : "platform");
+        return stats;
+    }
+
+    @GetMapping("/search")
+    public Map<String, Object> searchStats() {
+        return deviceSearchService.getStats();
+    }
+
+    @GetMapping("/cache")
+    public Map<String, Object> cacheStats() {
+        return deviceStateCache.getStats();
+    }
+
+    @GetMapping("/fleet-store")
+    public Map<String, Object> fleetStoreStats() {
+        return compactDeviceStore.getStats();
+    }
+
+    @GetMapping("/fleet")
+    public Map<String, Object> fleetStats() {
+        Map<String, Object> stats = new HashMap<>(fleetAggregates.getStats());
+        stats.put("view", fleetAggregates.snapshot());
+        return stats;
+    }
+
+    @GetMapping("/broker")
+    public Map<String, Object> brokerStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", brokerMode);
+        if (clusterBrokerBridge != null) {
+            stats.put("cluster", clusterBrokerBridge.getStats());
+        }
+        return stats;
+    }
+
+    @GetMapping("/publish")
+    public Map<String, Object> publishStats() {
+        return topicPublisher.getStats();
+    }
+
+    @GetMapping("/last-value")
+    public Map<String, Object> lastValueStats() {
+        return lastValueCache.getStats();
+    }
+
+    @GetMapping("/logging")
+    public Map<String, Object> loggingStats() {
+        return loggingStats.getStats();
+    }
+
+    @GetMapping("/reactive")
+    public Map<String, Object> reactiveStats() {
+        return notificationPipeline != null ? notificationPipeline.getStats() : Map.of("enabled", false);
+    }
+
+    @GetMapping("/history")
+    public Map<String, Object> historyStats() {
+        return historyService.getStats();
+    }
+
+    @GetMapping("/simulator")
+    public Map<String, Object> simulatorStats() {
+        return deviceSimulator.getStats();
+    }
+
+    @GetMapping("/conflation")
+    public Map<String, Object> conflationStats() {
+        return updateConflater.getStats();
+    }
+
+    @GetMapping("/outbound")
+    public Map<String, Object> outboundStats(@RequestParam(defaultValue = "20") int top) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", sessionRegistry.size());
+        stats.put("dropped", sessionRegistry.totalDropped());
+        stats.put("coalesced", sessionRegistry.totalCoalesced());
+        stats.put("deepestQueues", sessionRegistry.outboundStats(top));
+        return stats;
+    }
+}
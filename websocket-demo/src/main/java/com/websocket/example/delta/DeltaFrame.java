@@ -0,0 +1,10 @@
+package com.websocket.example.delta;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * One push on a per-phone topic: either the full device snapshot or a merge
+ * patch to apply on top of version - 1.
+ */
+public record DeltaFrame(boolean full, long version, ObjectNode body) {
+}
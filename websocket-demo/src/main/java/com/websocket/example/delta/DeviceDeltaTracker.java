@@ -0,0 +1,173 @@
+package com.websocket.example.delta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the last snapshot sent on each per-phone topic and turns every new
+ * device state into an RFC 7386 JSON merge patch against it. Each topic has
+ * its own monotonically increasing version so clients can detect gaps and ask
+ * for a full snapshot.
+ *
+ * Frames are handed to the caller's sender while the topic's lock is still
+ * held, so two publishers can never send versions out of order (which the
+ * client would see as a gap and answer with a needless resync). Senders only
+ * hand the frame to the broker; they must not block.
+ */
+@Component
+public class DeviceDeltaTracker {
+
+    private final Map<String, TopicState> states = new ConcurrentHashMap<>();
+    private final AtomicLong snapshotBytes = new AtomicLong();
+
+    /**
+     * Receives a topic's frames in version order.
+     */
+    @FunctionalInterface
+    public interface FrameSender {
+        void send(DeltaFrame frame) throws Exception;
+    }
+
+    /**
+     * Record the new state for a topic and send the resulting frame: a full
+     * frame for the first state, a patch frame for later ones, nothing when
+     * nothing changed. The frame is sent before the topic's next state can
+     * be recorded.
+     *
+     * @return whether a frame was sent
+     */
+    public boolean publishNext(String topic, ObjectNode current, FrameSender sender) throws Exception {
+        TopicState state = states.computeIfAbsent(topic, t -> new TopicState());
+        synchronized (state) {
+            DeltaFrame frame;
+            if (state.snapshot == null) {
+                state.snapshot = current;
+                state.version = 1;
+                frame = new DeltaFrame(true, state.version, current);
+            } else {
+                ObjectNode patch = diff(state.snapshot, current);
+                if (patch.isEmpty()) {
+                    return false;
+                }
+                state.snapshot = current;
+                state.version++;
+                frame = new DeltaFrame(false, state.version, patch);
+            }
+            resize(state, current);
+            sender.send(frame);
+            return true;
+        }
+    }
+
+    /**
+     * Send the current full snapshot of a topic, ordered with its patches
+     * like {@link #publishNext}.
+     *
+     * @return false if nothing has been sent on the topic yet
+     */
+    public boolean sendSnapshot(String topic, FrameSender sender) throws Exception {
+        TopicState state = states.get(topic);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            if (state.snapshot == null) {
+                return false;
+            }
+            sender.send(new DeltaFrame(true, state.version, state.snapshot));
+            return true;
+        }
+    }
+
+    public void forget(String topic) {
+        TopicState state = states.remove(topic);
+        if (state != null) {
+            synchronized (state) {
+                snapshotBytes.addAndGet(-state.bytes);
+                state.bytes = 0;
+                state.forgotten = true;
+            }
+        }
+    }
+
+    /**
+     * Approximate heap held by cached snapshots.
+     */
+    public long estimatedBytes() {
+        return snapshotBytes.get();
+    }
+
+    public int trackedTopics() {
+        return states.size();
+    }
+
+    /**
+     * RFC 7386 merge patch turning {@code source} into {@code target}:
+     * changed or added members are set, removed members are set to null and
+     * nested objects are diffed recursively.
+     */
+    static ObjectNode diff(ObjectNode source, ObjectNode target) {
+        ObjectNode patch = JsonNodeFactory.instance.objectNode();
+
+        for (Map.Entry<String, JsonNode> field : target.properties()) {
+            JsonNode before = source.get(field.getKey());
+            JsonNode after = field.getValue();
+            if (!after.equals(before)) {
+                if (before != null && before.isObject() && after.isObject()) {
+                    ObjectNode nested = diff((ObjectNode) before, (ObjectNode) after);
+                    if (!nested.isEmpty()) {
+                        patch.set(field.getKey(), nested);
+                    }
+                } else {
+                    patch.set(field.getKey(), after);
+                }
+            }
+        }
+
+        for (Map.Entry<String, JsonNode> field : source.properties()) {
+            if (!target.has(field.getKey())) {
+                patch.putNull(field.getKey());
+            }
+        }
+        return patch;
+    }
+
+    private void resize(TopicState state, ObjectNode snapshot) {
+        if (state.forgotten) {
+            return; // raced with forget(); the state is no longer reachable
+        }
+        long bytes = estimateSize(snapshot);
+        snapshotBytes.addAndGet(bytes - state.bytes);
+        state.bytes = bytes;
+    }
+
+    // Rough heap estimate: string payload plus a fixed per-node overhead
+    static long estimateSize(JsonNode node) {
+        long size = 16;
+        if (node.isTextual()) {
+            size += 2L * node.textValue().length();
+        }
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            size += 32 + 2L * field.getKey().length() + estimateSize(field.getValue());
+        }
+        if (node.isArray()) {
+            for (JsonNode element : node) {
+                size += estimateSize(element);
+            }
+        }
+        return size;
+    }
+
+    private static class TopicState {
+        private long version;
+        private ObjectNode snapshot;
+        private long bytes;
+        private boolean forgotten;
+    }
+}
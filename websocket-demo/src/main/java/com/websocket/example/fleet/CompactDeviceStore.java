@@ -0,0 +1,690 @@
+package com.websocket.example.fleet;
+
+import com.websocket.example.model.DeviceData;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Latest state of every device in the fleet, stored column by column in
+ * primitive arrays (struct of arrays) instead of one DeviceData object per
+ * device.
+ *
+ * <ul>
+ * <li>Categorical fields (wifiStatus, signalStrength, model, firmware) are
+ * dictionary codes in a short[].</li>
+ * <li>batteryLevel is a byte and storageUsed an int.</li>
+ * <li>Identifiers such as "DEVICE_1234", "+15551234567" or
+ * "IMEI_1700000000000" are split into a dictionary-coded prefix and a
+ * numeric suffix (plus its digit count, so leading zeros survive).</li>
+ * <li>The Mongo ObjectId is kept as its 12 raw bytes.</li>
+ * </ul>
+ * Anything that does not fit an encoding (a non-numeric storageUsed, an id
+ * without a numeric suffix, a full dictionary) is spilled to a side map, so
+ * conversion back to DeviceData is always lossless.
+ *
+ * Devices are located through open-addressing indexes of slot numbers, one
+ * by deviceId and one by Mongo id (change stream deletes carry only the
+ * id), so a device costs no per-entry objects at all: 68 bytes of columns
+ * and four index ints per slot, plus dictionaries and spills (see
+ * estimatedBytes()).
+ * Capacity doubles, so there are up to twice as many slots as devices.
+ * FleetFootprint in websocket-benchmarks measures the retained heap against
+ * DeviceData documents in a HashMap.
+ *
+ * DeviceData is only materialized at the edges (get/put). Writes take an
+ * exclusive lock and reads a shared one.
+ */
+@Component
+public class CompactDeviceStore {
+
+    private static final int F_ID = 0;
+    private static final int F_DEVICE_ID = 1;
+    private static final int F_PHONE = 2;
+    private static final int F_WIFI = 3;
+    private static final int F_BATTERY = 4;
+    private static final int F_STORAGE = 5;
+    private static final int F_SIGNAL = 6;
+    private static final int F_MODEL = 7;
+    private static final int F_FIRMWARE = 8;
+    private static final int F_IMEI = 9;
+    private static final int FIELDS = 10;
+
+    private static final byte BATTERY_NULL = Byte.MIN_VALUE;
+    private static final byte BATTERY_SPILLED = Byte.MIN_VALUE + 1;
+    private static final int STORAGE_NULL = Integer.MIN_VALUE;
+    private static final int STORAGE_SPILLED = Integer.MIN_VALUE + 1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int capacity;
+    private int size;
+    private int highWater; // slots [0, highWater) have been handed out at least once
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    // Columns, indexed by slot
+    private boolean[] used;
+    private int[] keyHash;
+    private int[] idHash;
+    private final ObjectIdColumn ids = new ObjectIdColumn(F_ID);
+    private final PackedIdColumn deviceIds;
+    private final PackedIdColumn phones;
+    private final PackedIdColumn imeis;
+    private final DictionaryColumn wifi = new DictionaryColumn(F_WIFI, 64);
+    private final DictionaryColumn signal = new DictionaryColumn(F_SIGNAL, 64);
+    private final DictionaryColumn model = new DictionaryColumn(F_MODEL, Short.MAX_VALUE);
+    private final DictionaryColumn firmware = new DictionaryColumn(F_FIRMWARE, Short.MAX_VALUE);
+    private byte[] battery;
+    private int[] storage;
+
+    // Identifier prefixes are shared by all identifier columns
+    private final StringDictionary prefixes = new StringDictionary(Short.MAX_VALUE);
+
+    // (slot * FIELDS + field) -> raw value that did not fit its column's encoding
+    private final Map<Long, String> spilled = new HashMap<>();
+
+    // Open-addressing indexes by deviceId and by id: slot + 1, 0 for empty
+    private int[] index;
+    private int[] idIndex;
+
+    public CompactDeviceStore() {
+        this(1024);
+    }
+
+    public CompactDeviceStore(int initialCapacity) {
+        deviceIds = new PackedIdColumn(F_DEVICE_ID);
+        phones = new PackedIdColumn(F_PHONE);
+        imeis = new PackedIdColumn(F_IMEI);
+        capacity = 0;
+        grow(Math.max(16, initialCapacity));
+        index = new int[tableSizeFor(capacity * 2)];
+        idIndex = new int[index.length];
+    }
+
+    /**
+     * Store the full state of a device, replacing what was there.
+     *
+     * @return the previous state, or null if the device was unknown
+     */
+    public DeviceData put(DeviceData device) {
+        String deviceId = device.getDeviceId();
+        if (deviceId == null) {
+            throw new IllegalArgumentException("deviceId is required");
+        }
+        int hash = mix(deviceId.hashCode());
+
+        lock.writeLock().lock();
+        try {
+            int slot = find(deviceId, hash);
+            DeviceData previous = null;
+            if (slot >= 0) {
+                previous = decode(slot);
+                clearSpills(slot);
+            } else {
+                slot = insert(deviceId, hash);
+            }
+            setFields(slot, device);
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Store a device only if it is unknown, so a bulk load never overwrites
+     * state written concurrently by a newer update.
+     *
+     * @return true if the device was added
+     */
+    public boolean putIfAbsent(DeviceData device) {
+        String deviceId = device.getDeviceId();
+        if (deviceId == null) {
+            throw new IllegalArgumentException("deviceId is required");
+        }
+        int hash = mix(deviceId.hashCode());
+
+        lock.writeLock().lock();
+        try {
+            if (find(deviceId, hash) >= 0) {
+                return false;
+            }
+            setFields(insert(deviceId, hash), device);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public DeviceData get(String deviceId) {
+        int hash = mix(deviceId.hashCode());
+        lock.readLock().lock();
+        try {
+            int slot = find(deviceId, hash);
+            return slot >= 0 ? decode(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the removed state, or null if the device was unknown
+     */
+    public DeviceData remove(String deviceId) {
+        int hash = mix(deviceId.hashCode());
+        lock.writeLock().lock();
+        try {
+            int slot = find(deviceId, hash);
+            return slot >= 0 ? removeSlot(slot) : null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the device whose current document has this Mongo id. A device
+     * that has since been stored under a new id is left alone.
+     *
+     * @return the removed state, or null if no device has this id
+     */
+    public DeviceData removeById(String id) {
+        int hash = mix(id.hashCode());
+        lock.writeLock().lock();
+        try {
+            int slot = findById(id, hash);
+            return slot >= 0 ? removeSlot(slot) : null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes held by the columns, the index and the dictionaries. Array sizes
+     * are exact; dictionary and spill entries are estimated.
+     */
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            long columns = (long) capacity * bytesPerSlot();
+            long indexBytes = 4L * index.length + 4L * idIndex.length + 4L * freeSlots.length;
+            long dictionaries = prefixes.estimatedBytes() + wifi.dictionary.estimatedBytes()
+                    + signal.dictionary.estimatedBytes() + model.dictionary.estimatedBytes()
+                    + firmware.dictionary.estimatedBytes();
+            long spills = 0;
+            for (String value : spilled.values()) {
+                spills += 96 + 2L * value.length();
+            }
+            return columns + indexBytes + dictionaries + spills;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long bytes = estimatedBytes();
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("devices", size);
+            stats.put("capacity", capacity);
+            stats.put("spilledValues", spilled.size());
+            stats.put("prefixes", prefixes.size());
+            stats.put("models", model.dictionary.size());
+            stats.put("firmwares", firmware.dictionary.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("estimatedBytes", bytes);
+        stats.put("bytesPerDevice", size() == 0 ? 0.0 : (double) bytes / size());
+        return stats;
+    }
+
+    // --- slots and index -------------------------------------------------
+
+    private int insert(String deviceId, int hash) {
+        int slot = allocate();
+        used[slot] = true;
+        keyHash[slot] = hash;
+        deviceIds.set(slot, deviceId);
+        insertIndex(slot, hash);
+        size++;
+        return slot;
+    }
+
+    private DeviceData removeSlot(int slot) {
+        DeviceData removed = decode(slot);
+        removeIndex(index, keyHash, slot);
+        if (ids.isSet(slot)) {
+            removeIndex(idIndex, idHash, slot);
+            ids.set(slot, null);
+        }
+        clearSpills(slot);
+        spilled.remove(spillKey(slot, F_DEVICE_ID));
+        used[slot] = false;
+        release(slot);
+        size--;
+        return removed;
+    }
+
+    private void setFields(int slot, DeviceData device) {
+        setId(slot, device.getId());
+        phones.set(slot, device.getPhoneNumber());
+        imeis.set(slot, device.getImei());
+        wifi.set(slot, device.getWifiStatus());
+        signal.set(slot, device.getSignalStrength());
+        model.set(slot, device.getModel());
+        firmware.set(slot, device.getFirmware());
+        setBattery(slot, device.getBatteryLevel());
+        setStorage(slot, device.getStorageUsed());
+    }
+
+    // Re-indexed only when the id actually changes, which for a given device is rare
+    private void setId(int slot, String id) {
+        if (ids.matches(slot, id)) {
+            return;
+        }
+        if (ids.isSet(slot)) {
+            removeIndex(idIndex, idHash, slot);
+        }
+        ids.set(slot, id);
+        if (id != null) {
+            idHash[slot] = mix(id.hashCode());
+            insertIndex(idIndex, slot, idHash[slot]);
+        }
+    }
+
+    private int bytesPerSlot() {
+        // used + keyHash + idHash + ObjectId(8+4+1) + 3 packed ids (2+8+1) + 4 dictionary codes (2) + battery + storage
+        return 1 + 4 + 4 + 13 + 3 * 11 + 4 * 2 + 1 + 4;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (highWater == capacity) {
+            grow(capacity * 2);
+        }
+        return highWater++;
+    }
+
+    private void release(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow(int newCapacity) {
+        used = Arrays.copyOf(used == null ? new boolean[0] : used, newCapacity);
+        keyHash = Arrays.copyOf(keyHash == null ? new int[0] : keyHash, newCapacity);
+        idHash = Arrays.copyOf(idHash == null ? new int[0] : idHash, newCapacity);
+        battery = Arrays.copyOf(battery == null ? new byte[0] : battery, newCapacity);
+        storage = Arrays.copyOf(storage == null ? new int[0] : storage, newCapacity);
+        ids.grow(newCapacity);
+        deviceIds.grow(newCapacity);
+        phones.grow(newCapacity);
+        imeis.grow(newCapacity);
+        wifi.grow(newCapacity);
+        signal.grow(newCapacity);
+        model.grow(newCapacity);
+        firmware.grow(newCapacity);
+        capacity = newCapacity;
+        if (index != null && index.length < newCapacity * 2) {
+            rehash(tableSizeFor(newCapacity * 2));
+        }
+    }
+
+    private int find(String deviceId, int hash) {
+        int mask = index.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = index[i];
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (keyHash[slot] == hash && deviceId.equals(deviceIds.get(slot))) {
+                return slot;
+            }
+        }
+    }
+
+    private int findById(String id, int hash) {
+        int mask = idIndex.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = idIndex[i];
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (idHash[slot] == hash && ids.matches(slot, id)) {
+                return slot;
+            }
+        }
+    }
+
+    private void insertIndex(int slot, int hash) {
+        insertIndex(index, slot, hash);
+    }
+
+    private static void insertIndex(int[] table, int slot, int hash) {
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    // Linear-probing deletion with backward shift, so no tombstones accumulate
+    private static void removeIndex(int[] table, int[] hashes, int slot) {
+        int mask = table.length - 1;
+        int i = hashes[slot] & mask;
+        while (table[i] != slot + 1) {
+            i = (i + 1) & mask;
+        }
+        int hole = i;
+        for (int j = (hole + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = hashes[table[j] - 1] & mask;
+            // Move j into the hole unless its home lies cyclically in (hole, j]
+            boolean stays = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+            if (!stays) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private void rehash(int tableSize) {
+        index = new int[tableSize];
+        idIndex = new int[tableSize];
+        for (int slot = 0; slot < highWater; slot++) {
+            if (used[slot]) {
+                insertIndex(index, slot, keyHash[slot]);
+                if (ids.isSet(slot)) {
+                    insertIndex(idIndex, slot, idHash[slot]);
+                }
+            }
+        }
+    }
+
+    private static int tableSizeFor(int n) {
+        return Integer.highestOneBit(Math.max(16, n - 1)) << 1;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // --- conversion ------------------------------------------------------
+
+    private DeviceData decode(int slot) {
+        DeviceData device = new DeviceData();
+        device.setId(ids.get(slot));
+        device.setDeviceId(deviceIds.get(slot));
+        device.setPhoneNumber(phones.get(slot));
+        device.setImei(imeis.get(slot));
+        device.setWifiStatus(wifi.get(slot));
+        device.setSignalStrength(signal.get(slot));
+        device.setModel(model.get(slot));
+        device.setFirmware(firmware.get(slot));
+        device.setBatteryLevel(getBattery(slot));
+        device.setStorageUsed(getStorage(slot));
+        return device;
+    }
+
+    private void setBattery(int slot, Integer level) {
+        if (level == null) {
+            battery[slot] = BATTERY_NULL;
+        } else if (level > BATTERY_SPILLED && level <= Byte.MAX_VALUE) {
+            battery[slot] = level.byteValue();
+        } else {
+            battery[slot] = BATTERY_SPILLED;
+            spilled.put(spillKey(slot, F_BATTERY), level.toString());
+        }
+    }
+
+    private Integer getBattery(int slot) {
+        byte level = battery[slot];
+        if (level == BATTERY_NULL) {
+            return null;
+        }
+        return level == BATTERY_SPILLED ? Integer.valueOf(spilled.get(spillKey(slot, F_BATTERY))) : Integer.valueOf(level);
+    }
+
+    private void setStorage(int slot, String value) {
+        if (value == null) {
+            storage[slot] = STORAGE_NULL;
+            return;
+        }
+        int parsed = parseCanonicalInt(value);
+        if (parsed != STORAGE_SPILLED) {
+            storage[slot] = parsed;
+        } else {
+            storage[slot] = STORAGE_SPILLED;
+            spilled.put(spillKey(slot, F_STORAGE), value);
+        }
+    }
+
+    private String getStorage(int slot) {
+        int value = storage[slot];
+        if (value == STORAGE_NULL) {
+            return null;
+        }
+        return value == STORAGE_SPILLED ? spilled.get(spillKey(slot, F_STORAGE)) : Integer.toString(value);
+    }
+
+    // Only values that print back identically ("35", not "035" or "+35") are packed
+    private static int parseCanonicalInt(String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > STORAGE_SPILLED && Integer.toString(parsed).equals(value)) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // not numeric
+        }
+        return STORAGE_SPILLED;
+    }
+
+    private void clearSpills(int slot) {
+        if (spilled.isEmpty()) {
+            return;
+        }
+        for (int field = 0; field < FIELDS; field++) {
+            if (field != F_DEVICE_ID) {
+                spilled.remove(spillKey(slot, field));
+            }
+        }
+    }
+
+    private static long spillKey(int slot, int field) {
+        return (long) slot * FIELDS + field;
+    }
+
+    // --- columns ---------------------------------------------------------
+
+    /**
+     * Identifier as dictionary-coded prefix + numeric suffix + suffix length.
+     * digits == 0 means null, -1 means spilled.
+     */
+    private class PackedIdColumn {
+        private static final int MAX_DIGITS = 18;
+
+        private final int field;
+        private short[] prefix = new short[0];
+        private long[] number = new long[0];
+        private byte[] digits = new byte[0];
+
+        private PackedIdColumn(int field) {
+            this.field = field;
+        }
+
+        private void grow(int newCapacity) {
+            prefix = Arrays.copyOf(prefix, newCapacity);
+            number = Arrays.copyOf(number, newCapacity);
+            digits = Arrays.copyOf(digits, newCapacity);
+        }
+
+        private void set(int slot, String value) {
+            if (value == null) {
+                digits[slot] = 0;
+                return;
+            }
+            int start = value.length();
+            while (start > 0 && value.length() - start < MAX_DIGITS && isDigit(value.charAt(start - 1))) {
+                start--;
+            }
+            int code = start < value.length() && (start == 0 || !isDigit(value.charAt(start - 1)))
+                    ? prefixes.encode(value.substring(0, start))
+                    : -1;
+            if (code < 0) {
+                digits[slot] = -1;
+                spilled.put(spillKey(slot, field), value);
+                return;
+            }
+            prefix[slot] = (short) code;
+            number[slot] = Long.parseLong(value, start, value.length(), 10);
+            digits[slot] = (byte) (value.length() - start);
+        }
+
+        private String get(int slot) {
+            int length = digits[slot];
+            if (length == 0) {
+                return null;
+            }
+            if (length < 0) {
+                return spilled.get(spillKey(slot, field));
+            }
+            String suffix = Long.toString(number[slot]);
+            StringBuilder out = new StringBuilder(prefixes.decode(prefix[slot]));
+            for (int pad = suffix.length(); pad < length; pad++) {
+                out.append('0');
+            }
+            return out.append(suffix).toString();
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+
+    /**
+     * Mongo ObjectId hex string as 8 + 4 raw bytes. state 0 = null, 1 = set, -1 = spilled.
+     */
+    private class ObjectIdColumn {
+        private final int field;
+        private long[] high = new long[0];
+        private int[] low = new int[0];
+        private byte[] state = new byte[0];
+
+        private ObjectIdColumn(int field) {
+            this.field = field;
+        }
+
+        private void grow(int newCapacity) {
+            high = Arrays.copyOf(high, newCapacity);
+            low = Arrays.copyOf(low, newCapacity);
+            state = Arrays.copyOf(state, newCapacity);
+        }
+
+        private void set(int slot, String value) {
+            if (value == null) {
+                state[slot] = 0;
+            } else if (value.length() == 24 && isLowerHex(value)) {
+                high[slot] = Long.parseUnsignedLong(value, 0, 16, 16);
+                low[slot] = Integer.parseUnsignedInt(value, 16, 24, 16);
+                state[slot] = 1;
+            } else {
+                state[slot] = -1;
+                spilled.put(spillKey(slot, field), value);
+            }
+        }
+
+        private String get(int slot) {
+            return switch (state[slot]) {
+                case 0 -> null;
+                case 1 -> String.format("%016x%08x", high[slot], low[slot]);
+                default -> spilled.get(spillKey(slot, field));
+            };
+        }
+
+        private boolean isSet(int slot) {
+            return state[slot] != 0;
+        }
+
+        // Compares without formatting the stored id back to a string
+        private boolean matches(int slot, String value) {
+            return switch (state[slot]) {
+                case 0 -> value == null;
+                case 1 -> value != null && value.length() == 24 && isLowerHex(value)
+                        && high[slot] == Long.parseUnsignedLong(value, 0, 16, 16)
+                        && low[slot] == Integer.parseUnsignedInt(value, 16, 24, 16);
+                default -> value != null && value.equals(spilled.get(spillKey(slot, field)));
+            };
+        }
+
+        private static boolean isLowerHex(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Low-cardinality string as a dictionary code. -1 = null, -2 = spilled.
+     */
+    private class DictionaryColumn {
+        private final int field;
+        private final StringDictionary dictionary;
+        private short[] codes = new short[0];
+
+        private DictionaryColumn(int field, int maxCodes) {
+            this.field = field;
+            this.dictionary = new StringDictionary(maxCodes);
+        }
+
+        private void grow(int newCapacity) {
+            codes = Arrays.copyOf(codes, newCapacity);
+        }
+
+        private void set(int slot, String value) {
+            if (value == null) {
+                codes[slot] = -1;
+                return;
+            }
+            int code = dictionary.encode(value);
+            if (code < 0) {
+                codes[slot] = -2;
+                spilled.put(spillKey(slot, field), value);
+            } else {
+                codes[slot] = (short) code;
+            }
+        }
+
+        private String get(int slot) {
+            short code = codes[slot];
+            if (code == -1) {
+                return null;
+            }
+            return code == -2 ? spilled.get(spillKey(slot, field)) : dictionary.decode(code);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.websocket.example.fleet;
+
+import com.websocket.example.logging.LogMarkers;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.publish.TopicPublisher;
+import com.websocket.example.session.SessionManager;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Fleet-wide counts (devices by firmware, model, Wi-Fi status and signal,
+ * low-battery devices, disconnected Wi-Fi by model) kept up to date from
+ * the old/new state of every write instead of scanning the collection.
+ *
+ * Each write adjusts a handful of counters, so an update costs O(1) and
+ * reading the view costs nothing per request. Counter changes are plain
+ * additions, so concurrent writes for different devices need no ordering;
+ * writes for one device are ordered by CompactDeviceStore, whose put
+ * returns the state being replaced.
+ *
+ * On startup the fleet store and the counters are filled from one streamed
+ * cursor over the devices collection. Devices written while it runs keep
+ * their newer state. The current view is published on /topic/fleet-stats
+ * at a fixed cadence when it changed and someone is subscribed, and sent to
+ * new subscribers directly. Every node keeps its own view and delivers it to
+ * its own sessions only, so no broker mode duplicates it.
+ */
+@Component
+public class FleetAggregates {
+
+    private static final Logger log = LoggerFactory.getLogger(FleetAggregates.class);
+
+    public static final String FLEET_TOPIC = "/topic/fleet-stats";
+
+    private static final String UNKNOWN = "unknown";
+
+    @Autowired
+    private CompactDeviceStore compactDeviceStore;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private TopicPublisher topicPublisher;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private ExecutorService blockingIoExecutor;
+
+    @Value("${fleet.stats.publish-interval-ms:1000}")
+    private long publishIntervalMs;
+
+    @Value("${fleet.stats.low-battery-threshold:20}")
+    private int lowBatteryThreshold;
+
+    @Value("${fleet.stats.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;
+
+    private final AtomicLong devices = new AtomicLong();
+    private final AtomicLong lowBattery = new AtomicLong();
+    private final Map<String, Long> byFirmware = new ConcurrentHashMap<>();
+    private final Map<String, Long> byModel = new ConcurrentHashMap<>();
+    private final Map<String, Long> byWifiStatus = new ConcurrentHashMap<>();
+    private final Map<String, Long> bySignal = new ConcurrentHashMap<>();
+    private final Map<String, Long> wifiDisconnectedByModel = new ConcurrentHashMap<>();
+
+    // Bumped on every change; the publisher only sends when it moved
+    private final AtomicLong version = new AtomicLong();
+    private volatile long publishedVersion = -1;
+    private volatile boolean rebuilding;
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong rebuiltDevices = new AtomicLong();
+    private volatile long rebuildMillis;
+
+    private ScheduledFuture<?> publishTask;
+
+    @PostConstruct
+    public void start() {
+        publishTask = taskScheduler.scheduleAtFixedRate(this::publishIfChanged, Duration.ofMillis(publishIntervalMs));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (publishTask != null) {
+            publishTask.cancel(false);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            blockingIoExecutor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Load every device not already in the fleet store from a cursor over
+     * the devices collection, counting each one as it is added.
+     */
+    public void rebuild() {
+        rebuilding = true;
+        long start = System.nanoTime();
+        long added = 0;
+        try (Stream<DeviceData> all = mongoTemplate.stream(new Query().with(Sort.by("deviceId")), DeviceData.class)) {
+            Iterator<DeviceData> it = all.iterator();
+            while (it.hasNext()) {
+                DeviceData device = it.next();
+                if (device.getDeviceId() != null && compactDeviceStore.putIfAbsent(device)) {
+                    apply(null, device);
+                    added++;
+                }
+            }
+            log.info("Fleet aggregates rebuilt from {} devices in {} ms", added, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.warn("Fleet aggregate rebuild stopped after {} devices: {}", added, e.getMessage());
+        } finally {
+            rebuiltDevices.set(added);
+            rebuildMillis = (System.nanoTime() - start) / 1_000_000;
+            rebuilding = false;
+        }
+    }
+
+    /**
+     * Move one device's contribution from its previous state to its current
+     * one; either may be null for an added or removed device.
+     */
+    public void apply(DeviceData previous, DeviceData current) {
+        if (previous == null && current == null) {
+            return;
+        }
+        if (previous != null) {
+            count(previous, -1);
+        }
+        if (current != null) {
+            count(current, 1);
+        }
+        updates.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    /**
+     * The current view, as published on {@link #FLEET_TOPIC}.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> view = new HashMap<>();
+        view.put("devices", devices.get());
+        view.put("lowBattery", lowBattery.get());
+        view.put("lowBatteryThreshold", lowBatteryThreshold);
+        view.put("byFirmware", new TreeMap<>(byFirmware));
+        view.put("byModel", new TreeMap<>(byModel));
+        view.put("byWifiStatus", new TreeMap<>(byWifiStatus));
+        view.put("bySignal", new TreeMap<>(bySignal));
+        view.put("wifiDisconnectedByModel", new TreeMap<>(wifiDisconnectedByModel));
+        view.put("rebuilding", rebuilding);
+        view.put("version", version.get());
+        view.put("timestamp", System.currentTimeMillis());
+        return view;
+    }
+
+    /**
+     * Send the current view to one new subscription.
+     */
+    public void sendSnapshotToSession(String sessionId, String subscriptionId) {
+        try {
+            topicPublisher.sendToSubscription(sessionId, subscriptionId, FLEET_TOPIC,
+                    topicPublisher.serialize(snapshot()), Map.of());
+        } catch (Exception e) {
+            log.warn(LogMarkers.EVENT, "Error sending fleet snapshot to session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("devices", devices.get());
+        stats.put("version", version.get());
+        stats.put("updates", updates.get());
+        stats.put("published", published.get());
+        stats.put("subscribers", sessionManager.subscriberCount(FLEET_TOPIC));
+        stats.put("rebuilding", rebuilding);
+        stats.put("rebuiltDevices", rebuiltDevices.get());
+        stats.put("rebuildMillis", rebuildMillis);
+        return stats;
+    }
+
+    private void publishIfChanged() {
+        long current = version.get();
+        if (current == publishedVersion || !sessionManager.hasLocalSubscribers(FLEET_TOPIC)) {
+            return;
+        }
+        try {
+            // Serialized once, the same bytes go to every local subscription
+            byte[] payload = topicPublisher.serialize(snapshot());
+            sessionManager.forEachSubscription(FLEET_TOPIC, (sessionId, subscriptionId) ->
+                    topicPublisher.sendToSubscription(sessionId, subscriptionId, FLEET_TOPIC, payload, Map.of()));
+            publishedVersion = current;
+            published.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("Error publishing fleet stats: {}", e.getMessage());
+        }
+    }
+
+    private void count(DeviceData device, long delta) {
+        devices.addAndGet(delta);
+        add(byFirmware, device.getFirmware(), delta);
+        add(byModel, device.getModel(), delta);
+        add(byWifiStatus, device.getWifiStatus(), delta);
+        add(bySignal, device.getSignalStrength(), delta);
+        if (device.getBatteryLevel() != null && device.getBatteryLevel() < lowBatteryThreshold) {
+            lowBattery.addAndGet(delta);
+        }
+        if (device.getWifiStatus() != null && !"Connected".equalsIgnoreCase(device.getWifiStatus())) {
+            add(wifiDisconnectedByModel, device.getModel(), delta);
+        }
+    }
+
+    // Atomic per key; a group is dropped when its count reaches zero so the view only lists live values
+    private static void add(Map<String, Long> counts, String key, long delta) {
+        counts.compute(key != null ? key : UNKNOWN, (k, count) -> {
+            long updated = (count != null ? count : 0) + delta;
+            return updated == 0 ? null : updated;
+        });
+    }
+}
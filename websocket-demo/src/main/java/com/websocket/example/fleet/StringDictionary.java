@@ -0,0 +1,52 @@
+package com.websocket.example.fleet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns small integer codes to the values of a low-cardinality field.
+ * Not thread-safe; the owning store guards it.
+ */
+class StringDictionary {
+
+    private final int maxCodes;
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private long valueBytes;
+
+    StringDictionary(int maxCodes) {
+        this.maxCodes = maxCodes;
+    }
+
+    /**
+     * @return the value's code, or -1 once the dictionary is full
+     */
+    int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (values.size() >= maxCodes) {
+            return -1;
+        }
+        int next = values.size();
+        codes.put(value, next);
+        values.add(value);
+        valueBytes += 64 + 2L * value.length(); // String, its array and the map entry
+        return next;
+    }
+
+    String decode(int code) {
+        return values.get(code);
+    }
+
+    int size() {
+        return values.size();
+    }
+
+    long estimatedBytes() {
+        return valueBytes;
+    }
+}
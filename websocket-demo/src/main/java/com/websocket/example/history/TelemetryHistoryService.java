@@ -0,0 +1,312 @@
+package com.websocket.example.history;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.Indexes;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.model.TelemetryReading;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-only history of numeric telemetry (batteryLevel, storageUsed,
+ * signalStrength) in a Mongo time-series collection.
+ *
+ * Readings are stamped on receipt, put in a bounded buffer and inserted as
+ * one unordered bulk write by size or time trigger. History is best effort:
+ * a full buffer or a failed insert drops readings (counted) rather than
+ * slowing down or rejecting the telemetry that produced them.
+ *
+ * Queries are downsampled by the server: one $group per step-sized bucket
+ * with min/max/avg per field, so the result size depends on the number of
+ * buckets and not on how many readings fall in the range.
+ */
+@Service
+public class TelemetryHistoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryHistoryService.class);
+
+    static final String COLLECTION = "deviceTelemetry";
+
+    // Non-numeric signal strengths as reported by the devices, mapped to bars
+    private static final Map<String, Integer> SIGNAL_BARS = Map.of(
+            "poor", 1, "fair", 2, "good", 3, "excellent", 4);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private ExecutorService blockingIoExecutor;
+
+    @Value("${telemetry.history.enabled:true}")
+    private boolean enabled;
+
+    @Value("${telemetry.history.queue-capacity:50000}")
+    private int queueCapacity;
+
+    @Value("${telemetry.history.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${telemetry.history.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${telemetry.history.retention-days:90}")
+    private long retentionDays;
+
+    private BlockingQueue<TelemetryReading> buffer;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+
+    private ScheduledFuture<?> flushTask;
+    private volatile boolean collectionReady;
+
+    @PostConstruct
+    public void start() {
+        buffer = new ArrayBlockingQueue<>(queueCapacity);
+        if (enabled) {
+            // Before the first flush, which would otherwise create a plain collection implicitly
+            ensureCollection();
+            flushTask = taskScheduler.scheduleWithFixedDelay(this::flush, Duration.ofMillis(flushIntervalMs));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        while (!buffer.isEmpty()) {
+            if (flush() == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Create the time-series collection and its (meta, time) index on first
+     * start. An existing plain collection of the same name is left alone
+     * (and logged), since converting it would mean rewriting all of its
+     * documents. If Mongo cannot be reached yet, the next flush tries again
+     * before it inserts anything.
+     */
+    void ensureCollection() {
+        try {
+            Document existing = mongoTemplate.getDb().listCollections()
+                    .filter(new Document("name", COLLECTION)).first();
+            if (existing == null) {
+                CollectionOptions.TimeSeriesOptions timeSeries = CollectionOptions.TimeSeriesOptions.timeSeries("t")
+                        .metaField("d")
+                        .granularity(Granularity.SECONDS);
+                if (retentionDays > 0) {
+                    timeSeries = timeSeries.expireAfter(Duration.ofDays(retentionDays));
+                }
+                mongoTemplate.createCollection(COLLECTION, CollectionOptions.empty().timeSeries(timeSeries));
+                log.info("Created time-series collection {} (retention {} days)", COLLECTION, retentionDays);
+            } else if (!"timeseries".equals(existing.getString("type"))) {
+                log.warn("Collection {} exists but is not a time-series collection; history queries will be slower",
+                        COLLECTION);
+            }
+            // MongoDB 6.3+ creates this index with the collection, earlier versions do not
+            mongoTemplate.getCollection(COLLECTION).createIndex(Indexes.ascending("d", "t"));
+            collectionReady = true;
+        } catch (MongoCommandException e) {
+            // The server answered: time-series collections need MongoDB 5.0+, plain inserts still work
+            log.warn("Could not create time-series collection {}: {}", COLLECTION, e.getMessage());
+            collectionReady = true;
+        } catch (Exception e) {
+            log.warn("Could not check time-series collection {}, will retry: {}", COLLECTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Buffer the numeric fields of a telemetry update. Updates without any
+     * numeric field (status-only FCM responses, for example) are ignored.
+     */
+    public void record(DeviceData deviceData) {
+        if (!enabled || deviceData == null || deviceData.getDeviceId() == null) {
+            return;
+        }
+        Integer battery = deviceData.getBatteryLevel();
+        Integer storage = parseInt(deviceData.getStorageUsed());
+        Integer signal = signalValue(deviceData.getSignalStrength());
+        if (battery == null && storage == null && signal == null) {
+            return;
+        }
+
+        TelemetryReading reading = new TelemetryReading();
+        reading.setTimestamp(Instant.now());
+        reading.setDeviceId(deviceData.getDeviceId());
+        reading.setBatteryLevel(battery);
+        reading.setStorageUsed(storage);
+        reading.setSignalStrength(signal);
+
+        if (!buffer.offer(reading)) {
+            dropped.incrementAndGet();
+            requestFlush();
+            return;
+        }
+        recorded.incrementAndGet();
+        if (buffer.size() >= batchSize) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Insert up to one batch of buffered readings.
+     *
+     * @return number of readings written
+     */
+    public int flush() {
+        flushRequested.set(false);
+        if (!flushLock.tryLock()) {
+            return 0; // another flush is already running
+        }
+        try {
+            if (!collectionReady) {
+                ensureCollection();
+                if (!collectionReady) {
+                    return 0; // Mongo unreachable; readings stay buffered until the next attempt
+                }
+            }
+            List<TelemetryReading> batch = new ArrayList<>(Math.min(batchSize, buffer.size()));
+            buffer.drainTo(batch, batchSize);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TelemetryReading.class, COLLECTION)
+                        .insert(batch)
+                        .execute();
+                written.addAndGet(batch.size());
+            } catch (Exception e) {
+                flushFailures.incrementAndGet();
+                dropped.addAndGet(batch.size());
+                log.warn("Telemetry history insert failed for {} readings: {}", batch.size(), e.getMessage());
+                return 0;
+            } finally {
+                flushCount.incrementAndGet();
+            }
+
+            if (buffer.size() >= batchSize) {
+                requestFlush();
+            }
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Downsampled history of one device: one document per non-empty bucket
+     * of {@code step}, aligned to {@code from}, in time order. Each has the
+     * bucket start as "_id", the reading count as "n" and min/max/avg of
+     * every field (null when the bucket has no value for it).
+     *
+     * The caller must close the stream.
+     */
+    public Stream<Document> downsample(String deviceId, Instant from, Instant to, Duration step) {
+        queries.incrementAndGet();
+        Date fromDate = Date.from(from);
+        long stepMs = step.toMillis();
+
+        // Matching on the meta and time fields lets Mongo open only the buckets in range
+        AggregationOperation match = context -> new Document("$match", new Document("d", deviceId)
+                .append("t", new Document("$gte", fromDate).append("$lt", Date.from(to))));
+        // bucket start = t - ((t - from) mod step)
+        Document bucketStart = new Document("$subtract", List.of("$t",
+                new Document("$mod", List.of(new Document("$subtract", List.of("$t", fromDate)), stepMs))));
+        Document group = new Document("_id", bucketStart).append("n", new Document("$sum", 1));
+        for (String field : List.of("b", "s", "g")) {
+            group.append(field + "Min", new Document("$min", "$" + field))
+                    .append(field + "Max", new Document("$max", "$" + field))
+                    .append(field + "Avg", new Document("$avg", "$" + field));
+        }
+        AggregationOperation groupByBucket = context -> new Document("$group", group);
+        AggregationOperation sortByBucket = context -> new Document("$sort", new Document("_id", 1));
+
+        Aggregation aggregation = Aggregation.newAggregation(match, groupByBucket, sortByBucket)
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        return mongoTemplate.aggregateStream(aggregation, COLLECTION, Document.class);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("buffered", buffer.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("batchSize", batchSize);
+        stats.put("recorded", recorded.get());
+        stats.put("dropped", dropped.get());
+        stats.put("written", written.get());
+        stats.put("flushCount", flushCount.get());
+        stats.put("flushFailures", flushFailures.get());
+        stats.put("queries", queries.get());
+        stats.put("retentionDays", retentionDays);
+        return stats;
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            blockingIoExecutor.execute(this::flush);
+        }
+    }
+
+    private static Integer parseInt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Numeric values (dBm, bars) are kept as is; named levels become 1-4 bars
+    private static Integer signalValue(String value) {
+        Integer numeric = parseInt(value);
+        if (numeric != null || value == null) {
+            return numeric;
+        }
+        return SIGNAL_BARS.get(value.trim().toLowerCase());
+    }
+}
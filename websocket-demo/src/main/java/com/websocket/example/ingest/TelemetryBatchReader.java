@@ -0,0 +1,178 @@
+package com.websocket.example.ingest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.model.DeviceData;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a telemetry batch record by record straight from the request body,
+ * either as NDJSON (one document per line) or as a JSON array, without
+ * holding the whole body in memory.
+ *
+ * NDJSON lines are parsed independently, so a malformed line is reported and
+ * the rest of the batch still goes through. In a JSON array, elements that
+ * are valid JSON but do not bind to DeviceData are reported individually; a
+ * syntax error ends the array, since there is no reliable place to resume.
+ */
+public class TelemetryBatchReader {
+
+    public interface RecordHandler {
+        void onRecord(int index, DeviceData record);
+
+        void onError(int index, String error);
+    }
+
+    /**
+     * Thrown when the body exceeds the configured size limit.
+     */
+    public static class BatchTooLargeException extends IOException {
+        public BatchTooLargeException(long limit) {
+            super("Batch exceeds " + limit + " bytes");
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+    private final int maxLineBytes;
+
+    public TelemetryBatchReader(ObjectMapper objectMapper, long maxBytes, int maxLineBytes) {
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    public void readNdjson(InputStream body, RecordHandler handler) throws IOException {
+        InputStream in = new LimitedInputStream(new BufferedInputStream(body, 8192), maxBytes);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+        int index = 0;
+        boolean overlong = false;
+        int b;
+        while (true) {
+            b = in.read();
+            if (b != '\n' && b != -1) {
+                if (line.size() < maxLineBytes) {
+                    line.write(b);
+                } else {
+                    overlong = true; // keep consuming until the end of the line
+                }
+                continue;
+            }
+
+            if (overlong) {
+                handler.onError(index++, "Line exceeds " + maxLineBytes + " bytes");
+            } else if (line.size() > 0) {
+                byte[] bytes = line.toByteArray();
+                if (!isBlank(bytes)) {
+                    parseLine(bytes, index++, handler);
+                }
+            }
+            line.reset();
+            overlong = false;
+            if (b == -1) {
+                return;
+            }
+        }
+    }
+
+    public void readJsonArray(InputStream body, RecordHandler handler) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(new LimitedInputStream(body, maxBytes))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                handler.onError(0, "Expected a JSON array of telemetry records");
+                return;
+            }
+            int index = 0;
+            while (true) {
+                JsonToken token;
+                JsonNode element;
+                try {
+                    token = parser.nextToken();
+                    if (token == null || token == JsonToken.END_ARRAY) {
+                        return;
+                    }
+                    element = parser.readValueAsTree();
+                } catch (JsonProcessingException e) {
+                    handler.onError(index, "Malformed JSON, batch truncated here: " + e.getOriginalMessage());
+                    return;
+                }
+                bind(element, index++, handler);
+            }
+        }
+    }
+
+    private void parseLine(byte[] line, int index, RecordHandler handler) {
+        JsonNode element;
+        try {
+            element = objectMapper.readTree(line);
+        } catch (IOException e) {
+            handler.onError(index, "Malformed JSON: " + (e instanceof JsonProcessingException jpe ? jpe.getOriginalMessage() : e.getMessage()));
+            return;
+        }
+        bind(element, index, handler);
+    }
+
+    private void bind(JsonNode element, int index, RecordHandler handler) {
+        if (element == null || !element.isObject()) {
+            handler.onError(index, "Expected a JSON object");
+            return;
+        }
+        try {
+            handler.onRecord(index, objectMapper.treeToValue(element, DeviceData.class));
+        } catch (JsonProcessingException e) {
+            handler.onError(index, "Invalid record: " + e.getOriginalMessage());
+        }
+    }
+
+    // Only whitespace, including the CR of CRLF line endings
+    private static boolean isBlank(byte[] bytes) {
+        for (byte c : bytes) {
+            if (c != ' ' && c != '\t' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            int n = super.read(buffer, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws BatchTooLargeException {
+            count += n;
+            if (count > limit) {
+                throw new BatchTooLargeException(limit);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.websocket.example.ingest;
+
+import com.websocket.example.history.TelemetryHistoryService;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.DeviceService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind stage for device telemetry.
+ *
+ * Accepted telemetry is merged per deviceId into a bounded pending map and
+ * flushed as one unordered bulk upsert, either when the batch size is reached
+ * or when the flush interval elapses. Callers get an immediate answer: the
+ * record was accepted, or the queue is full and they should back off.
+ */
+@Service
+public class TelemetryIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryIngestionService.class);
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private TelemetryHistoryService historyService;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    // Bulk writes block on Mongo; keep them off the scheduler threads the broker also uses
+    @Autowired
+    private ExecutorService blockingIoExecutor;
+
+    @Value("${telemetry.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${telemetry.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Value("${telemetry.ingest.flush-interval-ms:100}")
+    private long flushIntervalMs;
+
+    // deviceId -> merged pending update (insertion order is not needed, bulk writes are unordered)
+    private final Map<String, DeviceData> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong flushedRecords = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+
+    private ScheduledFuture<?> flushTask;
+
+    @PostConstruct
+    public void start() {
+        flushTask = taskScheduler.scheduleWithFixedDelay(this::flush, Duration.ofMillis(flushIntervalMs));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        // Drain whatever is left so accepted telemetry is not lost on shutdown
+        while (queueDepth.get() > 0) {
+            if (flush() == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Queue telemetry for the next bulk flush.
+     *
+     * @return false when the queue is full and the caller should retry later
+     */
+    public boolean offer(DeviceData deviceData) {
+        String deviceId = deviceData.getDeviceId();
+        boolean[] added = new boolean[1];
+        boolean[] full = new boolean[1];
+
+        pending.compute(deviceId, (id, existing) -> {
+            if (existing != null) {
+                return mergeNonNull(existing, deviceData);
+            }
+            if (queueDepth.get() >= queueCapacity) {
+                full[0] = true;
+                return null;
+            }
+            queueDepth.incrementAndGet();
+            added[0] = true;
+            return deviceData;
+        });
+
+        if (full[0]) {
+            rejected.incrementAndGet();
+            requestFlush();
+            return false;
+        }
+
+        accepted.incrementAndGet();
+        // Recorded before merging so history keeps every reading, not just the flushed one
+        historyService.record(deviceData);
+        if (!added[0]) {
+            merged.incrementAndGet();
+        }
+        if (queueDepth.get() >= batchSize) {
+            requestFlush();
+        }
+        return true;
+    }
+
+    /**
+     * Flush up to one batch of pending updates.
+     *
+     * @return number of devices written
+     */
+    public int flush() {
+        flushRequested.set(false);
+        if (!flushLock.tryLock()) {
+            return 0; // another flush is already running
+        }
+        try {
+            List<DeviceData> batch = drain(batchSize);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+
+            long start = System.nanoTime();
+            try {
+                deviceService.bulkUpsert(batch);
+                flushedRecords.addAndGet(batch.size());
+            } catch (Exception e) {
+                flushFailures.incrementAndGet();
+                log.warn("Telemetry bulk flush failed for {} devices: {}", batch.size(), e.getMessage());
+                requeue(batch);
+                return 0;
+            } finally {
+                recordFlushLatency(System.nanoTime() - start);
+            }
+
+            // Size trigger may have fired while we were writing
+            if (queueDepth.get() >= batchSize) {
+                requestFlush();
+            }
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long acceptedCount = accepted.get();
+        long flushes = flushCount.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", queueDepth.get());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("batchSize", batchSize);
+        stats.put("accepted", acceptedCount);
+        stats.put("merged", merged.get());
+        stats.put("rejected", rejected.get());
+        stats.put("mergeRatio", acceptedCount == 0 ? 0.0 : (double) merged.get() / acceptedCount);
+        stats.put("flushedRecords", flushedRecords.get());
+        stats.put("flushCount", flushes);
+        stats.put("flushFailures", flushFailures.get());
+        stats.put("lastFlushMillis", lastFlushNanos.get() / 1_000_000.0);
+        stats.put("maxFlushMillis", maxFlushNanos.get() / 1_000_000.0);
+        stats.put("avgFlushMillis", flushes == 0 ? 0.0 : totalFlushNanos.get() / 1_000_000.0 / flushes);
+        return stats;
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            blockingIoExecutor.execute(this::flush);
+        }
+    }
+
+    private List<DeviceData> drain(int max) {
+        List<DeviceData> batch = new ArrayList<>(Math.min(max, queueDepth.get()));
+        Iterator<String> keys = pending.keySet().iterator();
+        while (keys.hasNext() && batch.size() < max) {
+            DeviceData update = pending.remove(keys.next());
+            if (update != null) {
+                queueDepth.decrementAndGet();
+                batch.add(update);
+            }
+        }
+        return batch;
+    }
+
+    private void requeue(List<DeviceData> batch) {
+        // Newer telemetry that arrived during the failed flush wins over the batch being retried
+        for (DeviceData update : batch) {
+            boolean[] added = new boolean[1];
+            pending.compute(update.getDeviceId(), (id, newer) -> {
+                if (newer != null) {
+                    return mergeNonNull(update, newer);
+                }
+                added[0] = true;
+                return update;
+            });
+            if (added[0]) {
+                queueDepth.incrementAndGet();
+            }
+        }
+    }
+
+    private void recordFlushLatency(long nanos) {
+        flushCount.incrementAndGet();
+        totalFlushNanos.addAndGet(nanos);
+        lastFlushNanos.set(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Overlay the non-null fields of {@code newer} on a copy of {@code older}.
+     * A new object is returned so a batch being flushed is never mutated.
+     */
+    static DeviceData mergeNonNull(DeviceData older, DeviceData newer) {
+        DeviceData result = new DeviceData();
+        result.setDeviceId(older.getDeviceId());
+        result.setPhoneNumber(newer.getPhoneNumber() != null ? newer.getPhoneNumber() : older.getPhoneNumber());
+        result.setWifiStatus(newer.getWifiStatus() != null ? newer.getWifiStatus() : older.getWifiStatus());
+        result.setBatteryLevel(newer.getBatteryLevel() != null ? newer.getBatteryLevel() : older.getBatteryLevel());
+        result.setStorageUsed(newer.getStorageUsed() != null ? newer.getStorageUsed() : older.getStorageUsed());
+        result.setSignalStrength(newer.getSignalStrength() != null ? newer.getSignalStrength() : older.getSignalStrength());
+        result.setModel(newer.getModel() != null ? newer.getModel() : older.getModel());
+        result.setFirmware(newer.getFirmware() != null ? newer.getFirmware() : older.getFirmware());
+        result.setImei(newer.getImei() != null ? newer.getImei() : older.getImei());
+        return result;
+    }
+}
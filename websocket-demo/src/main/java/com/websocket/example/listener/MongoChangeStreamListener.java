@@ -1,38 +1,279 @@
 package com.websocket.example.listener;
 
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
 import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.DeviceService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
-import org.springframework.data.mongodb.core.mapping.event.MongoMappingEvent;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
-
-
+/**
+ * Tails the MongoDB change stream of the devices collection and is the single
+ * source of WebSocket device notifications: every committed write produces
+ * exactly one push, whichever node performed it. With a broker relay or the
+ * cluster bus the writing node publishes instead and the broker fans out, so
+ * here the stream only keeps the local device state current. Deletes carry
+ * only the document id, which is enough to drop the device from the local
+ * caches and fleet aggregates.
+ *
+ * The last processed resume token is persisted per consumer so a restart
+ * resumes where it left off instead of missing or replaying the whole window.
+ * Change streams need a replica set or a sharded cluster; a single-node
+ * replica set (mongod --replSet rs0) is enough locally. On startup the server
+ * is asked which one it is, and against a standalone mongod the stream is not
+ * started and DeviceService notifies directly, so pushes are never lost to a
+ * stream that cannot exist. Set changestream.enabled=false to skip the
+ * stream altogether.
+ */
 @Component
+@ConditionalOnProperty(name = "changestream.enabled", havingValue = "true", matchIfMissing = true)
 public class MongoChangeStreamListener {
 
+    private static final Logger log = LoggerFactory.getLogger(MongoChangeStreamListener.class);
+
+    private static final String TOKEN_COLLECTION = "changeStreamTokens";
+
+    // ChangeStreamHistoryLost / InvalidResumeToken / ChangeStreamFatalError
+    private static final int HISTORY_LOST = 286;
+    private static final int INVALID_RESUME_TOKEN = 260;
+    private static final int FATAL_ERROR = 280;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private DeviceService deviceService;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${changestream.collection:devices}")
+    private String collection;
+
+    @Value("${changestream.consumer-id:${spring.application.name}-${HOSTNAME:localhost}-${server.port:8080}}")
+    private String consumerId;
+
+    @Value("${changestream.token-flush-interval-ms:1000}")
+    private long tokenFlushIntervalMs;
+
+    @Value("${changestream.retry-delay-ms:5000}")
+    private long retryDelayMs;
+
+    private volatile boolean available;
+
+    private MessageListenerContainer container;
+    private volatile Subscription subscription;
+    private ScheduledFuture<?> tokenFlushTask;
+
+    private volatile BsonDocument lastToken;
+    private volatile BsonDocument persistedToken;
+
+    private final AtomicLong eventsProcessed = new AtomicLong();
+    private final AtomicLong notificationsSent = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+
+    /**
+     * Runs before any write can be served, so DeviceService knows from the
+     * first write whether it has to notify directly.
+     */
+    @PostConstruct
+    public void probe() {
+        available = supportsChangeStreams();
+        if (!available) {
+            log.warn("MongoDB is neither a replica set nor a sharded cluster, so it has no change streams; "
+                    + "device notifications are sent directly after each write");
+        }
+    }
+
+    /**
+     * Whether the server supports change streams, i.e. whether this listener
+     * delivers notifications at all.
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!available) {
+            return;
+        }
+        persistedToken = loadToken();
+        lastToken = persistedToken;
+
+        container = new DefaultMessageListenerContainer(mongoTemplate);
+        container.start();
+        subscribe(lastToken);
+
+        tokenFlushTask = taskScheduler.scheduleWithFixedDelay(this::persistToken, Duration.ofMillis(tokenFlushIntervalMs));
+        log.info("Change stream started on '{}' for consumer {} ({})", collection, consumerId,
+                lastToken != null ? "resuming" : "from now");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (tokenFlushTask != null) {
+            tokenFlushTask.cancel(false);
+        }
+        if (container != null) {
+            container.stop();
+        }
+        persistToken();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("consumerId", consumerId);
+        stats.put("available", available);
+        stats.put("active", subscription != null && subscription.isActive());
+        stats.put("eventsProcessed", eventsProcessed.get());
+        stats.put("notificationsSent", notificationsSent.get());
+        stats.put("restarts", restarts.get());
+        return stats;
+    }
 
-    @EventListener
-    public void handleDeviceDataChange(MongoMappingEvent<?> event) {
-        if (event.getSource() instanceof DeviceData) {
-            DeviceData deviceData = (DeviceData) event.getSource();
-            
-            // Send real-time update to Angular frontend
-            Map<String, Object> update = new HashMap<>();
-            update.put("deviceId", deviceData.getDeviceId());
-            update.put("data", deviceData);
-            update.put("timestamp", System.currentTimeMillis());
-            
-            messagingTemplate.convertAndSend("/topic/device-updates", update);
+    private boolean supportsChangeStreams() {
+        Document hello;
+        try {
+            hello = mongoTemplate.executeCommand(new Document("hello", 1));
+        } catch (MongoCommandException e) {
+            // Servers before 4.4.2 only know the legacy name
+            hello = mongoTemplate.executeCommand(new Document("isMaster", 1));
+        } catch (Exception e) {
+            log.warn("Could not determine the MongoDB topology: {}", e.getMessage());
+            return false;
         }
+        return hello.containsKey("setName") || "isdbgrid".equals(hello.getString("msg"));
     }
 
+    private void subscribe(BsonDocument resumeToken) {
+        ChangeStreamRequest.ChangeStreamRequestBuilder<DeviceData> builder = ChangeStreamRequest.builder(this::onChange)
+                .collection(collection)
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) {
+            builder.resumeAfter(resumeToken);
+        }
+        subscription = container.register(builder.build(), DeviceData.class, this::onError);
+    }
 
+    private void onChange(Message<ChangeStreamDocument<Document>, DeviceData> message) {
+        ChangeStreamDocument<Document> event = message.getRaw();
+        OperationType operation = event.getOperationType();
+
+        if (operation == OperationType.INSERT || operation == OperationType.UPDATE || operation == OperationType.REPLACE) {
+            DeviceData deviceData = message.getBody();
+            // updateLookup returns null when the document was deleted before the lookup ran
+            if (deviceData != null) {
+                // Keeps the cache current for writes made by other nodes; events arrive in
+                // commit order, so a briefly older state is overwritten by the next event
+                deviceService.recordState(deviceData);
+                if (!deviceService.notifiesDirectly()) {
+                    deviceService.notifyFrontend(deviceData);
+                    notificationsSent.incrementAndGet();
+                }
+            }
+        } else if (operation == OperationType.DELETE && event.getDocumentKey() != null) {
+            // Deletes carry no document, only its key; drop the device from the cache, the
+            // fleet store and the fleet aggregates, whichever node deleted it
+            BsonValue id = event.getDocumentKey().get("_id");
+            if (id != null && id.isObjectId()) {
+                deviceService.recordDeletion(id.asObjectId().getValue().toHexString());
+            } else if (id != null && id.isString()) {
+                deviceService.recordDeletion(id.asString().getValue());
+            }
+        }
+
+        eventsProcessed.incrementAndGet();
+        lastToken = event.getResumeToken();
+    }
+
+    private void onError(Throwable error) {
+        log.warn("Change stream error for consumer {}: {}", consumerId, error.getMessage());
+
+        if (error instanceof MongoCommandException commandError) {
+            int code = commandError.getErrorCode();
+            if (code == HISTORY_LOST || code == INVALID_RESUME_TOKEN || code == FATAL_ERROR) {
+                // Our position fell off the oplog; the only option left is to continue from now
+                log.warn("Resume token no longer valid, restarting change stream from now");
+                lastToken = null;
+                clearToken();
+            }
+        }
+
+        taskScheduler.schedule(this::restart, Instant.now().plusMillis(retryDelayMs));
+    }
+
+    private void restart() {
+        Subscription current = subscription;
+        if (current != null && current.isActive()) {
+            return;
+        }
+        if (current != null) {
+            container.remove(current);
+        }
+        restarts.incrementAndGet();
+        subscribe(lastToken);
+    }
+
+    private void persistToken() {
+        BsonDocument token = lastToken;
+        if (token == null || token.equals(persistedToken)) {
+            return;
+        }
+        try {
+            BsonDocument record = new BsonDocument("_id", new BsonString(consumerId))
+                    .append("token", token)
+                    .append("updatedAt", new BsonDateTime(System.currentTimeMillis()));
+            tokenCollection().replaceOne(Filters.eq("_id", consumerId), record, new ReplaceOptions().upsert(true));
+            persistedToken = token;
+        } catch (Exception e) {
+            log.warn("Failed to persist change stream resume token: {}", e.getMessage());
+        }
+    }
+
+    private BsonDocument loadToken() {
+        BsonDocument record = tokenCollection().find(Filters.eq("_id", consumerId)).first();
+        return record != null && record.isDocument("token") ? record.getDocument("token") : null;
+    }
+
+    private void clearToken() {
+        persistedToken = null;
+        tokenCollection().deleteOne(Filters.eq("_id", consumerId));
+    }
+
+    private MongoCollection<BsonDocument> tokenCollection() {
+        return mongoTemplate.getDb().getCollection(TOKEN_COLLECTION, BsonDocument.class);
+    }
 }
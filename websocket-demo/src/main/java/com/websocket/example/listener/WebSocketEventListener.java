@@ -1,35 +1,100 @@
 package com.websocket.example.listener;
 
+import com.websocket.example.conflation.DeviceUpdateConflater;
+import com.websocket.example.fleet.FleetAggregates;
+import com.websocket.example.logging.LogMarkers;
+import com.websocket.example.service.LargePayloadService;
+import com.websocket.example.session.SessionManager;
+import com.websocket.example.session.SessionMemoryManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
 
 
 /**
  * This component:
  *
- * Listens for WebSocket disconnect events
+ * Listens for WebSocket subscribe, unsubscribe and disconnect events
  *
- * Logs session disconnections
+ * Keeps the SessionManager subscription registry up to date
  *
- * Triggers garbage collection for memory cleanup
+ * Sends the current device snapshot to new per-phone subscribers, and the
+ * current fleet view to new /topic/fleet-stats subscribers
  *
- * Ready for SessionManager integration when needed
+ * Drops per-topic push and rate state when the last subscriber leaves
+ *
+ * Logs session disconnections and releases their memory eagerly
  */
 
 @Component
 public class WebSocketEventListener {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketEventListener.class);
+
+    @Autowired
+    private LargePayloadService largePayloadService;
+
+    @Autowired
+    private DeviceUpdateConflater updateConflater;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private FleetAggregates fleetAggregates;
+
+    @Autowired
+    private SessionMemoryManager sessionMemoryManager;
+
+    @EventListener
+    public void handleWebSocketSubscribeListener(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (destination == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        sessionManager.addSubscription(accessor.getSessionId(), accessor.getSubscriptionId(), destination);
+
+        // Delta clients need a base snapshot before they can apply patches
+        if (destination.startsWith(LargePayloadService.PHONE_TOPIC_PREFIX)) {
+            String phoneNumber = destination.substring(LargePayloadService.PHONE_TOPIC_PREFIX.length());
+            largePayloadService.sendSnapshotToSession(phoneNumber, accessor.getSessionId(), accessor.getSubscriptionId());
+        } else if (destination.equals(FleetAggregates.FLEET_TOPIC)) {
+            // The topic only carries changes, so a quiet fleet would otherwise show nothing
+            fleetAggregates.sendSnapshotToSession(accessor.getSessionId(), accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void handleWebSocketUnsubscribeListener(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String unwatched = sessionManager.removeSubscription(accessor.getSessionId(), accessor.getSubscriptionId());
+        if (unwatched != null) {
+            forgetTopic(unwatched);
+        }
+    }
+
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         String sessionId = event.getSessionId();
-        System.out.println("WebSocket session disconnected: " + sessionId);
+        log.info(LogMarkers.EVENT, "WebSocket session disconnected: {}", sessionId);
         
         // Clean up session-specific resources
-        // sessionManager.removeSession(sessionId); // Uncomment when SessionManager is implemented
-        
-        // Suggest garbage collection for memory cleanup
-        System.gc();
+        for (String unwatched : sessionManager.removeSession(sessionId)) {
+            forgetTopic(unwatched);
+        }
+        sessionMemoryManager.release(sessionId);
+    }
+
+    private void forgetTopic(String topic) {
+        updateConflater.forget(topic);
+        largePayloadService.forgetTopic(topic);
     }
 }
@@ -0,0 +1,65 @@
+package com.websocket.example.logging;
+
+import org.slf4j.MDC;
+
+/**
+ * Puts correlation keys into the MDC for the duration of a try block and
+ * restores whatever was there before, so nested scopes and pooled threads
+ * are left as they were found. Null values are skipped.
+ *
+ * <pre>
+ * try (LogContext ignored = LogContext.device(deviceId, phoneNumber)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class LogContext implements AutoCloseable {
+
+    public static final String DEVICE_ID = "deviceId";
+    public static final String PHONE = "phone";
+    public static final String SESSION_ID = "sessionId";
+
+    private final String[] keys;
+    private final String[] previous;
+
+    private LogContext(String... keysAndValues) {
+        int pairs = keysAndValues.length / 2;
+        keys = new String[pairs];
+        previous = new String[pairs];
+        for (int i = 0; i < pairs; i++) {
+            String key = keysAndValues[i * 2];
+            String value = keysAndValues[i * 2 + 1];
+            if (value != null) {
+                keys[i] = key;
+                previous[i] = MDC.get(key);
+                MDC.put(key, value);
+            }
+        }
+    }
+
+    public static LogContext device(String deviceId, String phoneNumber) {
+        return new LogContext(DEVICE_ID, deviceId, PHONE, phoneNumber);
+    }
+
+    public static LogContext phone(String phoneNumber) {
+        return new LogContext(PHONE, phoneNumber);
+    }
+
+    public static LogContext session(String sessionId) {
+        return new LogContext(SESSION_ID, sessionId);
+    }
+
+    @Override
+    public void close() {
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (keys[i] == null) {
+                continue;
+            }
+            if (previous[i] != null) {
+                MDC.put(keys[i], previous[i]);
+            } else {
+                MDC.remove(keys[i]);
+            }
+        }
+    }
+}
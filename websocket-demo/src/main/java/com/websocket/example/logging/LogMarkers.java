@@ -0,0 +1,22 @@
+package com.websocket.example.logging;
+
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Markers understood by the logging configuration (logback-spring.xml).
+ */
+public final class LogMarkers {
+
+    public static final String EVENT_NAME = "EVENT";
+
+    /**
+     * Per-event log lines (one per request, update or message). They are
+     * rate limited per logger by SamplingTurboFilter; everything else is
+     * always logged.
+     */
+    public static final Marker EVENT = MarkerFactory.getMarker(EVENT_NAME);
+
+    private LogMarkers() {
+    }
+}
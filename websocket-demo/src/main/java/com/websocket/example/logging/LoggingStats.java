@@ -0,0 +1,45 @@
+package com.websocket.example.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the state of the logging pipeline set up in logback-spring.xml:
+ * async queue occupancy and per-category sampling counts.
+ */
+@Component
+public class LoggingStats {
+
+    private static final String ASYNC_APPENDER = "ASYNC";
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext context)) {
+            stats.put("backend", LoggerFactory.getILoggerFactory().getClass().getName());
+            return stats;
+        }
+
+        if (context.getLogger(Logger.ROOT_LOGGER_NAME).getAppender(ASYNC_APPENDER) instanceof AsyncAppender async) {
+            Map<String, Object> queue = new HashMap<>();
+            queue.put("capacity", async.getQueueSize());
+            queue.put("queued", async.getNumberOfElementsInQueue());
+            queue.put("remaining", async.getRemainingCapacity());
+            queue.put("discardingThreshold", async.getDiscardingThreshold());
+            queue.put("neverBlock", async.isNeverBlock());
+            stats.put("asyncQueue", queue);
+        }
+        for (TurboFilter filter : context.getTurboFilterList()) {
+            if (filter instanceof SamplingTurboFilter sampling) {
+                stats.put("sampling", sampling.getStats());
+            }
+        }
+        return stats;
+    }
+}
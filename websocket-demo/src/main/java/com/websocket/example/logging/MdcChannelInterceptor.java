@@ -0,0 +1,32 @@
+package com.websocket.example.logging;
+
+import org.slf4j.MDC;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets the STOMP session id as MDC sessionId while a channel thread handles
+ * a message, so anything logged from message handling (controllers, broker,
+ * session sends) can be correlated with the session.
+ */
+@Component
+public class MdcChannelInterceptor implements ExecutorChannelInterceptor {
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId != null) {
+            MDC.put(LogContext.SESSION_ID, sessionId);
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        MDC.remove(LogContext.SESSION_ID);
+    }
+}
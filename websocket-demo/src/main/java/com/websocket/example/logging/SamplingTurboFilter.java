@@ -0,0 +1,117 @@
+package com.websocket.example.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limits per-event log lines, per category (logger name).
+ *
+ * Only events carrying the configured marker ({@link LogMarkers#EVENT}) are
+ * sampled: each category may log eventsPerSecond of them per second and the
+ * rest are dropped before the message is formatted or queued. The first
+ * event of the next second is preceded by a count of what was dropped, so
+ * the volume stays visible. Runs before the level check, on every logging
+ * call, so unmarked events return immediately.
+ *
+ * Configured in logback-spring.xml; eventsPerSecond 0 disables sampling.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    private static final String FQCN = SamplingTurboFilter.class.getName();
+
+    private String marker = LogMarkers.EVENT_NAME;
+    private int eventsPerSecond = 20;
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    public void setMarker(String marker) {
+        this.marker = marker;
+    }
+
+    public void setEventsPerSecond(int eventsPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (marker == null || eventsPerSecond <= 0 || !isStarted() || !marker.contains(this.marker)
+                || level.levelInt < logger.getEffectiveLevel().levelInt) {
+            return FilterReply.NEUTRAL;
+        }
+
+        Budget budget = budgets.computeIfAbsent(logger.getName(), name -> new Budget());
+        long suppressedBefore = budget.tryAcquire((int) (System.currentTimeMillis() / 1000), eventsPerSecond);
+        if (suppressedBefore < 0) {
+            return FilterReply.DENY;
+        }
+        if (suppressedBefore > 0) {
+            // Unmarked, so it passes this filter
+            logger.log(null, FQCN, Level.toLocationAwareLoggerInteger(level),
+                    "{} similar log events suppressed in the previous second", new Object[]{suppressedBefore}, null);
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    /**
+     * Logged and suppressed event counts per category.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> categories = new HashMap<>();
+        budgets.forEach((category, budget) -> categories.put(category,
+                Map.of("logged", budget.logged.sum(), "suppressed", budget.suppressed.sum())));
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("eventsPerSecond", eventsPerSecond);
+        stats.put("categories", categories);
+        return stats;
+    }
+
+    /**
+     * Fixed one-second window. Second and count share one long so a window
+     * change and the first acquire in it are a single CAS; once the budget
+     * is spent, rejections only touch a LongAdder.
+     */
+    private static final class Budget {
+        private final AtomicLong window = new AtomicLong();
+        private final LongAdder suppressedInWindow = new LongAdder();
+        private final LongAdder logged = new LongAdder();
+        private final LongAdder suppressed = new LongAdder();
+
+        /**
+         * @return -1 when over budget, otherwise how many events were
+         * suppressed in the previous window (non-zero only for the first
+         * event of a new window)
+         */
+        long tryAcquire(int second, int limit) {
+            while (true) {
+                long state = window.get();
+                int stateSecond = (int) (state >>> 32);
+                int used = (int) state;
+                if (stateSecond != second) {
+                    if (window.compareAndSet(state, ((long) second << 32) | 1)) {
+                        logged.increment();
+                        return suppressedInWindow.sumThenReset();
+                    }
+                    continue;
+                }
+                if (used >= limit) {
+                    suppressedInWindow.increment();
+                    suppressed.increment();
+                    return -1;
+                }
+                if (window.compareAndSet(state, state + 1)) {
+                    logged.increment();
+                    return 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.websocket.example.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records rate, time in queue and handling time for one executor channel.
+ *
+ * The send time travels with the message in a header; the handling start is
+ * kept in a thread local, since the channel calls beforeHandle and
+ * afterMessageHandled on the same thread.
+ */
+public class ChannelMetricsInterceptor implements ExecutorChannelInterceptor {
+
+    private static final String SENT_AT_HEADER = "metricsSentAt";
+
+    private final String channel;
+    private final MessagingMetrics metrics;
+    private final AtomicInteger pending;
+    private final Timer queueTimer;
+    private final ThreadLocal<Long> handleStartedAt = new ThreadLocal<>();
+
+    ChannelMetricsInterceptor(String channel, MessagingMetrics metrics, AtomicInteger pending, Timer queueTimer) {
+        this.channel = channel;
+        this.metrics = metrics;
+        this.pending = pending;
+        this.queueTimer = queueTimer;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        // Each subscribed handler gets its own task, and beforeHandle/afterMessageHandled run once per task
+        pending.addAndGet(handlerCount(channel));
+
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        metrics.messageCounter(this.channel, type != null ? type.name() : "OTHER",
+                SimpMessageHeaderAccessor.getDestination(message.getHeaders())).increment();
+
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setHeader(SENT_AT_HEADER, System.nanoTime());
+        // Already mutable messages (broker fan-out) are stamped in place, others are rebuilt once
+        return accessor.getMessageHeaders() == message.getHeaders()
+                ? message
+                : MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (!sent) {
+            pending.addAndGet(-handlerCount(channel));
+        }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        long now = System.nanoTime();
+        Object sentAt = message.getHeaders().get(SENT_AT_HEADER);
+        if (sentAt instanceof Long sentAtNanos) {
+            queueTimer.record(now - sentAtNanos, TimeUnit.NANOSECONDS);
+        }
+        handleStartedAt.set(now);
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        Long startedAt = handleStartedAt.get();
+        handleStartedAt.remove();
+        pending.decrementAndGet();
+        if (startedAt != null) {
+            metrics.handleTimer(this.channel, SimpMessageHeaderAccessor.getDestination(message.getHeaders()))
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static int handlerCount(MessageChannel channel) {
+        return channel instanceof AbstractSubscribableChannel subscribable ? subscribable.getSubscribers().size() : 1;
+    }
+}
@@ -0,0 +1,118 @@
+package com.websocket.example.metrics;
+
+import com.websocket.example.service.LargePayloadService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer meters for the STOMP message path, exported through Actuator
+ * (/actuator/metrics, /actuator/prometheus):
+ * <ul>
+ * <li>websocket.channel.messages: messages per channel, type and destination</li>
+ * <li>websocket.channel.pending: messages sent to a channel and not yet handled</li>
+ * <li>websocket.channel.queue: time between send and the start of handling</li>
+ * <li>websocket.channel.handle: time spent handling; on the outbound channel
+ * this is the send to the session</li>
+ * <li>websocket.message.serialization: time to serialize a payload, in
+ * SimpMessagingTemplate.convertAndSend or TopicPublisher</li>
+ * </ul>
+ * Destinations are collapsed to templates (one tag for all per-phone topics)
+ * and capped, so tag cardinality stays bounded however many phones there are.
+ */
+@Component
+public class MessagingMetrics {
+
+    private static final String PHONE_TOPIC_TAG = LargePayloadService.PHONE_TOPIC_PREFIX + "{phone}";
+    private static final String OTHER_TAG = "other";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${websocket.metrics.max-destination-tags:100}")
+    private int maxDestinationTags;
+
+    private final Map<String, Counter> messageCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> handleTimers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Timer> serializationTimers = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> destinationTags = new ConcurrentHashMap<>();
+
+    /**
+     * Interceptor that instruments one executor channel; register it last so
+     * it sees the message other interceptors produced.
+     */
+    public ChannelMetricsInterceptor channelInterceptor(String channel) {
+        AtomicInteger pending = new AtomicInteger();
+        Gauge.builder("websocket.channel.pending", pending, AtomicInteger::get)
+                .description("Messages sent to the channel and not yet handled")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Timer queueTimer = Timer.builder("websocket.channel.queue")
+                .description("Time from send until a channel thread starts handling the message")
+                .tag("channel", channel)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        return new ChannelMetricsInterceptor(channel, this, pending, queueTimer);
+    }
+
+    /**
+     * Wraps a converter so its payload conversions are timed.
+     */
+    public MessageConverter timed(MessageConverter converter) {
+        return new TimedMessageConverter(converter, this);
+    }
+
+    Counter messageCounter(String channel, String type, String destination) {
+        String tag = destinationTag(destination);
+        return messageCounters.computeIfAbsent(channel + '|' + type + '|' + tag, key -> Counter.builder("websocket.channel.messages")
+                .description("Messages passing through the channel")
+                .tag("channel", channel)
+                .tag("type", type)
+                .tag("destination", tag)
+                .register(meterRegistry));
+    }
+
+    Timer handleTimer(String channel, String destination) {
+        String tag = destinationTag(destination);
+        return handleTimers.computeIfAbsent(channel + '|' + tag, key -> Timer.builder("websocket.channel.handle")
+                .description("Time spent handling a message; on the outbound channel, the send to the session")
+                .tag("channel", channel)
+                .tag("destination", tag)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    public Timer serializationTimer(Class<?> payloadType) {
+        return serializationTimers.computeIfAbsent(payloadType, type -> Timer.builder("websocket.message.serialization")
+                .description("Time to serialize a payload into a message")
+                .tag("payload", type.getSimpleName())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private String destinationTag(String destination) {
+        if (destination == null) {
+            return "none";
+        }
+        if (destination.startsWith(LargePayloadService.PHONE_TOPIC_PREFIX)) {
+            return PHONE_TOPIC_TAG;
+        }
+        if (destinationTags.containsKey(destination)) {
+            return destination;
+        }
+        if (destinationTags.size() >= maxDestinationTags) {
+            return OTHER_TAG;
+        }
+        destinationTags.put(destination, Boolean.TRUE);
+        return destination;
+    }
+}
@@ -0,0 +1,60 @@
+package com.websocket.example.metrics;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.SmartMessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times payload-to-message conversion of a delegate converter. Conversions
+ * the delegate declines (returns null) are not recorded, so each publish is
+ * timed once by the converter that actually serialized it.
+ */
+class TimedMessageConverter implements SmartMessageConverter {
+
+    private final MessageConverter delegate;
+    private final MessagingMetrics metrics;
+
+    TimedMessageConverter(MessageConverter delegate, MessagingMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object fromMessage(Message<?> message, Class<?> targetClass) {
+        return delegate.fromMessage(message, targetClass);
+    }
+
+    @Override
+    public Object fromMessage(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        return delegate instanceof SmartMessageConverter smart
+                ? smart.fromMessage(message, targetClass, conversionHint)
+                : delegate.fromMessage(message, targetClass);
+    }
+
+    @Override
+    public Message<?> toMessage(Object payload, MessageHeaders headers) {
+        long start = System.nanoTime();
+        Message<?> message = delegate.toMessage(payload, headers);
+        record(payload, message, start);
+        return message;
+    }
+
+    @Override
+    public Message<?> toMessage(Object payload, MessageHeaders headers, Object conversionHint) {
+        long start = System.nanoTime();
+        Message<?> message = delegate instanceof SmartMessageConverter smart
+                ? smart.toMessage(payload, headers, conversionHint)
+                : delegate.toMessage(payload, headers);
+        record(payload, message, start);
+        return message;
+    }
+
+    private void record(Object payload, Message<?> message, long start) {
+        if (message != null) {
+            metrics.serializationTimer(payload.getClass()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
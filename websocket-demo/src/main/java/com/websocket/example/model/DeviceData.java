@@ -1,13 +1,19 @@
 package com.websocket.example.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "devices")
 public class DeviceData {
+    // Mongo's _id, used to apply change stream deletes; not part of the device JSON clients see
     @Id
+    @JsonIgnore
     private String id;
+    @Indexed(unique = true)
     private String deviceId;
+    @Indexed
     private String phoneNumber;
     private String wifiStatus;
     private Integer batteryLevel;
@@ -18,6 +24,9 @@ public class DeviceData {
     private String imei;
     
     // Getters and setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    
     public String getDeviceId() { return deviceId; }
     public void setDeviceId(String deviceId) { this.deviceId = deviceId; }
     
@@ -0,0 +1,48 @@
+package com.websocket.example.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+
+/**
+ * One numeric telemetry reading in the deviceTelemetry time-series collection.
+ *
+ * Field names are single letters because every reading repeats them; the
+ * collection itself is created by TelemetryHistoryService with "t" as the
+ * time field and "d" (deviceId) as the meta field.
+ */
+@Document(collection = "deviceTelemetry")
+public class TelemetryReading {
+    @Id
+    private String id;
+    @Field("t")
+    private Instant timestamp;
+    @Field("d")
+    private String deviceId;
+    @Field("b")
+    private Integer batteryLevel;
+    @Field("s")
+    private Integer storageUsed;
+    @Field("g")
+    private Integer signalStrength;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Instant getTimestamp() { return timestamp; }
+    public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
+
+    public String getDeviceId() { return deviceId; }
+    public void setDeviceId(String deviceId) { this.deviceId = deviceId; }
+
+    public Integer getBatteryLevel() { return batteryLevel; }
+    public void setBatteryLevel(Integer batteryLevel) { this.batteryLevel = batteryLevel; }
+
+    public Integer getStorageUsed() { return storageUsed; }
+    public void setStorageUsed(Integer storageUsed) { this.storageUsed = storageUsed; }
+
+    public Integer getSignalStrength() { return signalStrength; }
+    public void setSignalStrength(Integer signalStrength) { this.signalStrength = signalStrength; }
+}
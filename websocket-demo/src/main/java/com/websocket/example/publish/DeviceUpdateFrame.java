@@ -0,0 +1,22 @@
+package com.websocket.example.publish;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.websocket.example.model.DeviceData;
+
+/**
+ * Full device state as pushed to subscribers: on a per-phone topic
+ * ({@code compressed}, {@code data}, {@code timestamp} and, in delta mode,
+ * {@code version}) or on the general topic ({@code deviceId}, {@code data},
+ * {@code timestamp}). Absent fields are left out of the JSON.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DeviceUpdateFrame(String deviceId, Boolean compressed, DeviceData data, Long version, long timestamp) {
+
+    public static DeviceUpdateFrame forPhoneTopic(DeviceData data, Long version) {
+        return new DeviceUpdateFrame(null, false, data, version, System.currentTimeMillis());
+    }
+
+    public static DeviceUpdateFrame forGeneralTopic(DeviceData data) {
+        return new DeviceUpdateFrame(data.getDeviceId(), null, data, null, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,183 @@
+package com.websocket.example.publish;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.websocket.example.cache.DeviceStateCache;
+import com.websocket.example.model.DeviceData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Last full device state per per-phone topic, kept after the last
+ * subscriber leaves so the next subscriber gets it straight away.
+ *
+ * Each entry holds the state and its unversioned full frame, serialized at
+ * most once: publishes that already serialized a full frame hand over those
+ * bytes, and states that went out as delta patches are serialized on the
+ * first subscribe that needs them. The frame carries no version, so clients
+ * apply it as a base and still accept whatever version comes next.
+ *
+ * Eviction is LRU, bounded by entry count and by frame bytes. Writes that
+ * nobody was watching invalidate the entry instead of updating it. A state
+ * is only stored while it is still its device's current entry in
+ * DeviceStateCache, checked under the lock that invalidate takes: DeviceService
+ * writes that cache before it invalidates here, so a publish of an older
+ * state that finishes after a newer write is refused instead of stored, and
+ * a stale state is never served. States that are not current (a merged
+ * conflation copy, or a device evicted from that cache) are simply not kept;
+ * new subscribers then fall back to the device cache.
+ */
+@Component
+public class LastValueCache {
+
+    // Map entry, key and DeviceData reference
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    // Charged for an entry whose frame has not been serialized yet
+    private static final int UNSERIALIZED_FRAME_BYTES = 512;
+
+    @Autowired
+    private TopicPublisher topicPublisher;
+
+    @Autowired
+    private DeviceStateCache deviceStateCache;
+
+    @Value("${websocket.last-value-cache.max-entries:100000}")
+    private int maxEntries;
+
+    @Value("${websocket.last-value-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong serialized = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong notCurrent = new AtomicLong();
+
+    /**
+     * Remember the state just published on a destination, unless a newer
+     * state of the device has been recorded since.
+     *
+     * @param frame its unversioned full frame if already serialized, else null
+     */
+    public void put(String destination, DeviceData device, byte[] frame) {
+        Entry entry = new Entry(device, frame);
+        lock.lock();
+        try {
+            if (!deviceStateCache.isCurrent(device)) {
+                notCurrent.incrementAndGet();
+                return;
+            }
+            Entry previous = entries.put(destination, entry);
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += entry.bytes;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(String destination) {
+        lock.lock();
+        try {
+            Entry removed = entries.remove(destination);
+            if (removed != null) {
+                bytes -= removed.bytes;
+                invalidations.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The cached full frame for a destination, or null if there is none.
+     */
+    public byte[] frame(String destination) throws JsonProcessingException {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(destination);
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+
+        byte[] frame = entry.frame;
+        if (frame == null) {
+            // Concurrent first subscribers may both serialize; either result is the same frame
+            frame = topicPublisher.serialize(DeviceUpdateFrame.forPhoneTopic(entry.device, null));
+            serialized.incrementAndGet();
+            entry.frame = frame;
+            long actual = ENTRY_OVERHEAD_BYTES + frame.length;
+            lock.lock();
+            try {
+                if (entries.get(destination) == entry && entry.bytes != actual) {
+                    bytes += actual - entry.bytes;
+                    entry.bytes = actual;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return frame;
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        lock.lock();
+        try {
+            stats.put("entries", entries.size());
+            stats.put("estimatedBytes", bytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("lazilySerialized", serialized.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("notCurrent", notCurrent.get());
+        return stats;
+    }
+
+    private static final class Entry {
+        private final DeviceData device;
+        private volatile byte[] frame;
+        // Guarded by the cache lock
+        private long bytes;
+
+        private Entry(DeviceData device, byte[] frame) {
+            this.device = device;
+            this.frame = frame;
+            this.bytes = ENTRY_OVERHEAD_BYTES + (frame != null ? frame.length : UNSERIALIZED_FRAME_BYTES);
+        }
+    }
+}
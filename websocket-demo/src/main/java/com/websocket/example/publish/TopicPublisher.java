@@ -0,0 +1,126 @@
+package com.websocket.example.publish;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.websocket.example.metrics.MessagingMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes JSON payloads that are serialized exactly once.
+ *
+ * Payloads are written to a byte[] up front and sent as a ready-made
+ * Message&lt;byte[]&gt; with an application/json content type, so no message
+ * converter runs on the way. The broker hands that same array to every
+ * subscriber of the destination, and the outbound interceptors (compression,
+ * cluster bridge) recognise it by identity rather than re-encoding it.
+ *
+ * Device frames go through an ObjectWriter bound to DeviceUpdateFrame, which
+ * resolves its serializer once instead of per call. The writers share a
+ * JsonFactory with a concurrent buffer pool: the default pool is per thread,
+ * which recycles nothing when publishes come from short-lived virtual threads.
+ */
+@Component
+public class TopicPublisher {
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessagingMetrics messagingMetrics;
+
+    private ObjectWriter frameWriter;
+    private ObjectWriter writer;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong sentToSubscription = new AtomicLong();
+    private final AtomicLong serializedBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // Same modules and settings as the application mapper, pooled buffers
+        ObjectMapper pooled = objectMapper.copyWith(objectMapper.getFactory().rebuild()
+                .recyclerPool(JsonRecyclerPools.newConcurrentDequePool())
+                .build());
+        frameWriter = pooled.writerFor(DeviceUpdateFrame.class);
+        writer = pooled.writer();
+    }
+
+    /**
+     * Serialize a payload once; DeviceUpdateFrame goes through its bound writer.
+     */
+    public byte[] serialize(Object payload) throws JsonProcessingException {
+        long start = System.nanoTime();
+        byte[] bytes = payload instanceof DeviceUpdateFrame
+                ? frameWriter.writeValueAsBytes(payload)
+                : writer.writeValueAsBytes(payload);
+        messagingMetrics.serializationTimer(payload.getClass()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        serializedBytes.addAndGet(bytes.length);
+        return bytes;
+    }
+
+    public void publish(String destination, Object payload, Map<String, String> nativeHeaders) throws JsonProcessingException {
+        publish(destination, serialize(payload), nativeHeaders);
+    }
+
+    /**
+     * Broadcast pre-serialized JSON to every subscriber of a destination.
+     */
+    public void publish(String destination, byte[] payload, Map<String, String> nativeHeaders) {
+        SimpMessageHeaderAccessor accessor = jsonMessageHeaders(nativeHeaders);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+        published.incrementAndGet();
+    }
+
+    /**
+     * Send pre-serialized JSON to a single subscription, bypassing the broker.
+     */
+    public void sendToSubscription(String sessionId, String subscriptionId, String destination, byte[] payload,
+                                   Map<String, String> nativeHeaders) {
+        SimpMessageHeaderAccessor accessor = jsonMessageHeaders(nativeHeaders);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        clientOutboundChannel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+        sentToSubscription.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("published", published.get());
+        stats.put("sentToSubscription", sentToSubscription.get());
+        stats.put("serializedBytes", serializedBytes.get());
+        return stats;
+    }
+
+    private static SimpMessageHeaderAccessor jsonMessageHeaders(Map<String, String> nativeHeaders) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        nativeHeaders.forEach(accessor::setNativeHeader);
+        // Mutable so the template and the outbound channel can add their headers without copying
+        accessor.setLeaveMutable(true);
+        return accessor;
+    }
+}
@@ -7,4 +7,6 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface DeviceRepository extends MongoRepository<DeviceData, String> {
     DeviceData findByDeviceId(String deviceId);
+
+    DeviceData findFirstByPhoneNumber(String phoneNumber);
 }
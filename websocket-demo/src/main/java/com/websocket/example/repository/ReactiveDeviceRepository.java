@@ -0,0 +1,16 @@
+package com.websocket.example.repository;
+
+import com.websocket.example.model.DeviceData;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+// Non-blocking counterpart of DeviceRepository, only created in the reactive profile
+@Repository
+@Profile("reactive")
+public interface ReactiveDeviceRepository extends ReactiveMongoRepository<DeviceData, String> {
+    Mono<DeviceData> findByDeviceId(String deviceId);
+
+    Mono<DeviceData> findFirstByPhoneNumber(String phoneNumber);
+}
@@ -0,0 +1,264 @@
+package com.websocket.example.scheduling;
+
+import com.websocket.example.logging.LogMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel for large numbers of short, frequently
+ * rescheduled timers (per-topic flushes, simulated devices).
+ *
+ * Instead of one scheduled task per timer, a single task advances the wheel
+ * every tick. Level 0 has one bucket per tick; each higher level covers
+ * {@code wheelSize} buckets of the level below. A timer is placed on the
+ * lowest level whose span reaches its deadline, and buckets of higher levels
+ * are cascaded down as the wheel turns, so scheduling and cancelling are
+ * O(1) and a tick only touches the buckets that are due. Deadlines beyond the
+ * top level are parked in its farthest bucket and re-placed on each cascade.
+ *
+ * Expired tasks run on the supplied executor, never on the ticking thread.
+ * Precision is one tick; a timer never fires early.
+ */
+public class HierarchicalTimingWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(HierarchicalTimingWheel.class);
+
+    private final long tickMs;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final Bucket[][] levels;
+    private final Executor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long startMs;
+    private long currentTick;
+    private int pending;
+
+    private ScheduledFuture<?> tickTask;
+
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong cascaded = new AtomicLong();
+
+    /**
+     * @param tickMs    resolution of the wheel
+     * @param wheelSize buckets per level, rounded up to a power of two
+     * @param levels    number of levels; the wheel spans tickMs * wheelSize^levels
+     * @param executor  runs expired tasks
+     */
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, int levels, Executor executor) {
+        if (tickMs <= 0 || wheelSize < 2 || levels < 1) {
+            throw new IllegalArgumentException("Invalid timing wheel: tick " + tickMs + "ms, size " + wheelSize + ", levels " + levels);
+        }
+        this.tickMs = tickMs;
+        this.wheelBits = 32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.wheelMask = (1 << wheelBits) - 1;
+        this.levels = new Bucket[levels][1 << wheelBits];
+        for (Bucket[] level : this.levels) {
+            for (int i = 0; i < level.length; i++) {
+                level[i] = new Bucket();
+            }
+        }
+        this.executor = executor;
+        this.startMs = System.currentTimeMillis();
+    }
+
+    public void start(TaskScheduler scheduler) {
+        tickTask = scheduler.scheduleAtFixedRate(this::advance, Duration.ofMillis(tickMs));
+    }
+
+    public void stop() {
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+    }
+
+    /**
+     * Run a task once, no earlier than delayMs from now.
+     */
+    public Timeout schedule(Runnable task, long delayMs) {
+        long deadlineMs = System.currentTimeMillis() + Math.max(0, delayMs);
+        // Round up so the task never fires before its deadline
+        long deadline = (deadlineMs - startMs + tickMs - 1) / tickMs;
+        Timeout timeout = new Timeout(task);
+        lock.lock();
+        try {
+            timeout.deadline = Math.max(deadline, currentTick + 1);
+            place(timeout);
+            pending++;
+        } finally {
+            lock.unlock();
+        }
+        scheduled.incrementAndGet();
+        return timeout;
+    }
+
+    /**
+     * Advance the wheel to the current time and dispatch everything due.
+     * Called by the tick task; catches up in one go after a stall.
+     */
+    public void advance() {
+        long target = (System.currentTimeMillis() - startMs) / tickMs;
+        List<Timeout> due = null;
+        lock.lock();
+        try {
+            while (currentTick < target) {
+                currentTick++;
+                cascade();
+                Bucket bucket = levels[0][(int) (currentTick & wheelMask)];
+                for (Timeout timeout = bucket.head; timeout != null; ) {
+                    Timeout next = timeout.next;
+                    bucket.remove(timeout);
+                    pending--;
+                    if (due == null) {
+                        due = new ArrayList<>();
+                    }
+                    due.add(timeout);
+                    timeout = next;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (due != null) {
+            for (Timeout timeout : due) {
+                expired.incrementAndGet();
+                try {
+                    executor.execute(timeout.task);
+                } catch (RuntimeException e) {
+                    log.warn(LogMarkers.EVENT, "Error dispatching timer task: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.lock();
+        try {
+            stats.put("pending", pending);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("tickMs", tickMs);
+        stats.put("wheelSize", 1 << wheelBits);
+        stats.put("levels", levels.length);
+        stats.put("scheduled", scheduled.get());
+        stats.put("expired", expired.get());
+        stats.put("cancelled", cancelled.get());
+        stats.put("cascaded", cascaded.get());
+        return stats;
+    }
+
+    // Called with the lock held
+    private void place(Timeout timeout) {
+        int top = levels.length - 1;
+        for (int level = 0; level <= top; level++) {
+            int shift = level * wheelBits;
+            // Compared on this level's granularity, so the bucket is always cascaded before the deadline
+            if ((timeout.deadline >>> shift) - (currentTick >>> shift) <= wheelMask || level == top) {
+                long slot = level == top
+                        ? Math.min(timeout.deadline >>> shift, (currentTick >>> shift) + wheelMask)
+                        : timeout.deadline >>> shift;
+                levels[level][(int) (slot & wheelMask)].add(timeout);
+                return;
+            }
+        }
+    }
+
+    // Called with the lock held, after currentTick moved on
+    private void cascade() {
+        // Highest level first so timers can drop more than one level in the same tick
+        for (int level = levels.length - 1; level > 0; level--) {
+            int shift = level * wheelBits;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+            Bucket bucket = levels[level][(int) ((currentTick >>> shift) & wheelMask)];
+            for (Timeout timeout = bucket.head; timeout != null; ) {
+                Timeout next = timeout.next;
+                bucket.remove(timeout);
+                place(timeout);
+                cascaded.incrementAndGet();
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public class Timeout {
+        private final Runnable task;
+        private long deadline;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * @return false if the task already fired (or was cancelled before)
+         */
+        public boolean cancel() {
+            lock.lock();
+            try {
+                if (bucket == null) {
+                    return false;
+                }
+                bucket.remove(this);
+                pending--;
+            } finally {
+                lock.unlock();
+            }
+            cancelled.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list, so a timer can be unlinked without a scan.
+     */
+    private static class Bucket {
+        private Timeout head;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
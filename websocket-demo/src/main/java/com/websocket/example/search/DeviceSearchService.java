@@ -0,0 +1,113 @@
+package com.websocket.example.search;
+
+import com.websocket.example.cache.DeviceStateCache;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.DeviceService;
+import com.websocket.example.service.FCMService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Front door for /api/search-device.
+ *
+ * Concurrent searches for the same phone number share one in-flight FCM
+ * request (single flight). Device state comes from the DeviceStateCache,
+ * which every write passes through: a search within the TTL of the last
+ * observed write is answered without contacting the device; older or
+ * unknown-age state is still returned immediately, marked with its age,
+ * while a refresh is requested and pushed on the per-phone topic when it
+ * arrives.
+ */
+@Service
+public class DeviceSearchService {
+
+    @Autowired
+    private FCMService fcmService;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceStateCache deviceStateCache;
+
+    @Value("${search.cache.ttl-ms:30000}")
+    private long ttlMs;
+
+    // phoneNumber -> FCM request currently in flight
+    private final Map<String, CompletableFuture<DeviceData>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fcmRequests = new AtomicLong();
+
+    public SearchResult search(String phoneNumber) {
+        searches.incrementAndGet();
+
+        DeviceStateCache.CachedDevice cached = deviceStateCache.getByPhone(phoneNumber);
+        if (cached != null && cached.observedAt() > 0 && System.currentTimeMillis() - cached.observedAt() <= ttlMs) {
+            freshHits.incrementAndGet();
+            return new SearchResult(cached.device(), cached.observedAt(), false, null);
+        }
+
+        // Last known state, possibly of unknown age, is still better than nothing while the device answers
+        DeviceData known = cached != null ? cached.device() : deviceService.findByPhoneNumber(phoneNumber);
+        long observedAt = cached != null ? cached.observedAt() : 0;
+        if (known != null) {
+            staleHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return new SearchResult(known, observedAt, true, requestDevice(phoneNumber));
+    }
+
+    public Map<String, Object> getStats() {
+        long total = searches.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("searches", total);
+        stats.put("freshHits", freshHits.get());
+        stats.put("staleHits", staleHits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("fcmRequests", fcmRequests.get());
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) freshHits.get() / total);
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+
+    private CompletableFuture<DeviceData> requestDevice(String phoneNumber) {
+        boolean[] leader = new boolean[1];
+        CompletableFuture<DeviceData> request = inFlight.computeIfAbsent(phoneNumber, phone -> {
+            leader[0] = true;
+            return fcmService.sendDeviceInfoRequest(phone);
+        });
+
+        if (!leader[0]) {
+            coalesced.incrementAndGet();
+            return request;
+        }
+        fcmRequests.incrementAndGet();
+        // Attached outside computeIfAbsent: the future may already be complete (e.g. rejected)
+        request.whenComplete((device, error) -> inFlight.remove(phoneNumber, request));
+        return request;
+    }
+
+    /**
+     * @param device      last known state, or null if nothing is known yet
+     * @param fetchedAt   when that state was written (epoch millis), 0 if unknown
+     * @param refreshing  whether a new FCM round trip was requested
+     * @param refresh     that request, shared with other searchers; null when served fresh
+     */
+    public record SearchResult(DeviceData device, long fetchedAt, boolean refreshing,
+                               CompletableFuture<DeviceData> refresh) {
+    }
+}
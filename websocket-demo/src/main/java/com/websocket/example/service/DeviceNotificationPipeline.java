@@ -0,0 +1,198 @@
+package com.websocket.example.service;
+
+import com.websocket.example.logging.LogMarkers;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.scheduling.HierarchicalTimingWheel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Demand-driven hand-off from reactive device writes to the WebSocket layer.
+ *
+ * Committed devices are emitted into a bounded unicast sink. A single
+ * subscriber drains it on the blocking I/O executor and requests the next
+ * batch only while the clientOutboundChannel has fewer than the high-water
+ * mark of messages pending; above that it stops requesting and checks again
+ * on the timing wheel. The sink then fills up, and once it is full
+ * {@link #hasCapacity()} turns telemetry away before anything is written, so
+ * a slow outbound side pushes back on devices instead of growing queues.
+ *
+ * Only used when this node notifies directly (see DeviceService#notifiesDirectly);
+ * with the change stream, committed writes reach subscribers from there.
+ */
+@Component
+@Profile("reactive")
+public class DeviceNotificationPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceNotificationPipeline.class);
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private HierarchicalTimingWheel timingWheel;
+
+    @Autowired
+    private ExecutorService blockingIoExecutor;
+
+    @Value("${reactive.notify.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${reactive.notify.batch-size:256}")
+    private int batchSize;
+
+    @Value("${reactive.notify.outbound-high-water-mark:10000}")
+    private int outboundHighWaterMark;
+
+    @Value("${reactive.notify.poll-interval-ms:10}")
+    private long pollIntervalMs;
+
+    private Sinks.Many<DeviceData> sink;
+    private DemandSubscriber subscriber;
+    private volatile Gauge outboundPending;
+
+    // Emitted and not yet handed to notifyFrontend, across the sink and the publishOn queue
+    private final AtomicInteger buffered = new AtomicInteger();
+
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<DeviceData>get(bufferSize).get());
+        subscriber = new DemandSubscriber();
+        sink.asFlux()
+                .publishOn(Schedulers.fromExecutorService(blockingIoExecutor), batchSize)
+                .subscribe(subscriber);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sink.tryEmitComplete();
+        subscriber.dispose();
+    }
+
+    /**
+     * Whether another update can be accepted without overflowing the buffer.
+     */
+    public boolean hasCapacity() {
+        return buffered.get() < bufferSize;
+    }
+
+    /**
+     * Queue a committed device for its subscribers; dropped (and counted)
+     * when the buffer is full.
+     */
+    public void offer(DeviceData device) {
+        buffered.incrementAndGet();
+        Sinks.EmitResult result;
+        // Concurrent writers contend for the sink; the losing one retries
+        while ((result = sink.tryEmitNext(device)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            Thread.onSpinWait();
+        }
+        if (result.isFailure()) {
+            buffered.decrementAndGet();
+            overflowed.incrementAndGet();
+            log.warn(LogMarkers.EVENT, "Notification buffer full ({}), dropping update for device {}", result, device.getDeviceId());
+            return;
+        }
+        emitted.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("bufferSize", bufferSize);
+        stats.put("buffered", buffered.get());
+        stats.put("batchSize", batchSize);
+        stats.put("outboundHighWaterMark", outboundHighWaterMark);
+        stats.put("outboundPending", outboundPending());
+        stats.put("emitted", emitted.get());
+        stats.put("delivered", delivered.get());
+        stats.put("overflowed", overflowed.get());
+        stats.put("pauses", pauses.get());
+        return stats;
+    }
+
+    private double outboundPending() {
+        Gauge gauge = outboundPending;
+        if (gauge == null) {
+            // Registered when the broker channels are configured, possibly after this bean
+            gauge = meterRegistry.find("websocket.channel.pending").tag("channel", "outbound").gauge();
+            if (gauge == null) {
+                return 0;
+            }
+            outboundPending = gauge;
+        }
+        return gauge.value();
+    }
+
+    /**
+     * Requests one batch at a time, and the next only once the outbound
+     * channel is below its high-water mark.
+     */
+    private class DemandSubscriber extends BaseSubscriber<DeviceData> {
+        // Touched by onNext and, while no demand is outstanding, the timing wheel
+        private int outstanding;
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            requestWhenReady();
+        }
+
+        @Override
+        protected void hookOnNext(DeviceData device) {
+            buffered.decrementAndGet();
+            try {
+                deviceService.notifyFrontend(device);
+                delivered.incrementAndGet();
+            } catch (Exception e) {
+                log.warn(LogMarkers.EVENT, "Error notifying subscribers of device {}: {}", device.getDeviceId(), e.getMessage());
+            }
+            if (--outstanding == 0) {
+                requestWhenReady();
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable error) {
+            log.error("Device notification pipeline terminated", error);
+        }
+
+        private void requestWhenReady() {
+            if (isDisposed()) {
+                return;
+            }
+            if (outboundPending() < outboundHighWaterMark) {
+                outstanding = batchSize;
+                request(batchSize);
+            } else {
+                pauses.incrementAndGet();
+                timingWheel.schedule(this::requestWhenReady, pollIntervalMs);
+            }
+        }
+    }
+}
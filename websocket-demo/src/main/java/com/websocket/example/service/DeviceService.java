@@ -1,84 +1,298 @@
 package com.websocket.example.service;
+import com.websocket.example.broker.BrokerMode;
+import com.websocket.example.cache.DeviceStateCache;
+import com.websocket.example.conflation.DeviceUpdateConflater;
+import com.websocket.example.fleet.CompactDeviceStore;
+import com.websocket.example.fleet.FleetAggregates;
+import com.websocket.example.history.TelemetryHistoryService;
+import com.websocket.example.listener.MongoChangeStreamListener;
+import com.websocket.example.logging.LogContext;
+import com.websocket.example.logging.LogMarkers;
 import com.websocket.example.model.DeviceData;
+import com.websocket.example.publish.DeviceUpdateFrame;
+import com.websocket.example.publish.LastValueCache;
+import com.websocket.example.publish.TopicPublisher;
 import com.websocket.example.repository.DeviceRepository;
+import com.websocket.example.session.FramePolicy;
+import com.websocket.example.session.SessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @Service
 public class DeviceService {
 
+    private static final Logger log = LoggerFactory.getLogger(DeviceService.class);
+
+    static final FindAndModifyOptions UPSERT_RETURN_NEW = FindAndModifyOptions.options().upsert(true).returnNew(true);
+
+    private static final String GENERAL_TOPIC = "/topic/device-updates";
+
     @Autowired
     private DeviceRepository deviceRepository;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private TopicPublisher topicPublisher;
     
     @Autowired
-    private LargePayloadService largePayloadService;
+    private DeviceUpdateConflater updateConflater;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private DeviceStateCache deviceStateCache;
+
+    @Autowired
+    private CompactDeviceStore compactDeviceStore;
+
+    @Autowired
+    private FleetAggregates fleetAggregates;
 
-    public List<DeviceData> findAll() {
-        return deviceRepository.findAll();
+    @Autowired
+    private LastValueCache lastValueCache;
+
+    @Autowired
+    private TelemetryHistoryService historyService;
+
+    // Looked up on use: the listener depends on this service. Absent when changestream.enabled=false
+    @Autowired
+    private ObjectProvider<MongoChangeStreamListener> changeStreamListener;
+
+    @Value("${websocket.broker.mode:simple}")
+    private BrokerMode brokerMode;
+
+    /**
+     * With the simple broker every node tails the change stream and notifies
+     * its own subscribers. With a relay or the cluster bus the broker already
+     * fans out to every node, so only the node that made the write publishes.
+     * Without a change stream (disabled, or a standalone mongod) the writing
+     * node always publishes.
+     */
+    public boolean notifiesDirectly() {
+        MongoChangeStreamListener listener = changeStreamListener.getIfAvailable();
+        return listener == null || !listener.isAvailable() || brokerMode != BrokerMode.SIMPLE;
+    }
+
+    /**
+     * One page of devices, ordered by deviceId so pages are stable across calls.
+     */
+    public Page<DeviceData> findPage(int page, int size) {
+        return deviceRepository.findAll(PageRequest.of(page, size, Sort.by("deviceId")));
+    }
+
+    /**
+     * Cursor over every device; the caller must close the stream.
+     */
+    public Stream<DeviceData> streamAll() {
+        return mongoTemplate.stream(new Query().with(Sort.by("deviceId")), DeviceData.class);
     }
 
     public DeviceData findByDeviceId(String deviceId) {
-        return deviceRepository.findByDeviceId(deviceId);
+        DeviceData cached = deviceStateCache.get(deviceId);
+        if (cached != null) {
+            return cached;
+        }
+        DeviceData device = deviceRepository.findByDeviceId(deviceId);
+        deviceStateCache.load(device);
+        return device;
+    }
+
+    public DeviceData findByPhoneNumber(String phoneNumber) {
+        DeviceStateCache.CachedDevice cached = deviceStateCache.getByPhone(phoneNumber);
+        if (cached != null) {
+            return cached.device();
+        }
+        DeviceData device = deviceRepository.findFirstByPhoneNumber(phoneNumber);
+        deviceStateCache.load(device);
+        return device;
     }
 
     public DeviceData save(DeviceData deviceData) {
         DeviceData saved = deviceRepository.save(deviceData);
-        notifyFrontend(saved);
+        historyService.record(deviceData);
+        recordState(saved);
+        notifyIfDirect(saved);
         return saved;
     }
 
+    /**
+     * Atomic single round-trip upsert: only the non-null fields are $set and the
+     * merged document comes back from findAndModify, so concurrent telemetry for
+     * the same device cannot lose updates and no second read is needed.
+     */
     public DeviceData upsert(DeviceData deviceData) {
-        System.out.println("Upsert called - DeviceId: " + deviceData.getDeviceId() + ", Phone: " + deviceData.getPhoneNumber());
-        DeviceData existing = findByDeviceId(deviceData.getDeviceId());
-
-        if (existing != null) {
-            // Update existing device with non-null values
-            if (deviceData.getPhoneNumber() != null) existing.setPhoneNumber(deviceData.getPhoneNumber());
-            if (deviceData.getWifiStatus() != null) existing.setWifiStatus(deviceData.getWifiStatus());
-            if (deviceData.getBatteryLevel() != null) existing.setBatteryLevel(deviceData.getBatteryLevel());
-            if (deviceData.getStorageUsed() != null) existing.setStorageUsed(deviceData.getStorageUsed());
-            if (deviceData.getSignalStrength() != null) existing.setSignalStrength(deviceData.getSignalStrength());
-            if (deviceData.getModel() != null) existing.setModel(deviceData.getModel());
-            if (deviceData.getFirmware() != null) existing.setFirmware(deviceData.getFirmware());
-            if (deviceData.getImei() != null) existing.setImei(deviceData.getImei());
-            return save(existing); // This calls notifyFrontend automatically
-        } else {
-            // Create new device
-            return save(deviceData); // This calls notifyFrontend automatically
+        log.debug(LogMarkers.EVENT, "Upsert deviceId={} phone={}", deviceData.getDeviceId(), deviceData.getPhoneNumber());
+        DeviceData saved = mongoTemplate.findAndModify(
+                byDeviceId(deviceData.getDeviceId()),
+                buildUpdate(deviceData),
+                UPSERT_RETURN_NEW,
+                DeviceData.class);
+        historyService.record(deviceData);
+        recordState(saved);
+        notifyIfDirect(saved);
+        return saved;
+    }
+
+    /**
+     * Upsert a batch of merged telemetry in a single unordered bulk write.
+     * Only non-null fields are $set, so partial updates never clobber stored values.
+     * History was already recorded per reading when the telemetry was queued.
+     */
+    public void bulkUpsert(Collection<DeviceData> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DeviceData.class);
+        List<String> deviceIds = new ArrayList<>(updates.size());
+        for (DeviceData update : updates) {
+            bulkOps.upsert(byDeviceId(update.getDeviceId()), buildUpdate(update));
+            deviceIds.add(update.getDeviceId());
         }
+        bulkOps.execute();
+
+        if (!notifiesDirectly()) {
+            // The change stream delivers the merged documents and refreshes the cache
+            deviceIds.forEach(deviceStateCache::invalidate);
+            return;
+        }
+        // One read for the whole batch so subscribers get full documents, not partial deltas
+        mongoTemplate.find(Query.query(Criteria.where("deviceId").in(deviceIds)), DeviceData.class)
+                .forEach(device -> {
+                    recordState(device);
+                    notifyFrontend(device);
+                });
     }
 
     public void deleteByDeviceId(String deviceId) {
         DeviceData device = findByDeviceId(deviceId);
         if (device != null) {
             deviceRepository.delete(device);
+            deviceStateCache.invalidate(deviceId);
+            fleetAggregates.apply(compactDeviceStore.remove(deviceId), null);
+            if (device.getPhoneNumber() != null) {
+                lastValueCache.invalidate(LargePayloadService.phoneTopic(device.getPhoneNumber()));
+            }
+        }
+    }
+
+    /**
+     * Record a committed device document in the in-process state: the
+     * device cache, the compact fleet store and the fleet aggregates. The
+     * phone topic's last value is dropped until the new state is published,
+     * since a write nobody watches is never published at all.
+     *
+     * @return the device's previous fleet state, or null if it was unknown
+     */
+    public DeviceData recordState(DeviceData device) {
+        if (device == null || device.getDeviceId() == null) {
+            return null;
+        }
+        deviceStateCache.write(device);
+        if (device.getPhoneNumber() != null) {
+            lastValueCache.invalidate(LargePayloadService.phoneTopic(device.getPhoneNumber()));
         }
+        DeviceData previous = compactDeviceStore.put(device);
+        fleetAggregates.apply(previous, device);
+        return previous;
     }
 
-    private void notifyFrontend(DeviceData deviceData) {
-        System.out.println("NotifyFrontend called - DeviceId: " + deviceData.getDeviceId() + ", Phone: " + deviceData.getPhoneNumber());
-        
-        if (deviceData.getPhoneNumber() != null) {
-            // Use LargePayloadService for handling potentially large device data
-            largePayloadService.sendLargePayload(deviceData.getPhoneNumber(), deviceData);
-            System.out.println("Sent large payload update for phone: " + deviceData.getPhoneNumber());
-        } else {
-            // Fallback to regular messaging for data without phone number
-            Map<String, Object> update = new HashMap<>();
-            update.put("deviceId", deviceData.getDeviceId());
-            update.put("data", deviceData);
-            update.put("timestamp", System.currentTimeMillis());
-            
-            System.out.println("No phone number found, sending to general topic");
-            messagingTemplate.convertAndSend("/topic/device-updates", update);
+    /**
+     * Drop a device whose document was deleted, possibly by another node.
+     * Change stream deletes only carry the document id, so the device is
+     * looked up by it; a device re-created since then has a new id and is
+     * kept.
+     *
+     * @return the removed fleet state, or null if no device had this id
+     */
+    public DeviceData recordDeletion(String id) {
+        deviceStateCache.invalidateById(id);
+        DeviceData removed = compactDeviceStore.removeById(id);
+        if (removed != null) {
+            fleetAggregates.apply(removed, null);
+            if (removed.getPhoneNumber() != null) {
+                lastValueCache.invalidate(LargePayloadService.phoneTopic(removed.getPhoneNumber()));
+            }
+        }
+        return removed;
+    }
+
+    static Query byDeviceId(String deviceId) {
+        return Query.query(Criteria.where("deviceId").is(deviceId));
+    }
+
+    static Update buildUpdate(DeviceData deviceData) {
+        Update update = new Update();
+        if (deviceData.getPhoneNumber() != null) update.set("phoneNumber", deviceData.getPhoneNumber());
+        if (deviceData.getWifiStatus() != null) update.set("wifiStatus", deviceData.getWifiStatus());
+        if (deviceData.getBatteryLevel() != null) update.set("batteryLevel", deviceData.getBatteryLevel());
+        if (deviceData.getStorageUsed() != null) update.set("storageUsed", deviceData.getStorageUsed());
+        if (deviceData.getSignalStrength() != null) update.set("signalStrength", deviceData.getSignalStrength());
+        if (deviceData.getModel() != null) update.set("model", deviceData.getModel());
+        if (deviceData.getFirmware() != null) update.set("firmware", deviceData.getFirmware());
+        if (deviceData.getImei() != null) update.set("imei", deviceData.getImei());
+        update.setOnInsert("deviceId", deviceData.getDeviceId());
+        return update;
+    }
+
+    private void notifyIfDirect(DeviceData deviceData) {
+        if (notifiesDirectly()) {
+            notifyFrontend(deviceData);
+        }
+    }
+
+    /**
+     * One push per write: to the device's per-phone topic (rate-limited by
+     * the conflater) and to the {@code /topic/device-updates} firehose, each
+     * only while someone is subscribed to it.
+     */
+    public void notifyFrontend(DeviceData deviceData) {
+        String phoneNumber = deviceData.getPhoneNumber();
+        boolean phoneWatched = phoneNumber != null
+                && sessionManager.hasSubscribers(LargePayloadService.phoneTopic(phoneNumber));
+        boolean firehoseWatched = sessionManager.hasSubscribers(GENERAL_TOPIC);
+        // Nobody is watching this device: skip serialization, diffing and compression entirely
+        if (!phoneWatched && !firehoseWatched) {
+            return;
+        }
+
+        try (LogContext ignored = LogContext.device(deviceData.getDeviceId(), phoneNumber)) {
+            log.info(LogMarkers.EVENT, "Notifying subscribers of device {} (phone topic {}, firehose {})",
+                    deviceData.getDeviceId(), phoneWatched, firehoseWatched);
+            if (phoneWatched) {
+                // Rate-limited per phone topic, then pushed by LargePayloadService
+                updateConflater.submit(deviceData);
+            }
+            if (firehoseWatched) {
+                try {
+                    topicPublisher.publish(GENERAL_TOPIC, DeviceUpdateFrame.forGeneralTopic(deviceData),
+                            Map.of(FramePolicy.COALESCE_KEY_HEADER, deviceData.getDeviceId()));
+                } catch (Exception e) {
+                    log.warn(LogMarkers.EVENT, "Error sending update to general topic: {}", e.getMessage());
+                }
+            }
         }
     }
 }
@@ -1,72 +1,111 @@
 package com.websocket.example.service;
 
+import com.websocket.example.concurrent.AsyncRateLimiter;
+import com.websocket.example.logging.LogContext;
+import com.websocket.example.logging.LogMarkers;
 import com.websocket.example.model.DeviceData;
+import com.websocket.example.simulator.DeviceProfiles;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.Random;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class FCMService {
 
+    private static final Logger log = LoggerFactory.getLogger(FCMService.class);
+
     @Autowired
     private DeviceService deviceService;
 
-    // Add rate limiting for 1000 concurrent FCM requests
-    private final Semaphore fcmSemaphore = new Semaphore(50); // Max 50 concurrent FCM calls
+    @Autowired
+    private TaskScheduler taskScheduler;
 
-    public void sendDeviceInfoRequest(String phoneNumber) {
-        System.out.println("Mock FCM: Sending request to device with phone: " + phoneNumber);
-        
-        // Simulate FCM delay and mock device response
-        CompletableFuture.runAsync(() -> {
-            try {
-                fcmSemaphore.acquire(); // Rate limit
-                Thread.sleep(2000); // Simulate 2 second delay
-                simulateDeviceResponse(phoneNumber);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            } finally {
-                fcmSemaphore.release();
-            }
-        });
+    @Autowired
+    private ExecutorService blockingIoExecutor;
+
+    @Value("${fcm.max-concurrent:50}")
+    private int maxConcurrent;
+
+    @Value("${fcm.max-queued:1000}")
+    private int maxQueued;
+
+    @Value("${fcm.acquire-timeout-ms:5000}")
+    private long acquireTimeoutMs;
+
+    @Value("${fcm.response-delay-ms:2000}")
+    private long responseDelayMs;
+
+    // Bounds in-flight FCM requests without parking a thread per waiting request
+    private AsyncRateLimiter fcmLimiter;
+
+    @PostConstruct
+    public void init() {
+        fcmLimiter = new AsyncRateLimiter("fcm", maxConcurrent, maxQueued, acquireTimeoutMs, taskScheduler);
     }
 
-    private void simulateDeviceResponse(String phoneNumber) {
-        System.out.println("Mock Device Response: Sending telemetry for phone: " + phoneNumber);
-        
-        Random random = new Random();
-        
+    /**
+     * Send a mock FCM request; the simulated device answers after the response delay.
+     *
+     * @return the stored device state once the response is processed, or
+     *         completes exceptionally when the request was rejected or timed
+     *         out waiting for a slot
+     */
+    public CompletableFuture<DeviceData> sendDeviceInfoRequest(String phoneNumber) {
+        try (LogContext ignored = LogContext.phone(phoneNumber)) {
+            log.info(LogMarkers.EVENT, "Mock FCM: sending request to device with phone {}", phoneNumber);
+        }
+
+        return fcmLimiter.submit(() -> delay(responseDelayMs)
+                .thenApplyAsync(ignored -> {
+                    // Stored even if the requesting dashboard navigated away: REST callers and the
+                    // search cache need it, and the upsert only pushes to topics someone watches
+                    try (LogContext context = LogContext.phone(phoneNumber)) {
+                        return simulateDeviceResponse(phoneNumber);
+                    }
+                }, blockingIoExecutor));
+    }
+
+    public Map<String, Object> getStats() {
+        return fcmLimiter.getStats();
+    }
+
+    // Simulated network latency without holding a thread
+    private CompletableFuture<Void> delay(long millis) {
+        CompletableFuture<Void> elapsed = new CompletableFuture<>();
+        taskScheduler.schedule(() -> elapsed.complete(null), Instant.now().plusMillis(millis));
+        return elapsed;
+    }
+
+    private DeviceData simulateDeviceResponse(String phoneNumber) {
+        log.debug(LogMarkers.EVENT, "Mock device response: sending telemetry for phone {}", phoneNumber);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
         DeviceData mockDevice = new DeviceData();
         mockDevice.setDeviceId("DEVICE_" + phoneNumber.substring(phoneNumber.length() - 4));
         mockDevice.setPhoneNumber(phoneNumber);
         mockDevice.setWifiStatus(random.nextBoolean() ? "Connected" : "Disconnected");
         mockDevice.setBatteryLevel(20 + random.nextInt(80)); // 20-100%
         mockDevice.setStorageUsed(String.valueOf(10 + random.nextInt(50))); // 10-60GB
-        mockDevice.setSignalStrength(getRandomSignal());
-        mockDevice.setModel(getRandomModel());
-        mockDevice.setFirmware(getRandomFirmware());
+        mockDevice.setSignalStrength(DeviceProfiles.randomSignal(random));
+        mockDevice.setModel(DeviceProfiles.randomModel(random));
+        mockDevice.setFirmware(DeviceProfiles.randomFirmware(random));
         mockDevice.setImei("IMEI_" + System.currentTimeMillis());
         
         // Save device data (triggers WebSocket notification)
-        deviceService.upsert(mockDevice);
+        DeviceData stored = deviceService.upsert(mockDevice);
         
-        System.out.println("Mock device response processed for: " + phoneNumber);
-    }
-
-    private String getRandomSignal() {
-        String[] signals = {"Excellent", "Good", "Fair", "Poor"};
-        return signals[new Random().nextInt(signals.length)];
-    }
-
-    private String getRandomModel() {
-        String[] models = {"iPhone 14", "Samsung Galaxy S23", "Google Pixel 7", "OnePlus 11"};
-        return models[new Random().nextInt(models.length)];
-    }
-
-    private String getRandomFirmware() {
-        String[] firmwares = {"iOS 17.1", "Android 14", "Android 13", "iOS 16.5"};
-        return firmwares[new Random().nextInt(firmwares.length)];
+        log.debug(LogMarkers.EVENT, "Mock device response processed for phone {}", phoneNumber);
+        return stored;
     }
 }
@@ -1,129 +1,245 @@
 package com.websocket.example.service;
 
+import com.websocket.example.broker.BrokerMode;
+import com.websocket.example.cache.DeviceStateCache;
+import com.websocket.example.compression.CodecRegistry;
+import com.websocket.example.compression.PayloadCodec;
+import com.websocket.example.delta.DeltaFrame;
+import com.websocket.example.delta.DeviceDeltaTracker;
+import com.websocket.example.logging.LogMarkers;
 import com.websocket.example.model.DeviceData;
+import com.websocket.example.publish.DeviceUpdateFrame;
+import com.websocket.example.publish.LastValueCache;
+import com.websocket.example.publish.TopicPublisher;
+import com.websocket.example.session.FramePolicy;
+import com.websocket.example.transfer.ChunkedTransferService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.zip.GZIPOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
 public class LargePayloadService {
 
+    private static final Logger log = LoggerFactory.getLogger(LargePayloadService.class);
+
+    public static final String PHONE_TOPIC_PREFIX = "/topic/device-updates/";
+
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private TopicPublisher topicPublisher;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private DeviceDeltaTracker deltaTracker;
+
+    @Autowired
+    private CodecRegistry codecRegistry;
+
+    @Autowired
+    private ChunkedTransferService chunkedTransferService;
+
+    @Autowired
+    private LastValueCache lastValueCache;
+
+    @Autowired
+    private DeviceStateCache deviceStateCache;
+
+    @Value("${websocket.push.delta-enabled:true}")
+    private boolean deltaEnabled;
+
+    // Delta versions are per node; once other nodes publish on the same topic they would interleave
+    @Value("${websocket.broker.mode:simple}")
+    private BrokerMode brokerMode;
+
     /**
-     * Compress large payload before sending via WebSocket
+     * Push a device update to its per-phone topic. In delta mode only the
+     * changed fields are sent as a merge patch; the first update on a topic
+     * (and any resync) carries the full snapshot. Delta mode is only used
+     * with the simple broker.
      */
     public void sendLargePayload(String phoneNumber, DeviceData deviceData) {
+        if (!deltaEnabled || brokerMode != BrokerMode.SIMPLE) {
+            sendFullPayload(phoneNumber, deviceData, null);
+            return;
+        }
+
+        // Sent while the tracker holds the topic, so versions reach the broker in order;
+        // nothing is sent when nothing changed since the last push
         try {
-            // Convert to JSON
-            String jsonData = objectMapper.writeValueAsString(deviceData);
-            
-            // Check if compression is needed (>100KB)
-            if (jsonData.length() > 100 * 1024) {
-                // Compress the payload
-                String compressedData = compressData(jsonData);
-                
-                Map<String, Object> message = new HashMap<>();
-                message.put("compressed", true);
-                message.put("data", compressedData);
-                message.put("originalSize", jsonData.length());
-                message.put("compressedSize", compressedData.length());
-                message.put("timestamp", System.currentTimeMillis());
-                
-                sendToPhoneSpecificTopic(phoneNumber, message);
-                System.out.println("Sent compressed payload: " + jsonData.length() + " -> " + compressedData.length() + " bytes");
-            } else {
-                // Send uncompressed for small payloads
+            deltaTracker.publishNext(phoneTopic(phoneNumber), objectMapper.valueToTree(deviceData), frame -> {
+                if (frame.full()) {
+                    sendFullPayload(phoneNumber, deviceData, frame.version());
+                } else {
+                    sendPatch(phoneNumber, deviceData, frame);
+                }
+            });
+        } catch (Exception e) {
+            log.warn(LogMarkers.EVENT, "Error sending delta payload for phone {}: {}", phoneNumber, e.getMessage());
+        }
+    }
+
+    private void sendPatch(String phoneNumber, DeviceData deviceData, DeltaFrame frame) throws IOException {
+        // Serialized as a full frame only if a new subscriber asks for it
+        lastValueCache.put(phoneTopic(phoneNumber), deviceData, null);
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("delta", true);
+        message.put("version", frame.version());
+        message.put("patch", frame.body());
+        message.put("phoneNumber", phoneNumber);
+        message.put("timestamp", System.currentTimeMillis());
+        sendToPhoneSpecificTopic(phoneNumber, message, deltaHeaders(deviceData.getDeviceId(), true));
+    }
+
+    /**
+     * Send the current snapshot for a phone to one subscription only, used
+     * when a client subscribes or reports a version gap.
+     *
+     * The delta tracker's versioned snapshot is used while the topic has
+     * other subscribers. Otherwise the last full frame comes from the
+     * LastValueCache, or is built from the in-process device cache, so a
+     * new subscriber gets the current state without an FCM round trip or a
+     * Mongo read.
+     */
+    public void sendSnapshotToSession(String phoneNumber, String sessionId, String subscriptionId) {
+        boolean sent;
+        try {
+            // Ordered with the topic's patches: the next patch is never sent ahead of this snapshot
+            sent = deltaTracker.sendSnapshot(phoneTopic(phoneNumber), frame -> {
                 Map<String, Object> message = new HashMap<>();
                 message.put("compressed", false);
-                message.put("data", deviceData);
+                message.put("data", frame.body());
+                message.put("version", frame.version());
+                message.put("phoneNumber", phoneNumber);
                 message.put("timestamp", System.currentTimeMillis());
-                
-                sendToPhoneSpecificTopic(phoneNumber, message);
-                System.out.println("Sent uncompressed payload: " + jsonData.length() + " bytes");
+
+                String deviceId = frame.body().hasNonNull("deviceId") ? frame.body().get("deviceId").asText() : null;
+                topicPublisher.sendToSubscription(sessionId, subscriptionId, phoneTopic(phoneNumber),
+                        topicPublisher.serialize(message), deltaHeaders(deviceId, false));
+            });
+        } catch (Exception e) {
+            log.warn(LogMarkers.EVENT, "Error sending snapshot to session {}: {}", sessionId, e.getMessage());
+            return;
+        }
+        if (!sent) {
+            sendLastValueToSession(phoneNumber, sessionId, subscriptionId);
+        }
+    }
+
+    private void sendLastValueToSession(String phoneNumber, String sessionId, String subscriptionId) {
+        String topic = phoneTopic(phoneNumber);
+        try {
+            byte[] payload = lastValueCache.frame(topic);
+            if (payload == null) {
+                DeviceStateCache.CachedDevice cached = deviceStateCache.getByPhone(phoneNumber);
+                if (cached == null) {
+                    return; // unknown here; the first update will be a full frame
+                }
+                lastValueCache.put(topic, cached.device(), null);
+                payload = lastValueCache.frame(topic);
+                if (payload == null) {
+                    return; // evicted or invalidated in between
+                }
             }
+            topicPublisher.sendToSubscription(sessionId, subscriptionId, topic, payload, Map.of());
+        } catch (Exception e) {
+            log.warn(LogMarkers.EVENT, "Error sending last value to session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Send the full device state. Large payloads are compressed per subscriber
+     * by PayloadCompressionInterceptor for clients that negotiated a codec;
+     * everyone else receives plain JSON.
+     */
+    private void sendFullPayload(String phoneNumber, DeviceData deviceData, Long version) {
+        try {
+            byte[] payload = topicPublisher.serialize(DeviceUpdateFrame.forPhoneTopic(deviceData, version));
+            // An unversioned frame is exactly what a new subscriber needs, so its bytes are kept as is
+            lastValueCache.put(phoneTopic(phoneNumber), deviceData, version == null ? payload : null);
+
+            // Full state supersedes any older state still queued for a slow subscriber
+            topicPublisher.publish(phoneTopic(phoneNumber), payload, version == null
+                    ? Map.of(FramePolicy.COALESCE_KEY_HEADER, deviceData.getDeviceId())
+                    : deltaHeaders(deviceData.getDeviceId(), false));
         } catch (Exception e) {
-            System.err.println("Error sending large payload: " + e.getMessage());
+            log.warn(LogMarkers.EVENT, "Error sending payload for phone {}: {}", phoneNumber, e.getMessage());
         }
     }
 
     /**
-     * Send chunked payload for very large data (>1MB)
+     * Send chunked payload for very large data (>1MB). Chunks are streamed in
+     * the background, paced by the subscribers' outbound queues.
      */
     public void sendChunkedPayload(String phoneNumber, DeviceData deviceData) {
         try {
-            String jsonData = objectMapper.writeValueAsString(deviceData);
-            int chunkSize = 500 * 1024; // 500KB chunks
-            
-            if (jsonData.length() > chunkSize) {
-                String sessionId = generateSessionId();
-                int totalChunks = (int) Math.ceil((double) jsonData.length() / chunkSize);
-                
-                for (int i = 0; i < totalChunks; i++) {
-                    int start = i * chunkSize;
-                    int end = Math.min(start + chunkSize, jsonData.length());
-                    String chunk = jsonData.substring(start, end);
-                    
-                    Map<String, Object> chunkMessage = new HashMap<>();
-                    chunkMessage.put("chunked", true);
-                    chunkMessage.put("sessionId", sessionId);
-                    chunkMessage.put("chunkIndex", i);
-                    chunkMessage.put("totalChunks", totalChunks);
-                    chunkMessage.put("data", chunk);
-                    chunkMessage.put("timestamp", System.currentTimeMillis());
-                    
-                    sendToPhoneSpecificTopic(phoneNumber, chunkMessage);
-                    
-                    // Small delay between chunks to prevent overwhelming
-                    Thread.sleep(10);
-                }
-                
-                System.out.println("Sent chunked payload: " + totalChunks + " chunks, " + jsonData.length() + " total bytes");
-            } else {
+            Map<String, Object> metadata = Map.of("phoneNumber", phoneNumber);
+            if (!chunkedTransferService.startTransfer(phoneTopic(phoneNumber), deviceData, metadata)) {
                 // Use regular method for smaller payloads
                 sendLargePayload(phoneNumber, deviceData);
             }
         } catch (Exception e) {
-            System.err.println("Error sending chunked payload: " + e.getMessage());
+            log.warn(LogMarkers.EVENT, "Error sending chunked payload for phone {}: {}", phoneNumber, e.getMessage());
         }
     }
 
-    private void sendToPhoneSpecificTopic(String phoneNumber, Object message) {
-        String topic = "/topic/device-updates/" + phoneNumber;
-        messagingTemplate.convertAndSend(topic, message);
+    /**
+     * Drop per-topic push state once nobody is subscribed; the next update
+     * for the phone starts again with a full frame.
+     */
+    public void forgetTopic(String topic) {
+        deltaTracker.forget(topic);
     }
 
-    private String compressData(String data) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (GZIPOutputStream gzipOut = new GZIPOutputStream(baos)) {
-            gzipOut.write(data.getBytes(StandardCharsets.UTF_8));
-        }
-        return java.util.Base64.getEncoder().encodeToString(baos.toByteArray());
+    // Serialized once here; the broker shares the bytes with every subscriber of the topic
+    private void sendToPhoneSpecificTopic(String phoneNumber, Object message, Map<String, String> headers) throws IOException {
+        topicPublisher.publish(phoneTopic(phoneNumber), message, headers);
     }
 
-    public String decompressData(String compressedData) throws IOException {
-        byte[] compressed = java.util.Base64.getDecoder().decode(compressedData);
-        ByteArrayInputStream bais = new ByteArrayInputStream(compressed);
-        try (GZIPInputStream gzipIn = new GZIPInputStream(bais)) {
-            return new String(gzipIn.readAllBytes(), StandardCharsets.UTF_8);
+    /**
+     * Outbound queue policy for a frame of a versioned delta stream. None of
+     * them may be dropped under pressure: a missing full frame or patch shows
+     * the client a version gap, and the resync snapshot it asks for would
+     * queue behind the same backlog. A slow subscriber is kept bounded by
+     * coalescing instead, each full frame replacing the frames queued before it.
+     */
+    private static Map<String, String> deltaHeaders(String deviceId, boolean patch) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(FramePolicy.NO_DROP_HEADER, "true");
+        if (deviceId != null) {
+            headers.put(FramePolicy.COALESCE_KEY_HEADER, deviceId);
+        }
+        if (patch) {
+            headers.put(FramePolicy.PATCH_HEADER, "true");
         }
+        return headers;
     }
 
-    private String generateSessionId() {
-        return "session_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 1000);
+    public static String phoneTopic(String phoneNumber) {
+        return PHONE_TOPIC_PREFIX + phoneNumber;
+    }
+
+    public byte[] compressData(byte[] data, String codecName) {
+        return codec(codecName).encode(data, 0, data.length);
+    }
+
+    public byte[] decompressData(byte[] compressedData, String codecName) throws IOException {
+        return codec(codecName).decode(compressedData);
+    }
+
+    private PayloadCodec codec(String codecName) {
+        PayloadCodec codec = codecRegistry.get(codecName);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown codec: " + codecName);
+        }
+        return codec;
     }
 }
@@ -0,0 +1,80 @@
+package com.websocket.example.service;
+
+import com.websocket.example.history.TelemetryHistoryService;
+import com.websocket.example.logging.LogMarkers;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.repository.ReactiveDeviceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking device writes for the reactive profile.
+ *
+ * Same queries and updates as DeviceService, issued through the Reactive
+ * Streams driver so no thread waits on Mongo. Committed documents update the
+ * in-process state like the blocking path and, when this node notifies
+ * directly, go to subscribers through the DeviceNotificationPipeline.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveDeviceService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveDeviceService.class);
+
+    @Autowired
+    private ReactiveDeviceRepository reactiveDeviceRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceNotificationPipeline notificationPipeline;
+
+    @Autowired
+    private TelemetryHistoryService historyService;
+
+    /**
+     * Whether the notification pipeline can take another write; callers
+     * should back off instead of writing when it cannot.
+     */
+    public boolean canAccept() {
+        return !deviceService.notifiesDirectly() || notificationPipeline.hasCapacity();
+    }
+
+    public Mono<DeviceData> save(DeviceData deviceData) {
+        return reactiveDeviceRepository.save(deviceData)
+                .doOnNext(saved -> historyService.record(deviceData))
+                .doOnNext(this::committed);
+    }
+
+    /**
+     * Atomic single round-trip upsert, as in DeviceService#upsert: only the
+     * non-null fields are $set and the merged document is returned.
+     */
+    public Mono<DeviceData> upsert(DeviceData deviceData) {
+        log.debug(LogMarkers.EVENT, "Reactive upsert deviceId={} phone={}", deviceData.getDeviceId(), deviceData.getPhoneNumber());
+        return reactiveMongoTemplate.findAndModify(
+                        DeviceService.byDeviceId(deviceData.getDeviceId()),
+                        DeviceService.buildUpdate(deviceData),
+                        DeviceService.UPSERT_RETURN_NEW,
+                        DeviceData.class)
+                .doOnNext(saved -> historyService.record(deviceData))
+                .doOnNext(this::committed);
+    }
+
+    private void committed(DeviceData saved) {
+        // Runs on a driver thread: cache and fleet store writes are in-memory, notification is queued
+        deviceService.recordState(saved);
+        if (deviceService.notifiesDirectly()) {
+            notificationPipeline.offer(saved);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.websocket.example.session;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the slow-consumer policies of {@link OutboundQueueSessionDecorator}
+ * need to know about one outbound MESSAGE frame.
+ *
+ * Publishers set it with the {@code x-coalesce-key}, {@code x-patch} and
+ * {@code x-no-drop} headers. They travel as native headers so they survive
+ * the broker relay and the cluster bus; {@link QueueingSubProtocolWebSocketHandler}
+ * reads them and strips them from the message before it is encoded, so they
+ * never reach the client.
+ *
+ * @param destination  the frame's destination, checked against the drop-oldest prefixes
+ * @param subscription the subscription it is delivered on; coalescing never crosses subscriptions
+ * @param coalesceKey  what the frame describes (a device); a newer full frame with the same key
+ *                     supersedes every frame queued under it
+ * @param patch        the frame only applies on top of the earlier frames of its key, so it never
+ *                     replaces them (it is replaced by the next full frame)
+ * @param noDrop       never discarded by drop-oldest (chunks of a paced transfer, delta streams)
+ */
+public record FramePolicy(String destination, String subscription, String coalesceKey, boolean patch,
+                          boolean noDrop) {
+
+    public static final String COALESCE_KEY_HEADER = "x-coalesce-key";
+    public static final String PATCH_HEADER = "x-patch";
+    public static final String NO_DROP_HEADER = "x-no-drop";
+
+    private static final List<String> HEADERS = List.of(COALESCE_KEY_HEADER, PATCH_HEADER, NO_DROP_HEADER);
+
+    /**
+     * Non-MESSAGE frames (CONNECTED, RECEIPT, ERROR) and anything else the
+     * policies know nothing about: never dropped or coalesced.
+     */
+    public static final FramePolicy NONE = new FramePolicy(null, null, null, false, false);
+
+    public static FramePolicy of(MessageHeaders headers) {
+        Map<String, List<String>> nativeHeaders = nativeHeaders(headers);
+        return new FramePolicy(SimpMessageHeaderAccessor.getDestination(headers),
+                SimpMessageHeaderAccessor.getSubscriptionId(headers),
+                first(nativeHeaders, COALESCE_KEY_HEADER),
+                first(nativeHeaders, PATCH_HEADER) != null,
+                first(nativeHeaders, NO_DROP_HEADER) != null);
+    }
+
+    /**
+     * The message without the policy headers, or the message itself if it
+     * has none of them.
+     */
+    public static Message<?> strip(Message<?> message) {
+        Map<String, List<String>> nativeHeaders = nativeHeaders(message.getHeaders());
+        if (nativeHeaders == null || HEADERS.stream().noneMatch(nativeHeaders::containsKey)) {
+            return message;
+        }
+
+        // A copy: the broker may share one native header map between the messages of a fan-out
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        HEADERS.forEach(accessor::removeNativeHeader);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> nativeHeaders(MessageHeaders headers) {
+        return (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+    }
+
+    private static String first(Map<String, List<String>> nativeHeaders, String name) {
+        List<String> values = nativeHeaders != null ? nativeHeaders.get(name) : null;
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+}
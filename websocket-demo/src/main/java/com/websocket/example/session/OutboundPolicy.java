@@ -0,0 +1,25 @@
+package com.websocket.example.session;
+
+import java.util.List;
+
+/**
+ * Limits applied by {@link OutboundQueueSessionDecorator} to every session.
+ *
+ * @param queueLimitBytes           queued bytes above which drop-oldest frames are discarded
+ * @param queueLimitMessages        queued frames above which drop-oldest frames are discarded
+ * @param disconnectThresholdBytes  queued bytes at which the session is closed
+ * @param sendTimeLimitMs           how long a single socket write may block before the session is closed
+ * @param dropOldestPrefixes        destinations whose frames may be discarded under pressure
+ */
+public record OutboundPolicy(int queueLimitBytes, int queueLimitMessages, int disconnectThresholdBytes,
+                             long sendTimeLimitMs, List<String> dropOldestPrefixes) {
+
+    public boolean isDropOldest(String destination) {
+        for (String prefix : dropOldestPrefixes) {
+            if (destination.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
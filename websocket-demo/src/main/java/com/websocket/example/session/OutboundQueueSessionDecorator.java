@@ -0,0 +1,268 @@
+package com.websocket.example.session;
+
+import com.websocket.example.logging.LogMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-session outbound queue with policies for slow consumers.
+ *
+ * Senders (broker threads, chunk streams) only ever enqueue and try to flush;
+ * if another thread is already writing to the socket they return
+ * immediately, so a slow client never holds a broker thread. While the queue
+ * is backed up:
+ * <ul>
+ * <li>a full MESSAGE frame with a coalesce key replaces every frame queued
+ * under that key on its subscription: the older full frame and any patches
+ * on top of it (latest state per device wins),</li>
+ * <li>once the queue is over its limit, the oldest frames on drop-oldest
+ * destinations (telemetry topics) are discarded to make room,</li>
+ * <li>if it still grows past the disconnect threshold, or a single write has
+ * been stuck longer than the send time limit, the session is closed.</li>
+ * </ul>
+ * What a frame is comes from its {@link FramePolicy}, handed over by
+ * {@link QueueingSubProtocolWebSocketHandler} through {@link #forFrame}.
+ * Frames marked no-drop (chunks of a paced transfer, versioned delta
+ * streams, where a gap only forces a resync), frames on other destinations
+ * and non-MESSAGE frames (CONNECTED, RECEIPT, ERROR) are never dropped.
+ */
+public class OutboundQueueSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundQueueSessionDecorator.class);
+
+    private static final CloseStatus SLOW_CONSUMER = CloseStatus.SESSION_NOT_RELIABLE.withReason("Slow consumer");
+
+    private final OutboundPolicy policy;
+
+    private final Deque<QueuedFrame> queue = new ArrayDeque<>();
+    private int queuedBytes;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile long flushStartedAt;
+    // Size of the frame being written right now; a stuck write still counts as backlog
+    private volatile int inFlightBytes;
+    private volatile boolean closing;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    public OutboundQueueSessionDecorator(WebSocketSession delegate, OutboundPolicy policy) {
+        super(delegate);
+        this.policy = policy;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        send(message, FramePolicy.NONE);
+    }
+
+    /**
+     * This session as seen by the STOMP handler while it encodes one
+     * MESSAGE frame: whatever it sends is queued under the given policy.
+     */
+    public WebSocketSession forFrame(FramePolicy framePolicy) {
+        return new WebSocketSessionDecorator(this) {
+            @Override
+            public void sendMessage(WebSocketMessage<?> message) throws IOException {
+                send(message, framePolicy);
+            }
+        };
+    }
+
+    private void send(WebSocketMessage<?> message, FramePolicy framePolicy) throws IOException {
+        if (closing) {
+            return;
+        }
+
+        boolean overThreshold;
+        synchronized (queue) {
+            enqueue(new QueuedFrame(message, framePolicy));
+            overThreshold = queuedBytes > policy.disconnectThresholdBytes();
+        }
+        if (overThreshold || writeStuck()) {
+            closeSlowConsumer();
+            return;
+        }
+
+        // Whoever holds the lock drains everything queued meanwhile; re-check after
+        // releasing so a frame enqueued just before unlock is not stranded
+        while (!closing && hasQueued() && flushLock.tryLock()) {
+            try {
+                flush();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        closing = true;
+        synchronized (queue) {
+            queue.clear();
+            queuedBytes = 0;
+        }
+        super.close(status);
+    }
+
+    /**
+     * Bytes queued plus the frame currently being written, i.e. everything
+     * accepted for this session that the transport has not taken yet.
+     */
+    public int getBufferSize() {
+        synchronized (queue) {
+            return queuedBytes + inFlightBytes;
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (queue) {
+            stats.put("queueDepth", queue.size());
+            stats.put("queuedBytes", queuedBytes);
+            stats.put("inFlightBytes", inFlightBytes);
+        }
+        stats.put("maxQueueDepth", maxQueueDepth);
+        stats.put("sent", sent.get());
+        stats.put("dropped", dropped.get());
+        stats.put("coalesced", coalesced.get());
+        return stats;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private void enqueue(QueuedFrame frame) {
+        if (frame.coalesceKey != null && !frame.framePolicy.patch() && !queue.isEmpty()) {
+            // Goes to the tail, so it never overtakes frames of other keys; everything it supersedes
+            // goes, including patches queued after the older full frame, which would otherwise
+            // reach the client ahead of it as a version gap
+            Iterator<QueuedFrame> it = queue.iterator();
+            while (it.hasNext()) {
+                QueuedFrame queued = it.next();
+                if (frame.coalesceKey.equals(queued.coalesceKey)) {
+                    it.remove();
+                    queuedBytes -= queued.size;
+                    coalesced.incrementAndGet();
+                }
+            }
+        }
+
+        queue.addLast(frame);
+        queuedBytes += frame.size;
+
+        if (queuedBytes > policy.queueLimitBytes() || queue.size() > policy.queueLimitMessages()) {
+            Iterator<QueuedFrame> oldest = queue.iterator();
+            while (oldest.hasNext() && (queuedBytes > policy.queueLimitBytes() || queue.size() > policy.queueLimitMessages())) {
+                QueuedFrame candidate = oldest.next();
+                if (candidate != frame && candidate.droppable()) {
+                    oldest.remove();
+                    queuedBytes -= candidate.size;
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+    }
+
+    private void flush() {
+        while (!closing) {
+            QueuedFrame frame;
+            synchronized (queue) {
+                frame = queue.pollFirst();
+                if (frame == null) {
+                    return;
+                }
+                queuedBytes -= frame.size;
+                inFlightBytes = frame.size;
+            }
+            flushStartedAt = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(frame.message);
+                sent.incrementAndGet();
+            } catch (IOException e) {
+                log.warn(LogMarkers.EVENT, "Error sending to WebSocket session {}: {}", getId(), e.getMessage());
+                closeSlowConsumer();
+                return;
+            } finally {
+                flushStartedAt = 0;
+                inFlightBytes = 0;
+            }
+        }
+    }
+
+    private boolean hasQueued() {
+        synchronized (queue) {
+            return !queue.isEmpty();
+        }
+    }
+
+    private boolean writeStuck() {
+        long startedAt = flushStartedAt;
+        return startedAt > 0 && System.currentTimeMillis() - startedAt > policy.sendTimeLimitMs();
+    }
+
+    private void closeSlowConsumer() {
+        if (closing) {
+            return;
+        }
+        log.warn("Closing slow WebSocket session {} ({} bytes queued)", getId(), getBufferSize());
+        try {
+            close(SLOW_CONSUMER);
+        } catch (IOException e) {
+            log.warn("Error closing WebSocket session {}: {}", getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * A frame plus what the policies need to know about it. Only touched
+     * under the queue lock.
+     */
+    private class QueuedFrame {
+        private final WebSocketMessage<?> message;
+        private final int size;
+        private final FramePolicy framePolicy;
+        // Scoped to the subscription so two subscriptions never swallow each other's frames
+        private final String coalesceKey;
+
+        private QueuedFrame(WebSocketMessage<?> message, FramePolicy framePolicy) {
+            this.message = message;
+            this.size = message.getPayloadLength();
+            this.framePolicy = framePolicy;
+            this.coalesceKey = framePolicy.coalesceKey() != null
+                    ? framePolicy.subscription() + ":" + framePolicy.coalesceKey()
+                    : null;
+        }
+
+        private boolean droppable() {
+            String destination = framePolicy.destination();
+            return destination != null && !framePolicy.noDrop() && policy.isDropOldest(destination);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.websocket.example.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * STOMP session handler that keeps our {@link OutboundQueueSessionDecorator}
+ * as the outermost session wrapper.
+ *
+ * The stock handler wraps every session in its own buffering decorator,
+ * which holds a lock while it writes, so only one thread ever reached our
+ * queue and the slow-consumer policies never saw a backlog. Our decorator
+ * already serializes writes to the socket, so it takes that place instead.
+ *
+ * Outbound MESSAGE frames are encoded against {@link OutboundQueueSessionDecorator#forFrame},
+ * so the queue gets each frame's {@link FramePolicy} without parsing the
+ * encoded frame, and the policy headers are stripped before encoding.
+ */
+public class QueueingSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(QueueingSubProtocolWebSocketHandler.class);
+
+    private final WebSocketSessionRegistry sessionRegistry;
+
+    public QueueingSubProtocolWebSocketHandler(MessageChannel clientInboundChannel, SubscribableChannel clientOutboundChannel,
+                                               WebSocketSessionRegistry sessionRegistry) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        if (session instanceof OutboundQueueSessionDecorator) {
+            return session;
+        }
+        return super.decorateSession(session);
+    }
+
+    @Override
+    public void handleMessage(Message<?> message) throws MessagingException {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        OutboundQueueSessionDecorator session = sessionId != null ? sessionRegistry.get(sessionId) : null;
+        if (session == null || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            // Not ours to queue (unknown or closing session, CONNECTED, RECEIPT, ERROR): the stock path
+            super.handleMessage(FramePolicy.strip(message));
+            return;
+        }
+
+        FramePolicy framePolicy = FramePolicy.of(headers);
+        try {
+            findProtocolHandler(session).handleMessageToClient(session.forFrame(framePolicy), FramePolicy.strip(message));
+        } catch (Exception e) {
+            // As the stock handler does: a failed send is logged, the session's own error handling closes it
+            log.error("Failed to send message to client in session {}", sessionId, e);
+        }
+    }
+}
@@ -1,17 +1,207 @@
 package com.websocket.example.session;
 
+import com.websocket.example.broker.BrokerMode;
+import com.websocket.example.service.LargePayloadService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
-// Track active sessions
+/**
+ * Registry of STOMP subscriptions, fed by subscribe, unsubscribe and
+ * disconnect events.
+ *
+ * Both directions are kept: destination -> sessions (with a per-session
+ * subscription count, since one session may subscribe twice) for "is anyone
+ * watching this phone" checks on the publish path, and session ->
+ * subscriptions for cleanup. All updates go through ConcurrentHashMap
+ * compute operations, which lock only the bin of the key being changed, so
+ * publishers never contend with each other.
+ *
+ * With more than one node, subscribers elsewhere count too: the cluster bus
+ * reports destinations its peers watch, and with an external broker relay
+ * other nodes' subscriptions are invisible, so every destination counts as
+ * watched.
+ */
 @Component
 public class SessionManager {
-    private final Map<String, Set<String>> phoneToSessions = new ConcurrentHashMap<>();
-    
-    public void addSession(String phoneNumber, String sessionId) {
-        phoneToSessions.computeIfAbsent(phoneNumber, k -> ConcurrentHashMap.newKeySet()).add(sessionId);
+
+    // destination -> sessionId -> number of subscriptions that session has on it
+    private final Map<String, Map<String, Integer>> destinationSessions = new ConcurrentHashMap<>();
+
+    // sessionId -> subscriptionId -> destination
+    private final Map<String, Map<String, String>> sessionSubscriptions = new ConcurrentHashMap<>();
+
+    @Value("${websocket.broker.mode:simple}")
+    private BrokerMode brokerMode;
+
+    private volatile Predicate<String> remoteSubscribers = destination -> false;
+    private volatile Consumer<String> watchListener = destination -> { };
+
+    @PostConstruct
+    public void init() {
+        if (brokerMode == BrokerMode.RELAY) {
+            remoteSubscribers = destination -> true;
+        }
+    }
+
+    /**
+     * Tells whether another node has subscribers for a destination.
+     */
+    public void setRemoteSubscribers(Predicate<String> remoteSubscribers) {
+        this.remoteSubscribers = remoteSubscribers;
+    }
+
+    /**
+     * Called with a destination after it gains its first or loses its last
+     * local subscriber; the listener reads the current state itself.
+     */
+    public void setWatchListener(Consumer<String> watchListener) {
+        this.watchListener = watchListener;
+    }
+
+    public void addSubscription(String sessionId, String subscriptionId, String destination) {
+        sessionSubscriptions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        boolean[] watched = new boolean[1];
+        destinationSessions.compute(destination, (d, sessions) -> {
+            Map<String, Integer> result = sessions != null ? sessions : new ConcurrentHashMap<>();
+            watched[0] = result.isEmpty();
+            result.merge(sessionId, 1, Integer::sum);
+            return result;
+        });
+        if (watched[0]) {
+            watchListener.accept(destination);
+        }
+    }
+
+    /**
+     * @return the destination that no longer has any subscribers, or null
+     */
+    public String removeSubscription(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = sessionSubscriptions.get(sessionId);
+        String destination = subscriptions != null ? subscriptions.remove(subscriptionId) : null;
+        if (destination == null) {
+            return null;
+        }
+        if (!release(sessionId, destination)) {
+            return null;
+        }
+        watchListener.accept(destination);
+        return destination;
+    }
+
+    /**
+     * Drop every subscription of a closed session.
+     *
+     * @return destinations that no longer have any subscribers
+     */
+    public List<String> removeSession(String sessionId) {
+        Map<String, String> subscriptions = sessionSubscriptions.remove(sessionId);
+        if (subscriptions == null) {
+            return List.of();
+        }
+        List<String> unwatched = new ArrayList<>();
+        for (String destination : subscriptions.values()) {
+            if (release(sessionId, destination)) {
+                unwatched.add(destination);
+                watchListener.accept(destination);
+            }
+        }
+        return unwatched;
+    }
+
+    /**
+     * Is anyone, on this node or another, subscribed to the destination?
+     */
+    public boolean hasSubscribers(String destination) {
+        return destinationSessions.containsKey(destination) || remoteSubscribers.test(destination);
+    }
+
+    public boolean hasLocalSubscribers(String destination) {
+        return destinationSessions.containsKey(destination);
+    }
+
+    public Set<String> watchedDestinations() {
+        return Collections.unmodifiableSet(destinationSessions.keySet());
+    }
+
+    public int subscriberCount(String destination) {
+        Map<String, Integer> sessions = destinationSessions.get(destination);
+        return sessions != null ? sessions.size() : 0;
+    }
+
+    public Set<String> sessionsFor(String destination) {
+        Map<String, Integer> sessions = destinationSessions.get(destination);
+        return sessions != null ? Collections.unmodifiableSet(sessions.keySet()) : Set.of();
+    }
+
+    /**
+     * Call {@code action} with (sessionId, subscriptionId) for every local
+     * subscription to a destination.
+     */
+    public void forEachSubscription(String destination, BiConsumer<String, String> action) {
+        for (String sessionId : sessionsFor(destination)) {
+            Map<String, String> subscriptions = sessionSubscriptions.get(sessionId);
+            if (subscriptions == null) {
+                continue;
+            }
+            subscriptions.forEach((subscriptionId, subscribed) -> {
+                if (subscribed.equals(destination)) {
+                    action.accept(sessionId, subscriptionId);
+                }
+            });
+        }
+    }
+
+    public Set<String> phonesFor(String sessionId) {
+        Map<String, String> subscriptions = sessionSubscriptions.get(sessionId);
+        if (subscriptions == null) {
+            return Set.of();
+        }
+        return subscriptions.values().stream()
+                .filter(destination -> destination.startsWith(LargePayloadService.PHONE_TOPIC_PREFIX))
+                .map(destination -> destination.substring(LargePayloadService.PHONE_TOPIC_PREFIX.length()))
+                .collect(Collectors.toSet());
+    }
+
+    public Map<String, Object> getStats(int topN) {
+        Map<String, Integer> top = destinationSessions.entrySet().stream()
+                .sorted((a, b) -> Integer.compare(b.getValue().size(), a.getValue().size()))
+                .limit(topN)
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().size(), (a, b) -> a, LinkedHashMap::new));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", sessionSubscriptions.size());
+        stats.put("watchedDestinations", destinationSessions.size());
+        stats.put("subscribersPerDestination", top);
+        return stats;
+    }
+
+    /**
+     * @return true if this was the last subscription on the destination
+     */
+    private boolean release(String sessionId, String destination) {
+        boolean[] emptied = new boolean[1];
+        destinationSessions.computeIfPresent(destination, (d, sessions) -> {
+            sessions.computeIfPresent(sessionId, (id, count) -> count > 1 ? count - 1 : null);
+            if (sessions.isEmpty()) {
+                emptied[0] = true;
+                return null;
+            }
+            return sessions;
+        });
+        return emptied[0];
     }
 }
@@ -0,0 +1,190 @@
+package com.websocket.example.session;
+
+import com.websocket.example.delta.DeviceDeltaTracker;
+import com.websocket.example.transfer.ChunkedTransferService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces memory budgets over the lifetime of WebSocket sessions.
+ *
+ * A session is charged for its outbound backlog (queued frames plus the one
+ * being written) and for the resume-stream chunks it is still owed; retained chunk transfers and cached
+ * delta snapshots are charged to the global budget. A periodic sweep closes
+ * sessions that are over their own budget or have been silent for longer
+ * than the idle timeout. If the global budget is still exceeded, retained
+ * transfers are trimmed first and then the largest sessions are closed,
+ * largest first with ties broken by session id, so the outcome does not
+ * depend on iteration order. Resources are released on disconnect rather
+ * than left for the garbage collector to find.
+ *
+ * SockJS HTTP transports keep their own message cache, which Spring does not
+ * expose; it is bounded by websocket.sockjs.http-message-cache-size instead.
+ */
+@Component
+public class SessionMemoryManager {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionMemoryManager.class);
+
+    private static final CloseStatus OVER_BUDGET = CloseStatus.SESSION_NOT_RELIABLE.withReason("Session memory budget exceeded");
+    private static final CloseStatus IDLE = CloseStatus.GOING_AWAY.withReason("Idle timeout");
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private ChunkedTransferService chunkedTransferService;
+
+    @Autowired
+    private DeviceDeltaTracker deltaTracker;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${websocket.memory.session-budget-bytes:4194304}")
+    private long sessionBudgetBytes;
+
+    @Value("${websocket.memory.global-budget-bytes:268435456}")
+    private long globalBudgetBytes;
+
+    @Value("${websocket.memory.idle-timeout-ms:120000}")
+    private long idleTimeoutMs;
+
+    @Value("${websocket.memory.sweep-interval-ms:1000}")
+    private long sweepIntervalMs;
+
+    private ScheduledFuture<?> sweepTask;
+
+    private volatile long lastSessionBytes;
+    private volatile long lastGlobalBytes;
+
+    private final AtomicLong overBudgetEvictions = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong globalEvictions = new AtomicLong();
+    private final AtomicLong trimmedTransferBytes = new AtomicLong();
+    private final AtomicLong releasedSessions = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        sweepTask = taskScheduler.scheduleWithFixedDelay(this::sweep, Duration.ofMillis(sweepIntervalMs));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+        }
+    }
+
+    /**
+     * Bytes currently charged to a session.
+     */
+    public long sessionBytes(String sessionId) {
+        return sessionRegistry.bufferedBytes(sessionId) + chunkedTransferService.pendingBytes(sessionId);
+    }
+
+    /**
+     * Release everything held on behalf of a disconnected session.
+     */
+    public void release(String sessionId) {
+        chunkedTransferService.releaseSession(sessionId);
+        sessionRegistry.unregister(sessionId);
+        releasedSessions.incrementAndGet();
+    }
+
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        List<SessionUsage> survivors = new ArrayList<>();
+        long sessionTotal = 0;
+
+        for (String sessionId : sessionRegistry.sessionIds()) {
+            long bytes = sessionBytes(sessionId);
+            if (bytes > sessionBudgetBytes) {
+                if (evict(sessionId, OVER_BUDGET)) {
+                    overBudgetEvictions.incrementAndGet();
+                }
+                continue;
+            }
+            long lastActivity = sessionRegistry.lastActivity(sessionId);
+            if (lastActivity > 0 && now - lastActivity > idleTimeoutMs) {
+                if (evict(sessionId, IDLE)) {
+                    idleEvictions.incrementAndGet();
+                }
+                continue;
+            }
+            survivors.add(new SessionUsage(sessionId, bytes));
+            sessionTotal += bytes;
+        }
+
+        long shared = chunkedTransferService.retainedBytes() + deltaTracker.estimatedBytes();
+        long excess = sessionTotal + shared - globalBudgetBytes;
+        if (excess > 0) {
+            // Retained transfers only serve resumes, so they go before any live session
+            long trimmed = chunkedTransferService.trimRetained(Math.max(0, chunkedTransferService.retainedBytes() - excess));
+            trimmedTransferBytes.addAndGet(trimmed);
+            excess -= trimmed;
+            shared -= trimmed;
+        }
+        if (excess > 0) {
+            survivors.sort(Comparator.comparingLong(SessionUsage::bytes).reversed()
+                    .thenComparing(SessionUsage::sessionId));
+            for (SessionUsage usage : survivors) {
+                if (excess <= 0 || usage.bytes() == 0) {
+                    break;
+                }
+                if (evict(usage.sessionId(), OVER_BUDGET)) {
+                    globalEvictions.incrementAndGet();
+                    excess -= usage.bytes();
+                    sessionTotal -= usage.bytes();
+                }
+            }
+        }
+
+        lastSessionBytes = sessionTotal;
+        lastGlobalBytes = sessionTotal + shared;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", sessionRegistry.size());
+        stats.put("sessionBytes", lastSessionBytes);
+        stats.put("globalBytes", lastGlobalBytes);
+        stats.put("retainedTransferBytes", chunkedTransferService.retainedBytes());
+        stats.put("snapshotBytes", deltaTracker.estimatedBytes());
+        stats.put("sessionBudgetBytes", sessionBudgetBytes);
+        stats.put("globalBudgetBytes", globalBudgetBytes);
+        stats.put("overBudgetEvictions", overBudgetEvictions.get());
+        stats.put("idleEvictions", idleEvictions.get());
+        stats.put("globalEvictions", globalEvictions.get());
+        stats.put("trimmedTransferBytes", trimmedTransferBytes.get());
+        stats.put("releasedSessions", releasedSessions.get());
+        return stats;
+    }
+
+    private boolean evict(String sessionId, CloseStatus status) {
+        boolean closed = sessionRegistry.close(sessionId, status);
+        if (closed) {
+            log.info("Closing WebSocket session {}: {}", sessionId, status.getReason());
+        }
+        return closed;
+    }
+
+    private record SessionUsage(String sessionId, long bytes) {
+    }
+}
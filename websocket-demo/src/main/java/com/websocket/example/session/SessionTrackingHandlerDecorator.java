@@ -0,0 +1,49 @@
+package com.websocket.example.session;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+/**
+ * Wraps every session in an {@link OutboundQueueSessionDecorator} before the
+ * STOMP handler sees it, and registers it so other components can look at how
+ * much outbound data each session is holding and when it was last heard from.
+ *
+ * {@link QueueingSubProtocolWebSocketHandler} keeps the STOMP handler from
+ * adding Spring's buffering decorator on top, so every outbound frame goes
+ * through our queue: that is where a slow client's backlog builds up and
+ * where the slow-consumer policies apply.
+ */
+public class SessionTrackingHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final WebSocketSessionRegistry registry;
+    private final OutboundPolicy policy;
+
+    public SessionTrackingHandlerDecorator(WebSocketHandler delegate, WebSocketSessionRegistry registry,
+                                           OutboundPolicy policy) {
+        super(delegate);
+        this.registry = registry;
+        this.policy = policy;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        OutboundQueueSessionDecorator tracked = new OutboundQueueSessionDecorator(session, policy);
+        registry.register(tracked);
+        super.afterConnectionEstablished(tracked);
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        registry.touch(session.getId());
+        super.handleMessage(session, message);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        registry.unregister(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+    }
+}
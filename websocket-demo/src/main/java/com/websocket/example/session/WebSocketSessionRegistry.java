@@ -0,0 +1,130 @@
+package com.websocket.example.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Open WebSocket sessions by id, with access to their outbound queues and last inbound activity
+@Component
+public class WebSocketSessionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketSessionRegistry.class);
+
+    private final Map<String, TrackedSession> sessions = new ConcurrentHashMap<>();
+
+    public void register(OutboundQueueSessionDecorator session) {
+        sessions.put(session.getId(), new TrackedSession(session));
+    }
+
+    public void unregister(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public OutboundQueueSessionDecorator get(String sessionId) {
+        TrackedSession tracked = sessions.get(sessionId);
+        return tracked != null ? tracked.session : null;
+    }
+
+    public Set<String> sessionIds() {
+        return sessions.keySet();
+    }
+
+    /**
+     * Record inbound traffic (including heartbeats) from the client.
+     */
+    public void touch(String sessionId) {
+        TrackedSession tracked = sessions.get(sessionId);
+        if (tracked != null) {
+            tracked.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Time of the last inbound frame, or of the connect if none arrived yet; 0 for unknown sessions.
+     */
+    public long lastActivity(String sessionId) {
+        TrackedSession tracked = sessions.get(sessionId);
+        return tracked != null ? tracked.lastActivity : 0;
+    }
+
+    /**
+     * Bytes queued in the session's outbound queue or being written to the
+     * transport, or 0 for unknown sessions. The registered decorator is the
+     * outermost one (see {@link QueueingSubProtocolWebSocketHandler}), so
+     * this is the whole backlog the server holds for the client.
+     */
+    public int bufferedBytes(String sessionId) {
+        TrackedSession tracked = sessions.get(sessionId);
+        return tracked != null ? tracked.session.getBufferSize() : 0;
+    }
+
+    public int maxBufferedBytes(Collection<String> sessionIds) {
+        int max = 0;
+        for (String sessionId : sessionIds) {
+            max = Math.max(max, bufferedBytes(sessionId));
+        }
+        return max;
+    }
+
+    /**
+     * Close a session from the server side; the usual disconnect handling
+     * releases its resources.
+     *
+     * @return false if the session is unknown or already closed
+     */
+    public boolean close(String sessionId, CloseStatus status) {
+        OutboundQueueSessionDecorator session = get(sessionId);
+        if (session == null || !session.isOpen()) {
+            return false;
+        }
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.warn("Error closing WebSocket session {}: {}", sessionId, e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Outbound queue counters of the sessions with the deepest queues.
+     */
+    public Map<String, Map<String, Object>> outboundStats(int topN) {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        sessions.entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, TrackedSession> e) -> e.getValue().session.getQueueDepth()).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(topN)
+                .forEach(e -> stats.put(e.getKey(), e.getValue().session.getStats()));
+        return stats;
+    }
+
+    public long totalDropped() {
+        return sessions.values().stream().mapToLong(tracked -> tracked.session.getDropped()).sum();
+    }
+
+    public long totalCoalesced() {
+        return sessions.values().stream().mapToLong(tracked -> tracked.session.getCoalesced()).sum();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private static class TrackedSession {
+        private final OutboundQueueSessionDecorator session;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        private TrackedSession(OutboundQueueSessionDecorator session) {
+            this.session = session;
+        }
+    }
+}
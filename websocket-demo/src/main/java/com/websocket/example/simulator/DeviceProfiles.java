@@ -0,0 +1,30 @@
+package com.websocket.example.simulator;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Value pools for simulated devices, shared by the mock FCM responses and
+ * the fleet simulator so both produce the same kind of data.
+ */
+public final class DeviceProfiles {
+
+    // Ordered from best to worst, so a step to a neighbouring index is a small change
+    static final String[] SIGNALS = {"Excellent", "Good", "Fair", "Poor"};
+    static final String[] MODELS = {"iPhone 14", "Samsung Galaxy S23", "Google Pixel 7", "OnePlus 11"};
+    static final String[] FIRMWARES = {"iOS 17.1", "Android 14", "Android 13", "iOS 16.5"};
+
+    private DeviceProfiles() {
+    }
+
+    public static String randomSignal(RandomGenerator random) {
+        return SIGNALS[random.nextInt(SIGNALS.length)];
+    }
+
+    public static String randomModel(RandomGenerator random) {
+        return MODELS[random.nextInt(MODELS.length)];
+    }
+
+    public static String randomFirmware(RandomGenerator random) {
+        return FIRMWARES[random.nextInt(FIRMWARES.length)];
+    }
+}
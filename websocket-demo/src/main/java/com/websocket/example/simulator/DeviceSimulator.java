@@ -0,0 +1,409 @@
+package com.websocket.example.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.ingest.TelemetryIngestionService;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.scheduling.HierarchicalTimingWheel;
+import com.websocket.example.service.DeviceService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Synthetic device fleet for capacity planning without real handsets.
+ *
+ * Every simulated device is one timer on a timing wheel, not a thread: when
+ * it fires, the device's state moves one step, its next report is scheduled
+ * and the reading is sent to the configured target. Reports
+ * are scheduled from the intended rate and never wait for the previous send
+ * (open loop), so a slow target shows up as latency and as readings skipped
+ * at the in-flight limit rather than as a quietly lower send rate.
+ *
+ * Each run brings its own timing wheel, tick thread and virtual-thread
+ * executor, which also backs its HTTP client. Timer callbacks and sends
+ * therefore never queue behind, or delay, the application's own flushes,
+ * FCM calls and per-topic timers on the shared blocking I/O executor. They
+ * still share the process's CPUs; for a fully separate load generator, run
+ * the http target from another instance.
+ *
+ * Per run it reports sends, outcomes, throughput over the last second,
+ * send latency percentiles (simulator.send) and how late timers fired
+ * (simulator.schedule.lag), which grows once the simulator cannot keep up.
+ */
+@Component
+public class DeviceSimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceSimulator.class);
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private TelemetryIngestionService ingestionService;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${simulator.autostart:false}")
+    private boolean autostart;
+
+    // Same shape as the application's wheel, but a separate instance per run
+    @Value("${execution.timing-wheel.tick-ms:10}")
+    private long wheelTickMs;
+
+    @Value("${execution.timing-wheel.wheel-size:64}")
+    private int wheelSize;
+
+    @Value("${execution.timing-wheel.levels:4}")
+    private int wheelLevels;
+
+    private volatile Run current;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void autostart() {
+        if (autostart) {
+            start(defaultSettings());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stop();
+    }
+
+    /**
+     * Settings from the simulator.* properties, with the built-in defaults
+     * for anything not configured.
+     */
+    public SimulatorSettings defaultSettings() {
+        SimulatorSettings settings = new SimulatorSettings();
+        Binder.get(environment).bind("simulator", Bindable.ofInstance(settings));
+        return settings;
+    }
+
+    /**
+     * Start a run.
+     *
+     * @throws IllegalStateException    when a run is already active
+     * @throws IllegalArgumentException when the settings are invalid
+     */
+    public synchronized void start(SimulatorSettings settings) {
+        settings.validate();
+        if (current != null && current.active) {
+            throw new IllegalStateException("Simulator is already running");
+        }
+        if (current != null) {
+            current.removeMeters();
+        }
+        Run run = new Run(settings);
+        current = run;
+        run.start();
+        log.info("Simulator started: {} devices every {} ms via {}", settings.getDevices(),
+                settings.getReportIntervalMs(), settings.getTarget());
+    }
+
+    /**
+     * Stop the active run; its statistics stay available until the next start.
+     */
+    public synchronized void stop() {
+        Run run = current;
+        if (run != null && run.active) {
+            run.stop();
+            log.info("Simulator stopped after {} reports", run.sent.get());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Run run = current;
+        if (run == null) {
+            return Map.of("running", false);
+        }
+        return run.getStats();
+    }
+
+    /**
+     * One simulation run: its fleet, counters and meters. Timers of a
+     * stopped run still fire once and do nothing.
+     */
+    private class Run {
+        private final SimulatorSettings settings;
+        private final SimulatedFleet fleet;
+        private final ExecutorService executor;
+        private final ThreadPoolTaskScheduler ticker;
+        private final HierarchicalTimingWheel timingWheel;
+        private final HttpClient httpClient;
+        private final URI telemetryUri;
+        private final Timer sendTimer;
+        private final Timer lagTimer;
+        // Reports left in each device's current burst
+        private final short[] burstRemaining;
+
+        private volatile boolean active;
+        private long startedAt;
+        private long stoppedAt;
+        private ScheduledFuture<?> rateTask;
+        private ScheduledFuture<?> stopTask;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong bursts = new AtomicLong();
+        private long lastSent;
+        private volatile double sentPerSecond;
+
+        Run(SimulatorSettings settings) {
+            this.settings = settings;
+            this.fleet = new SimulatedFleet(settings);
+            this.burstRemaining = new short[settings.getDevices()];
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("simulator-", 0).factory());
+            this.ticker = new ThreadPoolTaskScheduler();
+            ticker.setThreadNamePrefix("simulator-tick-");
+            ticker.setDaemon(true);
+            ticker.initialize();
+            this.timingWheel = new HierarchicalTimingWheel(wheelTickMs, wheelSize, wheelLevels, executor);
+            if (settings.getTarget() == SimulatorTarget.HTTP) {
+                httpClient = HttpClient.newBuilder()
+                        .executor(executor)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .build();
+                telemetryUri = URI.create(settings.getHttpBaseUrl().replaceAll("/+$", "") + "/mobile/telemetry");
+            } else {
+                httpClient = null;
+                telemetryUri = null;
+            }
+            String target = settings.getTarget().name().toLowerCase();
+            sendTimer = Timer.builder("simulator.send")
+                    .description("Time from a simulated report until the target accepted or refused it")
+                    .tag("target", target)
+                    .publishPercentiles(0.5, 0.9, 0.99)
+                    .register(meterRegistry);
+            lagTimer = Timer.builder("simulator.schedule.lag")
+                    .description("How late simulated device timers fired")
+                    .tag("target", target)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+        }
+
+        void start() {
+            active = true;
+            startedAt = System.currentTimeMillis();
+            timingWheel.start(ticker);
+            // Spread first reports over one interval instead of firing the whole fleet at once
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < fleet.size(); i++) {
+                schedule(i, (long) (random.nextDouble() * settings.getReportIntervalMs()));
+            }
+            rateTask = taskScheduler.scheduleAtFixedRate(this::sampleRate, Duration.ofSeconds(1));
+            if (settings.getDurationMs() > 0) {
+                stopTask = taskScheduler.schedule(DeviceSimulator.this::stop,
+                        Instant.now().plusMillis(settings.getDurationMs()));
+            }
+        }
+
+        void stop() {
+            active = false;
+            stoppedAt = System.currentTimeMillis();
+            rateTask.cancel(false);
+            if (stopTask != null) {
+                stopTask.cancel(false);
+            }
+            timingWheel.stop();
+            ticker.shutdown();
+            if (httpClient != null) {
+                httpClient.shutdown();
+            }
+            // Reports still in flight complete normally; the executor goes away after them
+            Thread.ofVirtual().name("simulator-close").start(() -> {
+                try {
+                    if (httpClient != null) {
+                        httpClient.awaitTermination(Duration.ofSeconds(60));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                executor.close();
+            });
+        }
+
+        void removeMeters() {
+            meterRegistry.remove(sendTimer);
+            meterRegistry.remove(lagTimer);
+        }
+
+        private void schedule(int device, long delayMs) {
+            long due = System.currentTimeMillis() + delayMs;
+            timingWheel.schedule(() -> fire(device, due), delayMs);
+        }
+
+        private void fire(int device, long due) {
+            if (!active) {
+                return;
+            }
+            long firedAt = System.currentTimeMillis();
+            lagTimer.record(Math.max(0, firedAt - due), TimeUnit.MILLISECONDS);
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            DeviceData reading = fleet.report(device, random);
+            schedule(device, nextDelay(device, random));
+
+            if (inFlight.incrementAndGet() > settings.getMaxInFlight()) {
+                inFlight.decrementAndGet();
+                skipped.incrementAndGet();
+                return;
+            }
+            sent.incrementAndGet();
+            long start = System.nanoTime();
+            switch (settings.getTarget()) {
+                case SERVICE -> {
+                    try {
+                        deviceService.upsert(reading);
+                        completed(start, Outcome.SUCCEEDED);
+                    } catch (Exception e) {
+                        completed(start, Outcome.FAILED);
+                    }
+                }
+                case INGEST -> completed(start, ingestionService.offer(reading) ? Outcome.SUCCEEDED : Outcome.REJECTED);
+                case HTTP -> sendHttp(reading, start);
+            }
+        }
+
+        private long nextDelay(int device, ThreadLocalRandom random) {
+            if (burstRemaining[device] > 0) {
+                burstRemaining[device]--;
+                return settings.getBurstSpacingMs();
+            }
+            if (settings.getBurstSize() > 0 && random.nextDouble() < settings.getBurstProbability()) {
+                burstRemaining[device] = (short) Math.min(Short.MAX_VALUE, settings.getBurstSize() - 1);
+                bursts.incrementAndGet();
+                return settings.getBurstSpacingMs();
+            }
+            double jitter = settings.getJitter();
+            double factor = jitter == 0 ? 1 : 1 + jitter * (2 * random.nextDouble() - 1);
+            return Math.max(1, Math.round(settings.getReportIntervalMs() * factor));
+        }
+
+        private void sendHttp(DeviceData reading, long start) {
+            byte[] body;
+            try {
+                body = objectMapper.writeValueAsBytes(reading);
+            } catch (Exception e) {
+                completed(start, Outcome.FAILED);
+                return;
+            }
+            HttpRequest request = HttpRequest.newBuilder(telemetryUri)
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            completed(start, Outcome.FAILED);
+                        } else if (response.statusCode() == 429) {
+                            completed(start, Outcome.REJECTED);
+                        } else {
+                            completed(start, response.statusCode() < 300 ? Outcome.SUCCEEDED : Outcome.FAILED);
+                        }
+                    });
+        }
+
+        private void completed(long startNanos, Outcome outcome) {
+            sendTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            inFlight.decrementAndGet();
+            switch (outcome) {
+                case SUCCEEDED -> succeeded.incrementAndGet();
+                case REJECTED -> rejected.incrementAndGet();
+                case FAILED -> failed.incrementAndGet();
+            }
+        }
+
+        // Only called from the rate task, one at a time
+        private void sampleRate() {
+            long now = sent.get();
+            sentPerSecond = now - lastSent;
+            lastSent = now;
+        }
+
+        Map<String, Object> getStats() {
+            long end = active ? System.currentTimeMillis() : stoppedAt;
+            double elapsedSeconds = Math.max(1, end - startedAt) / 1000.0;
+
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("running", active);
+            stats.put("target", settings.getTarget());
+            stats.put("devices", settings.getDevices());
+            stats.put("reportIntervalMs", settings.getReportIntervalMs());
+            stats.put("expectedPerSecond", settings.getDevices() * 1000.0 / settings.getReportIntervalMs());
+            stats.put("elapsedSeconds", elapsedSeconds);
+            stats.put("sent", sent.get());
+            stats.put("succeeded", succeeded.get());
+            stats.put("rejected", rejected.get());
+            stats.put("failed", failed.get());
+            stats.put("skipped", skipped.get());
+            stats.put("inFlight", inFlight.get());
+            stats.put("bursts", bursts.get());
+            stats.put("sentPerSecond", active ? sentPerSecond : 0.0);
+            stats.put("avgSentPerSecond", sent.get() / elapsedSeconds);
+            stats.put("latencyMillis", percentiles(sendTimer));
+            stats.put("scheduleLagMillis", percentiles(lagTimer));
+            return stats;
+        }
+
+        private Map<String, Object> percentiles(Timer timer) {
+            Map<String, Object> values = new HashMap<>();
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                values.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+            }
+            values.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+            values.put("mean", snapshot.mean(TimeUnit.MILLISECONDS));
+            return values;
+        }
+    }
+
+    private enum Outcome {
+        SUCCEEDED, REJECTED, FAILED
+    }
+}
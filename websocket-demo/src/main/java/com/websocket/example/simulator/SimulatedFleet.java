@@ -0,0 +1,114 @@
+package com.websocket.example.simulator;
+
+import com.websocket.example.model.DeviceData;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * State of every simulated device, one primitive array per field, so a
+ * fleet of 100k devices costs about a megabyte instead of 100k objects.
+ *
+ * The initial fleet is drawn from a SplittableRandom seeded by the
+ * settings, so two runs with the same seed start from the same devices.
+ * Each report then moves one device's state a small step using the caller's
+ * generator (ThreadLocalRandom on the sending thread). A device is only
+ * ever advanced by its own timer chain, one report at a time, so no locking
+ * is needed.
+ */
+class SimulatedFleet {
+
+    private final SimulatorSettings settings;
+    private final byte[] battery;
+    private final boolean[] charging;
+    private final int[] storage;
+    private final boolean[] wifiConnected;
+    private final byte[] signal;
+    private final byte[] model;
+    private final byte[] firmware;
+    private final long[] imei;
+    private final int idDigits;
+
+    SimulatedFleet(SimulatorSettings settings) {
+        this.settings = settings;
+        int size = settings.getDevices();
+        battery = new byte[size];
+        charging = new boolean[size];
+        storage = new int[size];
+        wifiConnected = new boolean[size];
+        signal = new byte[size];
+        model = new byte[size];
+        firmware = new byte[size];
+        imei = new long[size];
+        idDigits = Math.max(6, Integer.toString(size - 1).length());
+
+        SplittableRandom random = new SplittableRandom(settings.getSeed());
+        for (int i = 0; i < size; i++) {
+            battery[i] = (byte) (20 + random.nextInt(81));
+            storage[i] = 10 + random.nextInt(50);
+            wifiConnected[i] = random.nextInt(10) < 8;
+            signal[i] = (byte) random.nextInt(DeviceProfiles.SIGNALS.length);
+            model[i] = (byte) random.nextInt(DeviceProfiles.MODELS.length);
+            firmware[i] = (byte) random.nextInt(DeviceProfiles.FIRMWARES.length);
+            imei[i] = 350_000_000_000_000L + random.nextLong(100_000_000_000_000L);
+        }
+    }
+
+    int size() {
+        return battery.length;
+    }
+
+    /**
+     * Advance device {@code i} by one report and return the reading it sends.
+     */
+    DeviceData report(int i, RandomGenerator random) {
+        if (charging[i]) {
+            battery[i] = (byte) Math.min(100, battery[i] + 1 + random.nextInt(3));
+            charging[i] = battery[i] < 100;
+        } else {
+            if (random.nextDouble() < settings.getBatteryDrainProbability()) {
+                battery[i] = (byte) Math.max(0, battery[i] - 1);
+            }
+            charging[i] = battery[i] <= 5 || random.nextDouble() < settings.getChargeProbability();
+        }
+        if (random.nextDouble() < settings.getStorageGrowthProbability()) {
+            storage[i]++;
+        }
+        if (random.nextDouble() < settings.getWifiToggleProbability()) {
+            wifiConnected[i] = !wifiConnected[i];
+        }
+        if (random.nextDouble() < settings.getSignalChangeProbability()) {
+            // One level better or worse, like walking around
+            int step = random.nextBoolean() ? 1 : -1;
+            signal[i] = (byte) Math.floorMod(signal[i] + step, DeviceProfiles.SIGNALS.length);
+        }
+        if (random.nextDouble() < settings.getFirmwareUpgradeProbability()) {
+            firmware[i] = (byte) random.nextInt(DeviceProfiles.FIRMWARES.length);
+        }
+
+        DeviceData reading = new DeviceData();
+        reading.setDeviceId(deviceId(i));
+        reading.setPhoneNumber(phoneNumber(i));
+        reading.setWifiStatus(wifiConnected[i] ? "Connected" : "Disconnected");
+        reading.setBatteryLevel((int) battery[i]);
+        reading.setStorageUsed(Integer.toString(storage[i]));
+        reading.setSignalStrength(DeviceProfiles.SIGNALS[signal[i]]);
+        reading.setModel(DeviceProfiles.MODELS[model[i]]);
+        reading.setFirmware(DeviceProfiles.FIRMWARES[firmware[i]]);
+        reading.setImei("IMEI_" + imei[i]);
+        return reading;
+    }
+
+    String deviceId(int i) {
+        return settings.getDeviceIdPrefix() + pad(i);
+    }
+
+    String phoneNumber(int i) {
+        return settings.getPhonePrefix() + pad(i);
+    }
+
+    private String pad(int i) {
+        String digits = Integer.toString(i);
+        return "0".repeat(idDigits - digits.length()) + digits;
+    }
+}
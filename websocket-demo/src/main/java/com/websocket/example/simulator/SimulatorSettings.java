@@ -0,0 +1,116 @@
+package com.websocket.example.simulator;
+
+/**
+ * Shape of one simulation run. Defaults come from the simulator.* properties;
+ * POST /api/simulator/start overrides any of them by name.
+ *
+ * Probabilities are per report. Intervals are spread uniformly by
+ * {@code jitter} (0.2 means ±20%), and a report starts a burst of
+ * {@code burstSize} more reports {@code burstSpacingMs} apart with
+ * {@code burstProbability}.
+ */
+public class SimulatorSettings {
+    private SimulatorTarget target = SimulatorTarget.INGEST;
+    private int devices = 1000;
+    private long reportIntervalMs = 10000;
+    private double jitter = 0.2;
+    private double burstProbability;
+    private int burstSize = 5;
+    private long burstSpacingMs = 100;
+    private int maxInFlight = 1000;
+    private long durationMs;
+    private long seed = 42;
+    private String httpBaseUrl = "http://localhost:8080";
+    private String deviceIdPrefix = "SIM_";
+    private String phonePrefix = "+1555";
+    private double batteryDrainProbability = 0.3;
+    private double chargeProbability = 0.01;
+    private double storageGrowthProbability = 0.05;
+    private double wifiToggleProbability = 0.02;
+    private double signalChangeProbability = 0.1;
+    private double firmwareUpgradeProbability = 0.0001;
+
+    public SimulatorTarget getTarget() { return target; }
+    public void setTarget(SimulatorTarget target) { this.target = target; }
+
+    public int getDevices() { return devices; }
+    public void setDevices(int devices) { this.devices = devices; }
+
+    public long getReportIntervalMs() { return reportIntervalMs; }
+    public void setReportIntervalMs(long reportIntervalMs) { this.reportIntervalMs = reportIntervalMs; }
+
+    public double getJitter() { return jitter; }
+    public void setJitter(double jitter) { this.jitter = jitter; }
+
+    public double getBurstProbability() { return burstProbability; }
+    public void setBurstProbability(double burstProbability) { this.burstProbability = burstProbability; }
+
+    public int getBurstSize() { return burstSize; }
+    public void setBurstSize(int burstSize) { this.burstSize = burstSize; }
+
+    public long getBurstSpacingMs() { return burstSpacingMs; }
+    public void setBurstSpacingMs(long burstSpacingMs) { this.burstSpacingMs = burstSpacingMs; }
+
+    public int getMaxInFlight() { return maxInFlight; }
+    public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+
+    public long getDurationMs() { return durationMs; }
+    public void setDurationMs(long durationMs) { this.durationMs = durationMs; }
+
+    public long getSeed() { return seed; }
+    public void setSeed(long seed) { this.seed = seed; }
+
+    public String getHttpBaseUrl() { return httpBaseUrl; }
+    public void setHttpBaseUrl(String httpBaseUrl) { this.httpBaseUrl = httpBaseUrl; }
+
+    public String getDeviceIdPrefix() { return deviceIdPrefix; }
+    public void setDeviceIdPrefix(String deviceIdPrefix) { this.deviceIdPrefix = deviceIdPrefix; }
+
+    public String getPhonePrefix() { return phonePrefix; }
+    public void setPhonePrefix(String phonePrefix) { this.phonePrefix = phonePrefix; }
+
+    public double getBatteryDrainProbability() { return batteryDrainProbability; }
+    public void setBatteryDrainProbability(double batteryDrainProbability) { this.batteryDrainProbability = batteryDrainProbability; }
+
+    public double getChargeProbability() { return chargeProbability; }
+    public void setChargeProbability(double chargeProbability) { this.chargeProbability = chargeProbability; }
+
+    public double getStorageGrowthProbability() { return storageGrowthProbability; }
+    public void setStorageGrowthProbability(double storageGrowthProbability) { this.storageGrowthProbability = storageGrowthProbability; }
+
+    public double getWifiToggleProbability() { return wifiToggleProbability; }
+    public void setWifiToggleProbability(double wifiToggleProbability) { this.wifiToggleProbability = wifiToggleProbability; }
+
+    public double getSignalChangeProbability() { return signalChangeProbability; }
+    public void setSignalChangeProbability(double signalChangeProbability) { this.signalChangeProbability = signalChangeProbability; }
+
+    public double getFirmwareUpgradeProbability() { return firmwareUpgradeProbability; }
+    public void setFirmwareUpgradeProbability(double firmwareUpgradeProbability) { this.firmwareUpgradeProbability = firmwareUpgradeProbability; }
+
+    /**
+     * @throws IllegalArgumentException when the settings cannot be run
+     */
+    void validate() {
+        if (target == null) throw new IllegalArgumentException("target is required");
+        if (devices < 1) throw new IllegalArgumentException("devices must be at least 1");
+        if (reportIntervalMs < 1) throw new IllegalArgumentException("reportIntervalMs must be positive");
+        if (jitter < 0 || jitter >= 1) throw new IllegalArgumentException("jitter must be in [0, 1)");
+        if (burstSize < 0 || burstSpacingMs < 0) throw new IllegalArgumentException("burstSize and burstSpacingMs must not be negative");
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1");
+        requireProbability("burstProbability", burstProbability);
+        requireProbability("batteryDrainProbability", batteryDrainProbability);
+        requireProbability("chargeProbability", chargeProbability);
+        requireProbability("storageGrowthProbability", storageGrowthProbability);
+        requireProbability("wifiToggleProbability", wifiToggleProbability);
+        requireProbability("signalChangeProbability", signalChangeProbability);
+        requireProbability("firmwareUpgradeProbability", firmwareUpgradeProbability);
+        if (target == SimulatorTarget.HTTP && (httpBaseUrl == null || httpBaseUrl.isBlank())) {
+            throw new IllegalArgumentException("httpBaseUrl is required for the HTTP target");
+        }
+    }
+
+    private static void requireProbability(String name, double value) {
+        // Written so that NaN fails too
+        if (!(value >= 0 && value <= 1)) throw new IllegalArgumentException(name + " must be in [0, 1]");
+    }
+}
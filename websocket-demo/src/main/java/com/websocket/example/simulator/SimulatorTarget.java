@@ -0,0 +1,24 @@
+package com.websocket.example.simulator;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * Where simulated telemetry is sent.
+ */
+public enum SimulatorTarget {
+
+    /** DeviceService.upsert in this process: one findAndModify per reading. */
+    SERVICE,
+
+    /** TelemetryIngestionService in this process: the write-behind path behind POST /mobile/telemetry, minus HTTP. */
+    INGEST,
+
+    /** POST /mobile/telemetry over HTTP, against this node or any other. */
+    HTTP;
+
+    // Lets start requests say "http" as well as "HTTP"
+    @JsonCreator
+    public static SimulatorTarget of(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
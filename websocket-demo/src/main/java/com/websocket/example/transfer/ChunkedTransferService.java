@@ -0,0 +1,350 @@
+package com.websocket.example.transfer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.publish.TopicPublisher;
+import com.websocket.example.session.FramePolicy;
+import com.websocket.example.session.SessionManager;
+import com.websocket.example.session.WebSocketSessionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Streams large payloads to a topic in fixed-size chunks without blocking the
+ * caller.
+ *
+ * The payload is serialized with Jackson's streaming generator straight into
+ * a {@link ChunkingOutputStream}, so no full JSON String is built and no
+ * substrings are copied. Chunks are then emitted from the task scheduler,
+ * one at a time, only while the subscribers' outbound queues are below the
+ * high-water mark. Completed transfers are retained for a while so a client
+ * that reconnects can resume from the chunk it is missing.
+ */
+@Service
+public class ChunkedTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedTransferService.class);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TopicPublisher topicPublisher;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${websocket.chunking.chunk-size:512000}")
+    private int chunkSize;
+
+    @Value("${websocket.chunking.high-water-mark:524288}")
+    private int highWaterMark;
+
+    @Value("${websocket.chunking.poll-interval-ms:5}")
+    private long pollIntervalMs;
+
+    @Value("${websocket.chunking.max-stall-ms:30000}")
+    private long maxStallMs;
+
+    @Value("${websocket.chunking.retention-ms:60000}")
+    private long retentionMs;
+
+    @Value("${websocket.chunking.retention-bytes:16777216}")
+    private long retentionBytes;
+
+    // transferId -> completed or in-flight transfer, oldest first
+    private final Map<String, Transfer> transfers = new LinkedHashMap<>();
+    private long retainedBytes;
+
+    // sessionId -> bytes still to be sent by resume streams targeting that session
+    private final Map<String, AtomicLong> pendingBySession = new ConcurrentHashMap<>();
+
+    private final AtomicLong transfersStarted = new AtomicLong();
+    private final AtomicLong chunksSent = new AtomicLong();
+    private final AtomicLong pacingWaits = new AtomicLong();
+    private final AtomicLong resumes = new AtomicLong();
+    private final AtomicLong stalledTransfers = new AtomicLong();
+
+    /**
+     * Serialize {@code payload} and, if it needs more than one chunk, stream
+     * it to {@code topic} in the background.
+     *
+     * @param metadata extra fields copied into every chunk message
+     * @return false when the payload fits in a single chunk and should be sent normally
+     */
+    public boolean startTransfer(String topic, Object payload, Map<String, Object> metadata) throws IOException {
+        ChunkingOutputStream out = new ChunkingOutputStream(chunkSize);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            objectMapper.writeValue(generator, payload);
+        }
+        out.close();
+
+        List<byte[]> chunks = out.getChunks();
+        if (chunks.size() <= 1) {
+            return false;
+        }
+
+        Transfer transfer = new Transfer(UUID.randomUUID().toString(), topic, chunks,
+                out.getChecksum(), out.getTotalBytes(), metadata);
+        retain(transfer);
+        transfersStarted.incrementAndGet();
+
+        new Stream(transfer, 0, null, null).schedule(0);
+        return true;
+    }
+
+    /**
+     * Re-send a retained transfer from {@code fromChunk} to a single subscription.
+     *
+     * @return false when the transfer is no longer retained
+     */
+    public boolean resume(String transferId, int fromChunk, String sessionId, String subscriptionId) {
+        Transfer transfer;
+        synchronized (transfers) {
+            transfer = transfers.get(transferId);
+        }
+        if (transfer == null || fromChunk < 0 || fromChunk >= transfer.chunks.size()) {
+            return false;
+        }
+        resumes.incrementAndGet();
+        new Stream(transfer, fromChunk, sessionId, subscriptionId).schedule(0);
+        return true;
+    }
+
+    /**
+     * Bytes a session is still owed by resume streams targeting it.
+     */
+    public long pendingBytes(String sessionId) {
+        AtomicLong pending = pendingBySession.get(sessionId);
+        return pending != null ? pending.get() : 0;
+    }
+
+    /**
+     * Stop accounting for a closed session; its resume streams notice the
+     * session is gone on their next step and stop.
+     */
+    public void releaseSession(String sessionId) {
+        pendingBySession.remove(sessionId);
+    }
+
+    public long retainedBytes() {
+        synchronized (transfers) {
+            return retainedBytes;
+        }
+    }
+
+    /**
+     * Drop retained transfers, oldest first, until at most {@code maxBytes} remain.
+     * Streams already running keep their own reference and finish normally.
+     *
+     * @return bytes released
+     */
+    public long trimRetained(long maxBytes) {
+        synchronized (transfers) {
+            long before = retainedBytes;
+            Iterator<Transfer> oldest = transfers.values().iterator();
+            while (oldest.hasNext() && retainedBytes > maxBytes) {
+                retainedBytes -= oldest.next().totalBytes;
+                oldest.remove();
+            }
+            return before - retainedBytes;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (transfers) {
+            stats.put("retainedTransfers", transfers.size());
+            stats.put("retainedBytes", retainedBytes);
+        }
+        stats.put("transfersStarted", transfersStarted.get());
+        stats.put("chunksSent", chunksSent.get());
+        stats.put("pacingWaits", pacingWaits.get());
+        stats.put("resumes", resumes.get());
+        stats.put("stalledTransfers", stalledTransfers.get());
+        return stats;
+    }
+
+    private void retain(Transfer transfer) {
+        synchronized (transfers) {
+            transfers.put(transfer.id, transfer);
+            retainedBytes += transfer.totalBytes;
+
+            // Evict expired transfers, then oldest ones until back under the byte budget
+            long now = System.currentTimeMillis();
+            Iterator<Transfer> oldest = transfers.values().iterator();
+            while (oldest.hasNext()) {
+                Transfer candidate = oldest.next();
+                boolean expired = now - candidate.createdAt > retentionMs;
+                if (candidate == transfer || (!expired && retainedBytes <= retentionBytes)) {
+                    break;
+                }
+                oldest.remove();
+                retainedBytes -= candidate.totalBytes;
+            }
+        }
+    }
+
+    private Map<String, Object> chunkMessage(Transfer transfer, int index) {
+        byte[] chunk = transfer.chunks.get(index);
+        CRC32 chunkChecksum = new CRC32();
+        chunkChecksum.update(chunk);
+
+        Map<String, Object> message = new HashMap<>(transfer.metadata);
+        message.put("chunked", true);
+        message.put("transferId", transfer.id);
+        message.put("chunkIndex", index);
+        message.put("totalChunks", transfer.chunks.size());
+        message.put("totalBytes", transfer.totalBytes);
+        message.put("checksum", transfer.checksum);
+        message.put("chunkChecksum", chunkChecksum.getValue());
+        message.put("data", new String(chunk, StandardCharsets.UTF_8));
+        message.put("timestamp", System.currentTimeMillis());
+        return message;
+    }
+
+    private static class Transfer {
+        private final String id;
+        private final String topic;
+        private final List<byte[]> chunks;
+        private final long checksum;
+        private final long totalBytes;
+        private final Map<String, Object> metadata;
+        private final long createdAt = System.currentTimeMillis();
+
+        private Transfer(String id, String topic, List<byte[]> chunks, long checksum, long totalBytes,
+                         Map<String, Object> metadata) {
+            this.id = id;
+            this.topic = topic;
+            this.chunks = chunks;
+            this.checksum = checksum;
+            this.totalBytes = totalBytes;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * One pass over a transfer's chunks, to the whole topic or (for resumes)
+     * to a single subscription. Each step runs on the scheduler and either
+     * sends the next chunk or, if subscribers are still draining the previous
+     * one, checks again shortly.
+     */
+    private class Stream {
+        private final Transfer transfer;
+        private final String sessionId;
+        private final String subscriptionId;
+        private int next;
+        private long stalledSince;
+        private long unsentBytes;
+
+        private Stream(Transfer transfer, int from, String sessionId, String subscriptionId) {
+            this.transfer = transfer;
+            this.next = from;
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            if (sessionId != null) {
+                for (int i = from; i < transfer.chunks.size(); i++) {
+                    unsentBytes += transfer.chunks.get(i).length;
+                }
+                pendingBySession.computeIfAbsent(sessionId, id -> new AtomicLong()).addAndGet(unsentBytes);
+            }
+        }
+
+        private void schedule(long delayMs) {
+            taskScheduler.schedule(this::step, Instant.now().plusMillis(delayMs));
+        }
+
+        private void step() {
+            Collection<String> targets = sessionId != null ? Set.of(sessionId) : sessionManager.sessionsFor(transfer.topic);
+            if (targets.isEmpty() && sessionId == null) {
+                return; // nobody left to receive it; the transfer stays retained for resumes
+            }
+            if (sessionId != null && sessionRegistry.get(sessionId) == null) {
+                finish(); // the target session disconnected
+                return;
+            }
+
+            if (sessionRegistry.maxBufferedBytes(targets) > highWaterMark) {
+                long now = System.currentTimeMillis();
+                if (stalledSince == 0) {
+                    stalledSince = now;
+                } else if (now - stalledSince > maxStallMs) {
+                    stalledTransfers.incrementAndGet();
+                    log.warn("Chunked transfer {} stalled at chunk {}, giving up", transfer.id, next);
+                    finish();
+                    return;
+                }
+                pacingWaits.incrementAndGet();
+                schedule(pollIntervalMs);
+                return;
+            }
+            stalledSince = 0;
+
+            try {
+                send(chunkMessage(transfer, next));
+                chunksSent.incrementAndGet();
+                account(transfer.chunks.get(next).length);
+            } catch (Exception e) {
+                log.warn("Error sending chunk {} of transfer {}: {}", next, transfer.id, e.getMessage());
+                finish();
+                return;
+            }
+
+            if (++next < transfer.chunks.size()) {
+                schedule(0);
+            }
+        }
+
+        private void finish() {
+            account(unsentBytes);
+        }
+
+        private void account(long sentBytes) {
+            if (sessionId == null || sentBytes == 0) {
+                return;
+            }
+            unsentBytes -= sentBytes;
+            pendingBySession.computeIfPresent(sessionId, (id, pending) -> {
+                pending.addAndGet(-sentBytes);
+                return pending;
+            });
+        }
+
+        private void send(Map<String, Object> message) throws IOException {
+            // Chunks are already paced; dropping one would only force a resume
+            Map<String, String> headers = Map.of(FramePolicy.NO_DROP_HEADER, "true");
+            byte[] payload = topicPublisher.serialize(message);
+            if (sessionId == null) {
+                topicPublisher.publish(transfer.topic, payload, headers);
+            } else {
+                topicPublisher.sendToSubscription(sessionId, subscriptionId, transfer.topic, payload, headers);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.websocket.example.transfer;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * OutputStream that cuts UTF-8 output into chunks of at most chunkSize bytes
+ * as it is written, without ever holding the whole document in one buffer.
+ * Chunks are cut on character boundaries so each one is valid UTF-8 on its
+ * own. A CRC32 of the complete stream is kept as bytes go by.
+ */
+public class ChunkingOutputStream extends OutputStream {
+
+    private final int chunkSize;
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final CRC32 checksum = new CRC32();
+
+    private byte[] current;
+    private int position;
+    private long totalBytes;
+
+    public ChunkingOutputStream(int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.current = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) {
+        if (position == chunkSize) {
+            cut();
+        }
+        current[position++] = (byte) b;
+        checksum.update(b);
+        totalBytes++;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        checksum.update(data, offset, length);
+        totalBytes += length;
+        while (length > 0) {
+            if (position == chunkSize) {
+                cut();
+            }
+            int n = Math.min(length, chunkSize - position);
+            System.arraycopy(data, offset, current, position, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (position > 0) {
+            chunks.add(position == chunkSize ? current : Arrays.copyOf(current, position));
+            position = 0;
+        }
+    }
+
+    public List<byte[]> getChunks() {
+        return chunks;
+    }
+
+    public long getChecksum() {
+        return checksum.getValue();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void cut() {
+        int split = characterBoundary();
+        byte[] next = new byte[chunkSize];
+        int carry = chunkSize - split;
+        System.arraycopy(current, split, next, 0, carry);
+
+        chunks.add(split == chunkSize ? current : Arrays.copyOf(current, split));
+        current = next;
+        position = carry;
+    }
+
+    /**
+     * Index at which the full buffer can be split without breaking a
+     * multi-byte UTF-8 sequence.
+     */
+    private int characterBoundary() {
+        int lead = chunkSize - 1;
+        while (lead > 0 && (current[lead] & 0xC0) == 0x80) {
+            lead--; // skip continuation bytes back to the sequence start
+        }
+        int b = current[lead] & 0xFF;
+        int length = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+        return lead + length > chunkSize ? lead : chunkSize;
+    }
+}
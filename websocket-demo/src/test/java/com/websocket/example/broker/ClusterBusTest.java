@@ -0,0 +1,136 @@
+package com.websocket.example.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two (or one) bus nodes in this JVM, talking over loopback TCP.
+ */
+class ClusterBusTest {
+
+    private static final String DESTINATION = "/topic/device-updates/5550000001";
+
+    private final List<ClusterBus> nodes = new ArrayList<>();
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(ClusterBus::stop);
+    }
+
+    @Test
+    void replicatesPublishesToPeersWithSubscribers() throws Exception {
+        InetSocketAddress addressA = freeAddress();
+        InetSocketAddress addressB = freeAddress();
+        List<InetSocketAddress> peers = List.of(addressA, addressB);
+        BlockingQueue<Received> receivedByB = new LinkedBlockingQueue<>();
+
+        ClusterBus a = start("node-a", addressA, peers, null, new LinkedBlockingQueue<>());
+        start("node-b", addressB, peers, DESTINATION, receivedByB);
+        await(() -> a.hasRemoteInterest(DESTINATION));
+
+        assertThat(a.publish(DESTINATION, Map.of("content-type", "application/json"), bytes("{\"v\":1}"))).isEqualTo(1);
+        Received received = receivedByB.poll(5, TimeUnit.SECONDS);
+        assertThat(received).isNotNull();
+        assertThat(received.fromNode()).isEqualTo("node-a");
+        assertThat(received.destination()).isEqualTo(DESTINATION);
+        assertThat(received.headers()).containsEntry("content-type", "application/json");
+        assertThat(new String(received.payload(), StandardCharsets.UTF_8)).isEqualTo("{\"v\":1}");
+
+        // Nobody on B watches this one, so it is not sent at all
+        assertThat(a.publish("/topic/device-updates/unwatched", Map.of(), bytes("x"))).isZero();
+        assertThat(receivedByB.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void reconnectsToARestartedPeer() throws Exception {
+        InetSocketAddress addressA = freeAddress();
+        InetSocketAddress addressB = freeAddress();
+        List<InetSocketAddress> peers = List.of(addressA, addressB);
+
+        ClusterBus a = start("node-a", addressA, peers, null, new LinkedBlockingQueue<>());
+        ClusterBus b = start("node-b", addressB, peers, DESTINATION, new LinkedBlockingQueue<>());
+        await(() -> a.hasRemoteInterest(DESTINATION));
+
+        b.stop();
+        nodes.remove(b);
+        await(() -> !a.hasRemoteInterest(DESTINATION));
+        assertThat(a.publish(DESTINATION, Map.of(), bytes("lost"))).isZero();
+
+        BlockingQueue<Received> receivedByRestarted = new LinkedBlockingQueue<>();
+        start("node-b", addressB, peers, DESTINATION, receivedByRestarted);
+        await(() -> a.hasRemoteInterest(DESTINATION) && connectedPeers(a).contains("node-b"));
+
+        assertThat(a.publish(DESTINATION, Map.of(), bytes("again"))).isEqualTo(1);
+        Received received = receivedByRestarted.poll(5, TimeUnit.SECONDS);
+        assertThat(received).isNotNull();
+        assertThat(new String(received.payload(), StandardCharsets.UTF_8)).isEqualTo("again");
+        assertThat((Long) a.getStats().get("reconnects")).isPositive();
+    }
+
+    @Test
+    void stopsDialingItsOwnAddressListedAsAPeer() throws Exception {
+        int port = freeAddress().getPort();
+        // Bound to the wildcard address, listed by its loopback address: only the HELLO reveals it is us
+        InetSocketAddress bind = new InetSocketAddress(port);
+        InetSocketAddress self = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+
+        ClusterBus node = start("node-a", bind, List.of(self), null, new LinkedBlockingQueue<>());
+        Thread.sleep(1_000); // several reconnect delays
+
+        assertThat(connectedPeers(node)).isEmpty();
+        assertThat(node.getStats()).containsEntry("reconnects", 0L);
+    }
+
+    private ClusterBus start(String nodeId, InetSocketAddress bind, List<InetSocketAddress> peers,
+                             String watched, BlockingQueue<Received> received) throws IOException {
+        ClusterBusSettings settings = new ClusterBusSettings(nodeId, bind, peers, 65536, 1024 * 1024, 1024 * 1024, 100);
+        ClusterBus bus = new ClusterBus(settings,
+                destination -> destination.equals(watched),
+                () -> watched != null ? List.of(watched) : List.of(),
+                (fromNode, destination, headers, payload) -> received.add(new Received(fromNode, destination, headers, payload)));
+        bus.start();
+        nodes.add(bus);
+        return bus;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> connectedPeers(ClusterBus bus) {
+        return (List<String>) bus.getStats().get("connectedPeers");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static InetSocketAddress freeAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private record Received(String fromNode, String destination, Map<String, String> headers, byte[] payload) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.websocket.example.compression;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DictionaryDeflateCodecTest {
+
+    private static final byte[] DOCUMENT = ("{\"compressed\":false,\"version\":3,\"phoneNumber\":\"5550001001\",\"data\":"
+            + "{\"deviceId\":\"DEVICE_1001\",\"phoneNumber\":\"5550001001\",\"wifiStatus\":\"Connected\","
+            + "\"batteryLevel\":64,\"storageUsed\":\"128\",\"signalStrength\":\"Good\",\"model\":\"Google Pixel 7\","
+            + "\"firmware\":\"Android 14\",\"imei\":\"IMEI_1700000001001\",\"notes\":\"" + "x1y2z3".repeat(500) + "\"}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private DictionaryDeflateCodec codec;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        codec = new DictionaryDeflateCodec();
+        ReflectionTestUtils.setField(codec, "objectMapper", new ObjectMapper());
+        codec.train();
+    }
+
+    @Test
+    void roundTrips() throws IOException {
+        byte[] encoded = codec.encode(DOCUMENT, 0, DOCUMENT.length);
+
+        assertThat(encoded.length).isLessThan(DOCUMENT.length);
+        assertThat(codec.decode(encoded)).isEqualTo(DOCUMENT);
+    }
+
+    @Test
+    void refusesATruncatedPayload() {
+        byte[] encoded = codec.encode(DOCUMENT, 0, DOCUMENT.length);
+
+        for (int length : new int[]{1, encoded.length / 2, encoded.length - 1}) {
+            assertThatThrownBy(() -> codec.decode(Arrays.copyOf(encoded, length)))
+                    .isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    void refusesBytesAfterTheEndOfTheStream() {
+        byte[] encoded = codec.encode(DOCUMENT, 0, DOCUMENT.length);
+
+        assertThatThrownBy(() -> codec.decode(Arrays.copyOf(encoded, encoded.length + 4)))
+                .isInstanceOf(IOException.class);
+    }
+}
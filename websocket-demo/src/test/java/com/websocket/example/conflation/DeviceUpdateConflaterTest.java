@@ -0,0 +1,108 @@
+package com.websocket.example.conflation;
+
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.scheduling.HierarchicalTimingWheel;
+import com.websocket.example.service.LargePayloadService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class DeviceUpdateConflaterTest {
+
+    private static final String PHONE = "5550000001";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch sending = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private ThreadPoolTaskScheduler scheduler;
+    private HierarchicalTimingWheel timingWheel;
+    private DeviceUpdateConflater conflater;
+
+    @BeforeEach
+    void setUp() {
+        // The first send stalls, like a chunked transfer to a slow subscriber
+        LargePayloadService largePayloadService = mock(LargePayloadService.class);
+        doAnswer(invocation -> {
+            DeviceData update = invocation.getArgument(1);
+            sent.add(update.getBatteryLevel());
+            if (update.getBatteryLevel() == 1) {
+                sending.countDown();
+                release.await();
+            }
+            return null;
+        }).when(largePayloadService).sendLargePayload(eq(PHONE), any());
+
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        timingWheel = new HierarchicalTimingWheel(5, 64, 3, executor);
+        timingWheel.start(scheduler);
+
+        conflater = new DeviceUpdateConflater();
+        ReflectionTestUtils.setField(conflater, "largePayloadService", largePayloadService);
+        ReflectionTestUtils.setField(conflater, "timingWheel", timingWheel);
+        ReflectionTestUtils.setField(conflater, "maxRateHz", 50.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        timingWheel.stop();
+        scheduler.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void writersAreNotBlockedBySlowSendAndTopicStaysInOrder() throws Exception {
+        executor.submit(() -> conflater.submit(update(1)));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Spans several rate intervals, so both flushes and leading-edge updates become due
+        // while the first send is still stuck; none of them may wait for it
+        executor.submit(() -> {
+            for (int battery = 2; battery <= 20; battery++) {
+                conflater.submit(update(battery));
+                Thread.sleep(5);
+            }
+            return null;
+        }).get(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        assertThat(sent).containsExactly(1);
+        assertThat(conflater.getStats()).containsEntry("pending", 1L);
+
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sent.isEmpty() || sent.get(sent.size() - 1) != 20) {
+            assertThat(System.currentTimeMillis()).as("latest update not delivered").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        assertThat(sent).isSorted().doesNotHaveDuplicates();
+        assertThat(conflater.getStats()).containsEntry("pending", 0L);
+    }
+
+    private static DeviceData update(int batteryLevel) {
+        DeviceData update = new DeviceData();
+        update.setDeviceId("D1");
+        update.setPhoneNumber(PHONE);
+        update.setBatteryLevel(batteryLevel);
+        return update;
+    }
+}
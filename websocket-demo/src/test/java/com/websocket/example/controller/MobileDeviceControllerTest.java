@@ -0,0 +1,79 @@
+package com.websocket.example.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.websocket.example.ingest.TelemetryIngestionService;
+import com.websocket.example.service.DeviceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class MobileDeviceControllerTest {
+
+    private static final String BATCH = """
+            {"deviceId":"D1","batteryLevel":80}
+            {"deviceId":"D2","batteryLevel":70}
+            {"deviceId":"D3","batteryLevel":60}
+            """;
+
+    private TelemetryIngestionService ingestionService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        ingestionService = mock(TelemetryIngestionService.class);
+        MobileDeviceController controller = new MobileDeviceController();
+        ReflectionTestUtils.setField(controller, "deviceService", mock(DeviceService.class));
+        ReflectionTestUtils.setField(controller, "ingestionService", ingestionService);
+        ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(controller, "batchMaxBytes", 2L * 1024 * 1024);
+        ReflectionTestUtils.setField(controller, "batchMaxLineBytes", 65536);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void acceptsABatchThatFullyQueued() throws Exception {
+        when(ingestionService.offer(any())).thenReturn(true);
+
+        mockMvc.perform(post("/mobile/telemetry/batch").contentType(MediaType.APPLICATION_NDJSON).content(BATCH))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(3))
+                .andExpect(jsonPath("$.rejected").value(0));
+    }
+
+    @Test
+    void reportsPartialAcceptanceAsMultiStatus() throws Exception {
+        when(ingestionService.offer(any())).thenReturn(true);
+        when(ingestionService.offer(argThat(record -> record != null && "D2".equals(record.getDeviceId())))).thenReturn(false);
+
+        mockMvc.perform(post("/mobile/telemetry/batch").contentType(MediaType.APPLICATION_NDJSON).content(BATCH))
+                .andExpect(status().isMultiStatus())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.results[1].deviceId").value("D2"))
+                .andExpect(jsonPath("$.results[1].status").value("rejected"));
+    }
+
+    @Test
+    void answers429OnlyWhenNothingWasAccepted() throws Exception {
+        when(ingestionService.offer(any())).thenReturn(false);
+
+        mockMvc.perform(post("/mobile/telemetry/batch").contentType(MediaType.APPLICATION_NDJSON).content(BATCH))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.accepted").value(0))
+                .andExpect(jsonPath("$.rejected").value(3));
+    }
+}
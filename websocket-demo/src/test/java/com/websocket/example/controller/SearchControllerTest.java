@@ -0,0 +1,55 @@
+package com.websocket.example.controller;
+
+import com.websocket.example.search.DeviceSearchService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class SearchControllerTest {
+
+    private DeviceSearchService searchService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        searchService = mock(DeviceSearchService.class);
+        SearchController controller = new SearchController();
+        ReflectionTestUtils.setField(controller, "deviceSearchService", searchService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void rejectsASearchWithoutAPhoneNumber() throws Exception {
+        for (String body : new String[]{"{}", "{\"phoneNumber\":null}", "{\"phoneNumber\":\" \"}"}) {
+            mockMvc.perform(post("/api/search-device").contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.error").value("phoneNumber is required"));
+        }
+        verify(searchService, never()).search(any());
+    }
+
+    @Test
+    void startsARefreshForAKnownPhone() throws Exception {
+        when(searchService.search("5550000001"))
+                .thenReturn(new DeviceSearchService.SearchResult(null, 0, true, new CompletableFuture<>()));
+
+        mockMvc.perform(post("/api/search-device").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"phoneNumber\":\"5550000001\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.refreshing").value(true));
+    }
+}
@@ -0,0 +1,97 @@
+package com.websocket.example.delta;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeviceDeltaTrackerTest {
+
+    private static final String TOPIC = "/topic/device-updates/5550000001";
+
+    private final DeviceDeltaTracker tracker = new DeviceDeltaTracker();
+
+    @Test
+    void sendsAFullFrameFirstThenPatchesAndSkipsNoOps() throws Exception {
+        List<DeltaFrame> sent = new ArrayList<>();
+
+        assertThat(tracker.publishNext(TOPIC, state(80, "Connected"), sent::add)).isTrue();
+        assertThat(tracker.publishNext(TOPIC, state(80, "Connected"), sent::add)).isFalse();
+        assertThat(tracker.publishNext(TOPIC, state(79, "Connected"), sent::add)).isTrue();
+
+        assertThat(sent).extracting(DeltaFrame::full).containsExactly(true, false);
+        assertThat(sent).extracting(DeltaFrame::version).containsExactly(1L, 2L);
+        assertThat(sent.get(1).body().toString()).isEqualTo("{\"batteryLevel\":79}");
+    }
+
+    @Test
+    void concurrentPublishersSendVersionsInOrder() throws Exception {
+        // The sender stands in for the broker hand-off: whatever order it sees is the wire order
+        List<Long> sent = Collections.synchronizedList(new ArrayList<>());
+        int publishers = 8;
+        int updatesEach = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(publishers);
+        CountDownLatch go = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < publishers; p++) {
+                int publisher = p;
+                futures.add(executor.submit(() -> {
+                    go.await();
+                    for (int i = 0; i < updatesEach; i++) {
+                        // Every state differs from every other, so each one yields a frame
+                        tracker.publishNext(TOPIC, state(publisher * updatesEach + i, "Connected"), frame -> {
+                            Thread.yield();
+                            sent.add(frame.version());
+                        });
+                    }
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(sent).containsExactlyElementsOf(
+                LongStream.rangeClosed(1, (long) publishers * updatesEach).boxed().toList());
+    }
+
+    @Test
+    void snapshotCarriesTheVersionOfTheLastSentFrame() throws Exception {
+        List<DeltaFrame> snapshots = new ArrayList<>();
+        assertThat(tracker.sendSnapshot(TOPIC, snapshots::add)).isFalse();
+
+        tracker.publishNext(TOPIC, state(80, "Connected"), frame -> { });
+        tracker.publishNext(TOPIC, state(80, "Disconnected"), frame -> { });
+
+        assertThat(tracker.sendSnapshot(TOPIC, snapshots::add)).isTrue();
+        assertThat(snapshots).singleElement().satisfies(frame -> {
+            assertThat(frame.full()).isTrue();
+            assertThat(frame.version()).isEqualTo(2L);
+            assertThat(frame.body().get("wifiStatus").asText()).isEqualTo("Disconnected");
+        });
+    }
+
+    private static ObjectNode state(int batteryLevel, String wifiStatus) {
+        ObjectNode state = JsonNodeFactory.instance.objectNode();
+        state.put("deviceId", "D1");
+        state.put("batteryLevel", batteryLevel);
+        state.put("wifiStatus", wifiStatus);
+        return state;
+    }
+}
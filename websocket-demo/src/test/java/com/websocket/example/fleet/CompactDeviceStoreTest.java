@@ -0,0 +1,192 @@
+package com.websocket.example.fleet;
+
+import com.websocket.example.model.DeviceData;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactDeviceStoreTest {
+
+    @Test
+    void roundTripsPackedAndSpilledValues() {
+        CompactDeviceStore store = new CompactDeviceStore();
+        List<DeviceData> devices = List.of(
+                device("65a1f0c2e4b0a1b2c3d4e5f6", "DEVICE_100001", "+15551234567", "IMEI_1700000000001", 87, "128"),
+                // Leading zeros in the numeric suffix, a fully numeric id
+                device("000000000000000000000000", "DEVICE_000042", "0044207946000", "007", 0, "0"),
+                // Nothing packs: uppercase ObjectId, no numeric suffix, out-of-range battery, non-canonical storage
+                device("65A1F0C2E4B0A1B2C3D4E5F6", "tablet-kiosk", "", "IMEI_", 200, "035"),
+                device("not-an-object-id", "DEVICE_7", "+1555", "IMEI_X", -128, "35GB"),
+                device(null, "DEVICE_8", null, null, null, null));
+        devices.forEach(store::put);
+
+        assertThat(store.size()).isEqualTo(devices.size());
+        for (DeviceData device : devices) {
+            assertThat(store.get(device.getDeviceId())).usingRecursiveComparison().isEqualTo(device);
+        }
+        assertThat(store.get("DEVICE_9")).isNull();
+        assertThat((Integer) store.getStats().get("spilledValues")).isPositive();
+    }
+
+    @Test
+    void replacesRemovesAndReinsertsWithoutStaleValues() {
+        CompactDeviceStore store = new CompactDeviceStore();
+        DeviceData spilling = device(null, "DEVICE_1", "+1555", "IMEI_X", 300, "35GB");
+        DeviceData packed = device(null, "DEVICE_1", "+15550000001", "IMEI_1", 50, "35");
+
+        assertThat(store.put(spilling)).isNull();
+        assertThat(store.put(packed)).usingRecursiveComparison().isEqualTo(spilling);
+        assertThat(store.get("DEVICE_1")).usingRecursiveComparison().isEqualTo(packed);
+        assertThat(store.getStats()).containsEntry("spilledValues", 0);
+
+        assertThat(store.putIfAbsent(spilling)).isFalse();
+        assertThat(store.remove("DEVICE_1")).usingRecursiveComparison().isEqualTo(packed);
+        assertThat(store.remove("DEVICE_1")).isNull();
+        assertThat(store.get("DEVICE_1")).isNull();
+        assertThat(store.size()).isZero();
+
+        // The freed slot is reused; nothing of its previous tenant shows through
+        DeviceData other = device(null, "DEVICE_2", null, null, null, null);
+        assertThat(store.putIfAbsent(other)).isTrue();
+        assertThat(store.get("DEVICE_2")).usingRecursiveComparison().isEqualTo(other);
+        assertThat(store.putIfAbsent(spilling)).isTrue();
+        assertThat(store.get("DEVICE_1")).usingRecursiveComparison().isEqualTo(spilling);
+    }
+
+    @Test
+    void removesByDocumentIdOnlyWhileTheIdIsCurrent() {
+        CompactDeviceStore store = new CompactDeviceStore();
+        DeviceData first = device("65a1f0c2e4b0a1b2c3d4e5f6", "DEVICE_1", null, null, 80, null);
+        DeviceData recreated = device("65a1f0c2e4b0a1b2c3d4e5f7", "DEVICE_1", null, null, 81, null);
+        DeviceData spilledId = device("legacy-id-2", "DEVICE_2", null, null, 50, null);
+        store.put(first);
+        store.put(spilledId);
+
+        // Re-created under a new id: the delete of the old document must not remove it
+        store.put(recreated);
+        assertThat(store.removeById(first.getId())).isNull();
+        assertThat(store.get("DEVICE_1")).usingRecursiveComparison().isEqualTo(recreated);
+
+        assertThat(store.removeById(recreated.getId())).usingRecursiveComparison().isEqualTo(recreated);
+        assertThat(store.removeById(spilledId.getId())).usingRecursiveComparison().isEqualTo(spilledId);
+        assertThat(store.size()).isZero();
+        assertThat(store.getStats()).containsEntry("spilledValues", 0);
+
+        // The freed slots are reused without a stale id entry
+        store.put(recreated);
+        assertThat(store.removeById(recreated.getId())).usingRecursiveComparison().isEqualTo(recreated);
+        assertThat(store.get("DEVICE_1")).isNull();
+    }
+
+    @Test
+    void matchesAHashMapUnderRandomPutsAndRemoves() {
+        // Starts tiny so the columns grow and the index is rehashed, and a small key
+        // space so removals keep backward-shifting through occupied probe runs
+        CompactDeviceStore store = new CompactDeviceStore(16);
+        Map<String, DeviceData> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(7);
+
+        for (int op = 0; op < 200_000; op++) {
+            String deviceId = "DEVICE_" + random.nextInt(5_000);
+            int action = random.nextInt(10);
+            if (action < 5) {
+                DeviceData device = device(null, deviceId, "+1555" + random.nextInt(10_000_000), "IMEI_" + op,
+                        random.nextInt(101), String.valueOf(random.nextInt(512)));
+                DeviceData previous = store.put(device);
+                assertThat(previous == null).isEqualTo(!expected.containsKey(deviceId));
+                expected.put(deviceId, device);
+            } else if (action < 8) {
+                assertThat(store.remove(deviceId) == null).isEqualTo(expected.remove(deviceId) == null);
+            } else {
+                DeviceData actual = store.get(deviceId);
+                if (expected.containsKey(deviceId)) {
+                    assertThat(actual).usingRecursiveComparison().isEqualTo(expected.get(deviceId));
+                } else {
+                    assertThat(actual).isNull();
+                }
+            }
+        }
+
+        assertThat(store.size()).isEqualTo(expected.size());
+        for (int i = 0; i < 5_000; i++) {
+            String deviceId = "DEVICE_" + i;
+            if (expected.containsKey(deviceId)) {
+                assertThat(store.get(deviceId)).usingRecursiveComparison().isEqualTo(expected.get(deviceId));
+            } else {
+                assertThat(store.get(deviceId)).isNull();
+            }
+        }
+    }
+
+    @Test
+    void spillsIdentifiersLongerThanALong() {
+        CompactDeviceStore store = new CompactDeviceStore();
+        List<DeviceData> devices = new ArrayList<>();
+        devices.add(device(null, "999999999999999999", null, "IMEI_000000000000000001", null, null)); // 18 digits: packed
+        devices.add(device(null, "1234567890123456789", null, null, null, null));                        // 19 digits, no prefix
+        devices.add(device(null, "DEVICE_99999999999999999999", "+99999999999999999999", null, null, null));
+        devices.add(device(null, "DEVICE_0000000000000000000001", null, null, null, null));
+        devices.forEach(store::put);
+
+        for (DeviceData device : devices) {
+            assertThat(store.get(device.getDeviceId())).usingRecursiveComparison().isEqualTo(device);
+        }
+        // Spilled device ids are still found, and removing them drops their spill entries
+        for (DeviceData device : devices) {
+            assertThat(store.remove(device.getDeviceId())).usingRecursiveComparison().isEqualTo(device);
+        }
+        assertThat(store.size()).isZero();
+        assertThat(store.getStats()).containsEntry("spilledValues", 0);
+    }
+
+    @Test
+    void spillsValuesOnceADictionaryIsFull() {
+        CompactDeviceStore store = new CompactDeviceStore();
+        List<DeviceData> devices = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            DeviceData device = device(null, "DEVICE_" + i, null, null, null, null);
+            device.setWifiStatus("ssid-" + i); // the wifi dictionary holds 64 codes
+            devices.add(device);
+        }
+        devices.forEach(store::put);
+
+        for (DeviceData device : devices) {
+            assertThat(store.get(device.getDeviceId())).usingRecursiveComparison().isEqualTo(device);
+        }
+        assertThat(store.getStats()).containsEntry("spilledValues", 36);
+    }
+
+    @Test
+    void dictionaryRefusesNewValuesWhenFull() {
+        StringDictionary dictionary = new StringDictionary(2);
+
+        assertThat(dictionary.encode("a")).isZero();
+        assertThat(dictionary.encode("b")).isEqualTo(1);
+        assertThat(dictionary.encode("c")).isEqualTo(-1);
+        assertThat(dictionary.encode("a")).isZero();
+        assertThat(dictionary.decode(1)).isEqualTo("b");
+        assertThat(dictionary.size()).isEqualTo(2);
+    }
+
+    private static DeviceData device(String id, String deviceId, String phoneNumber, String imei,
+                                     Integer batteryLevel, String storageUsed) {
+        DeviceData device = new DeviceData();
+        device.setId(id);
+        device.setDeviceId(deviceId);
+        device.setPhoneNumber(phoneNumber);
+        device.setImei(imei);
+        device.setBatteryLevel(batteryLevel);
+        device.setStorageUsed(storageUsed);
+        device.setWifiStatus("Connected");
+        device.setSignalStrength("Good");
+        device.setModel("Google Pixel 7");
+        device.setFirmware("Android 14");
+        return device;
+    }
+}
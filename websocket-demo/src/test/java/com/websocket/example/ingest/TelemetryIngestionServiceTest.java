@@ -0,0 +1,189 @@
+package com.websocket.example.ingest;
+
+import com.websocket.example.history.TelemetryHistoryService;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.DeviceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class TelemetryIngestionServiceTest {
+
+    private final DeviceService deviceService = mock(DeviceService.class);
+    private final TelemetryHistoryService historyService = mock(TelemetryHistoryService.class);
+    // Flushes requested by offer() are not run; each test flushes when it wants to
+    private final ExecutorService blockingIoExecutor = mock(ExecutorService.class);
+
+    private TelemetryIngestionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = service(10_000, 500);
+    }
+
+    @Test
+    void mergesUpdatesPerDeviceUntilTheFlush() {
+        List<DeviceData> written = new ArrayList<>();
+        doAnswer(invocation -> written.addAll(invocation.getArgument(0))).when(deviceService).bulkUpsert(anyCollection());
+
+        assertThat(service.offer(update("D1", 80, "Connected"))).isTrue();
+        assertThat(service.offer(update("D1", 79, null))).isTrue();
+        assertThat(service.offer(update("D2", 50, null))).isTrue();
+        // Every reading reaches the history, not only the merged result
+        verify(historyService, times(3)).record(any());
+
+        assertThat(service.flush()).isEqualTo(2);
+
+        assertThat(written).hasSize(2);
+        DeviceData d1 = written.stream().filter(d -> "D1".equals(d.getDeviceId())).findFirst().orElseThrow();
+        assertThat(d1.getBatteryLevel()).isEqualTo(79);
+        assertThat(d1.getWifiStatus()).isEqualTo("Connected");
+        assertThat(service.getStats()).containsEntry("merged", 1L).containsEntry("queueDepth", 0);
+        assertThat(service.flush()).isZero();
+    }
+
+    @Test
+    void rejectsNewDevicesOnceFullButStillMergesQueuedOnes() {
+        service = service(2, 500);
+
+        assertThat(service.offer(update("D1", 80, null))).isTrue();
+        assertThat(service.offer(update("D2", 80, null))).isTrue();
+        assertThat(service.offer(update("D3", 80, null))).isFalse();
+        assertThat(service.offer(update("D1", 70, null))).isTrue();
+
+        assertThat(service.getStats()).containsEntry("rejected", 1L).containsEntry("queueDepth", 2);
+        // A rejection asks for a flush to make room; the rejected reading is not recorded
+        verify(blockingIoExecutor).execute(any());
+        verify(historyService, times(3)).record(any());
+
+        service.flush();
+        assertThat(service.offer(update("D3", 80, null))).isTrue();
+    }
+
+    @Test
+    void requeuesAFailedBatchUnderNewerTelemetry() {
+        List<DeviceData> written = new ArrayList<>();
+        // The first write fails after newer telemetry for D1 arrived meanwhile
+        doAnswer(invocation -> {
+            service.offer(update("D1", 60, null));
+            throw new IllegalStateException("Mongo unavailable");
+        }).doAnswer(invocation -> written.addAll(invocation.getArgument(0)))
+                .when(deviceService).bulkUpsert(anyCollection());
+
+        service.offer(update("D1", 80, "Connected"));
+        service.offer(update("D2", 50, null));
+
+        assertThat(service.flush()).isZero();
+        assertThat(service.getStats()).containsEntry("flushFailures", 1L).containsEntry("queueDepth", 2);
+
+        assertThat(service.flush()).isEqualTo(2);
+        DeviceData d1 = written.stream().filter(d -> "D1".equals(d.getDeviceId())).findFirst().orElseThrow();
+        assertThat(d1.getBatteryLevel()).isEqualTo(60);
+        assertThat(d1.getWifiStatus()).isEqualTo("Connected");
+        assertThat(written).extracting(DeviceData::getDeviceId).containsExactlyInAnyOrder("D1", "D2");
+    }
+
+    @Test
+    void concurrentOffersAndFailingFlushesLoseNothing() throws Exception {
+        service = service(100_000, 64);
+        // Stands in for Mongo: non-null fields of each written update are $set in order
+        Map<String, Integer> stored = new ConcurrentHashMap<>();
+        SplittableRandom failures = new SplittableRandom(11);
+        doAnswer(invocation -> {
+            if (failures.nextInt(5) == 0) {
+                throw new IllegalStateException("transient");
+            }
+            for (DeviceData update : invocation.<Collection<DeviceData>>getArgument(0)) {
+                stored.put(update.getDeviceId(), update.getBatteryLevel());
+            }
+            return null;
+        }).when(deviceService).bulkUpsert(anyCollection());
+
+        int producers = 8;
+        int devicesEach = 50;
+        int readings = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(producers + 1);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicBoolean producing = new AtomicBoolean(true);
+        try {
+            Future<?> flusher = executor.submit(() -> {
+                go.await();
+                while (producing.get()) {
+                    service.flush();
+                }
+                return null;
+            });
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                futures.add(executor.submit(() -> {
+                    go.await();
+                    // Each device has one producer, so its readings are offered in order
+                    for (int reading = 1; reading <= readings; reading++) {
+                        for (int d = 0; d < devicesEach; d++) {
+                            assertThat(service.offer(update("D" + producer + "-" + d, reading, null))).isTrue();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            producing.set(false);
+            flusher.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Drain what is left, retrying past the injected failures
+        while ((int) service.getStats().get("queueDepth") > 0) {
+            service.flush();
+        }
+        assertThat(stored).hasSize(producers * devicesEach);
+        assertThat(stored.values()).allMatch(level -> level == readings);
+        verify(deviceService, never()).bulkUpsert(argThat(batch -> batch.size() > 64));
+    }
+
+    private TelemetryIngestionService service(int queueCapacity, int batchSize) {
+        TelemetryIngestionService ingestion = new TelemetryIngestionService();
+        ReflectionTestUtils.setField(ingestion, "deviceService", deviceService);
+        ReflectionTestUtils.setField(ingestion, "historyService", historyService);
+        ReflectionTestUtils.setField(ingestion, "blockingIoExecutor", blockingIoExecutor);
+        ReflectionTestUtils.setField(ingestion, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(ingestion, "batchSize", batchSize);
+        return ingestion;
+    }
+
+    private static DeviceData update(String deviceId, Integer batteryLevel, String wifiStatus) {
+        DeviceData update = new DeviceData();
+        update.setDeviceId(deviceId);
+        update.setBatteryLevel(batteryLevel);
+        update.setWifiStatus(wifiStatus);
+        return update;
+    }
+}
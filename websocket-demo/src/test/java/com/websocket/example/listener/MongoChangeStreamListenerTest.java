@@ -0,0 +1,131 @@
+package com.websocket.example.listener;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.DeviceService;
+import com.websocket.example.support.EmbeddedMongo;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class MongoChangeStreamListenerTest {
+
+    private static EmbeddedMongo replicaSet;
+    private static MongoClient client;
+
+    private MongoTemplate mongoTemplate;
+    private ThreadPoolTaskScheduler scheduler;
+
+    @BeforeAll
+    static void startMongo() throws Exception {
+        replicaSet = EmbeddedMongo.replicaSet();
+        client = MongoClients.create(replicaSet.uri("changestream"));
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        client.close();
+        replicaSet.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = new MongoTemplate(client, "changestream");
+        mongoTemplate.getDb().drop();
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void pushesEachWriteOnceAndResumesWhereItStopped() throws Exception {
+        DeviceService firstNode = mock(DeviceService.class);
+        MongoChangeStreamListener listener = listener(firstNode);
+        awaitActive(listener);
+
+        mongoTemplate.insert(device("D1"));
+        verify(firstNode, timeout(10_000)).notifyFrontend(argThat(d -> "D1".equals(d.getDeviceId())));
+        verify(firstNode, after(500).times(1)).notifyFrontend(argThat(d -> "D1".equals(d.getDeviceId())));
+        listener.stop();
+
+        // Written while no listener runs: the restarted one picks it up, and only it
+        mongoTemplate.insert(device("D2"));
+
+        DeviceService restarted = mock(DeviceService.class);
+        MongoChangeStreamListener resumed = listener(restarted);
+        try {
+            verify(restarted, timeout(10_000)).notifyFrontend(argThat(d -> "D2".equals(d.getDeviceId())));
+            verify(restarted, after(500).never()).notifyFrontend(argThat(d -> "D1".equals(d.getDeviceId())));
+
+            // A delete only carries the document id; it still reaches the fleet state
+            String id = mongoTemplate.findOne(Query.query(Criteria.where("deviceId").is("D2")), DeviceData.class).getId();
+            mongoTemplate.remove(Query.query(Criteria.where("deviceId").is("D2")), DeviceData.class);
+            verify(restarted, timeout(10_000)).recordDeletion(id);
+        } finally {
+            resumed.stop();
+        }
+    }
+
+    @Test
+    void staysOffAgainstAStandaloneServer() {
+        try (EmbeddedMongo standalone = EmbeddedMongo.standalone();
+             MongoClient standaloneClient = MongoClients.create(standalone.uri("changestream"))) {
+            MongoChangeStreamListener listener = new MongoChangeStreamListener();
+            ReflectionTestUtils.setField(listener, "mongoTemplate", new MongoTemplate(standaloneClient, "changestream"));
+            listener.probe();
+
+            assertThat(listener.isAvailable()).isFalse();
+            assertThat(listener.getStats()).containsEntry("available", false);
+        }
+    }
+
+    private MongoChangeStreamListener listener(DeviceService deviceService) {
+        MongoChangeStreamListener listener = new MongoChangeStreamListener();
+        ReflectionTestUtils.setField(listener, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(listener, "deviceService", deviceService);
+        ReflectionTestUtils.setField(listener, "taskScheduler", scheduler);
+        ReflectionTestUtils.setField(listener, "collection", "devices");
+        ReflectionTestUtils.setField(listener, "consumerId", "test-node");
+        ReflectionTestUtils.setField(listener, "tokenFlushIntervalMs", 100L);
+        ReflectionTestUtils.setField(listener, "retryDelayMs", 500L);
+        listener.probe();
+        assertThat(listener.isAvailable()).isTrue();
+        listener.start();
+        return listener;
+    }
+
+    private static void awaitActive(MongoChangeStreamListener listener) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Boolean.TRUE.equals(listener.getStats().get("active"))) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static DeviceData device(String deviceId) {
+        DeviceData device = new DeviceData();
+        device.setDeviceId(deviceId);
+        device.setPhoneNumber("+1555" + deviceId);
+        device.setBatteryLevel(80);
+        return device;
+    }
+}
@@ -0,0 +1,21 @@
+package com.websocket.example.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeviceDataTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void keepsTheDocumentIdOutOfJson() throws Exception {
+        DeviceData device = new DeviceData();
+        device.setId("65a1f0c2e4b0a1b2c3d4e5f6");
+        device.setDeviceId("DEVICE_1");
+
+        assertThat(objectMapper.valueToTree(device).has("id")).isFalse();
+        assertThat(objectMapper.readValue("{\"id\":\"x\",\"deviceId\":\"DEVICE_1\"}", DeviceData.class).getId()).isNull();
+    }
+}
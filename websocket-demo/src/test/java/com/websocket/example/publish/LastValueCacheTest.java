@@ -0,0 +1,124 @@
+package com.websocket.example.publish;
+
+import com.websocket.example.cache.DeviceStateCache;
+import com.websocket.example.model.DeviceData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LastValueCacheTest {
+
+    private final TopicPublisher topicPublisher = mock(TopicPublisher.class);
+    private final DeviceStateCache deviceStateCache = mock(DeviceStateCache.class);
+
+    private LastValueCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(deviceStateCache.isCurrent(any())).thenReturn(true);
+        cache = cache(100, 1 << 20);
+    }
+
+    @Test
+    void servesTheFrameHandedOverByThePublish() throws Exception {
+        byte[] frame = new byte[100];
+        cache.put("/topic/a", device("A"), frame);
+
+        assertThat(cache.frame("/topic/a")).isSameAs(frame);
+        assertThat(cache.frame("/topic/b")).isNull();
+        verify(topicPublisher, never()).serialize(any());
+        assertThat(cache.getStats()).containsEntry("hits", 1L).containsEntry("misses", 1L)
+                .containsEntry("estimatedBytes", 228L);
+    }
+
+    @Test
+    void serializesAPatchedStateOnceOnFirstUse() throws Exception {
+        byte[] serialized = new byte[40];
+        when(topicPublisher.serialize(any())).thenReturn(serialized);
+        cache.put("/topic/a", device("A"), null);
+        // Charged a placeholder size until the frame exists
+        assertThat(cache.getStats()).containsEntry("estimatedBytes", 640L);
+
+        assertThat(cache.frame("/topic/a")).isSameAs(serialized);
+        assertThat(cache.frame("/topic/a")).isSameAs(serialized);
+
+        verify(topicPublisher, times(1)).serialize(any());
+        assertThat(cache.getStats()).containsEntry("lazilySerialized", 1L).containsEntry("estimatedBytes", 168L);
+    }
+
+    @Test
+    void refusesAStateThatIsNoLongerCurrent() throws Exception {
+        DeviceData older = device("A");
+        when(deviceStateCache.isCurrent(older)).thenReturn(false);
+
+        cache.put("/topic/a", older, new byte[10]);
+
+        assertThat(cache.frame("/topic/a")).isNull();
+        assertThat(cache.getStats()).containsEntry("notCurrent", 1L).containsEntry("entries", 0);
+    }
+
+    @Test
+    void invalidateDropsTheEntryAndItsBytes() throws Exception {
+        cache.put("/topic/a", device("A"), new byte[10]);
+
+        cache.invalidate("/topic/a");
+        cache.invalidate("/topic/a");
+
+        assertThat(cache.frame("/topic/a")).isNull();
+        assertThat(cache.getStats()).containsEntry("invalidations", 1L).containsEntry("estimatedBytes", 0L);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedPastMaxEntries() throws Exception {
+        cache = cache(2, 1 << 20);
+        cache.put("/topic/a", device("A"), new byte[10]);
+        cache.put("/topic/b", device("B"), new byte[10]);
+        cache.frame("/topic/a");
+
+        cache.put("/topic/c", device("C"), new byte[10]);
+
+        assertThat(cache.frame("/topic/b")).isNull();
+        assertThat(cache.frame("/topic/a")).isNotNull();
+        assertThat(cache.frame("/topic/c")).isNotNull();
+        assertThat(cache.getStats()).containsEntry("evictions", 1L).containsEntry("entries", 2);
+    }
+
+    @Test
+    void evictsPastMaxBytes() throws Exception {
+        // Room for two 100-byte frames with their entry overhead
+        cache = cache(100, 2 * 228);
+        cache.put("/topic/a", device("A"), new byte[100]);
+        cache.put("/topic/b", device("B"), new byte[100]);
+        cache.put("/topic/c", device("C"), new byte[100]);
+
+        assertThat(cache.frame("/topic/a")).isNull();
+        assertThat(cache.getStats()).containsEntry("evictions", 1L).containsEntry("estimatedBytes", 456L);
+
+        // Replacing an entry releases the bytes of the old frame
+        cache.put("/topic/c", device("C"), new byte[10]);
+        assertThat(cache.getStats()).containsEntry("evictions", 1L).containsEntry("estimatedBytes", 366L);
+    }
+
+    private LastValueCache cache(int maxEntries, long maxBytes) {
+        LastValueCache lastValueCache = new LastValueCache();
+        ReflectionTestUtils.setField(lastValueCache, "topicPublisher", topicPublisher);
+        ReflectionTestUtils.setField(lastValueCache, "deviceStateCache", deviceStateCache);
+        ReflectionTestUtils.setField(lastValueCache, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(lastValueCache, "maxBytes", maxBytes);
+        return lastValueCache;
+    }
+
+    private static DeviceData device(String deviceId) {
+        DeviceData device = new DeviceData();
+        device.setDeviceId(deviceId);
+        return device;
+    }
+}
@@ -0,0 +1,156 @@
+package com.websocket.example.search;
+
+import com.websocket.example.cache.DeviceStateCache;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.service.DeviceService;
+import com.websocket.example.service.FCMService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeviceSearchServiceTest {
+
+    private static final String PHONE = "5550000001";
+
+    private final FCMService fcmService = mock(FCMService.class);
+    private final DeviceService deviceService = mock(DeviceService.class);
+    private final DeviceStateCache deviceStateCache = mock(DeviceStateCache.class);
+
+    private DeviceSearchService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new DeviceSearchService();
+        ReflectionTestUtils.setField(service, "fcmService", fcmService);
+        ReflectionTestUtils.setField(service, "deviceService", deviceService);
+        ReflectionTestUtils.setField(service, "deviceStateCache", deviceStateCache);
+        ReflectionTestUtils.setField(service, "ttlMs", 30_000L);
+    }
+
+    @Test
+    void concurrentSearchesShareOneDeviceRequest() throws Exception {
+        CompletableFuture<DeviceData> reply = new CompletableFuture<>();
+        when(fcmService.sendDeviceInfoRequest(PHONE)).thenReturn(reply);
+
+        int searchers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(searchers);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<DeviceSearchService.SearchResult>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < searchers; i++) {
+                results.add(executor.submit(() -> {
+                    go.await();
+                    return service.search(PHONE);
+                }));
+            }
+            go.countDown();
+            for (Future<DeviceSearchService.SearchResult> result : results) {
+                DeviceSearchService.SearchResult searched = result.get(10, TimeUnit.SECONDS);
+                assertThat(searched.refreshing()).isTrue();
+                assertThat(searched.refresh()).isSameAs(reply);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(fcmService).sendDeviceInfoRequest(PHONE);
+        assertThat(service.getStats())
+                .containsEntry("fcmRequests", 1L)
+                .containsEntry("coalesced", (long) searchers - 1)
+                .containsEntry("misses", (long) searchers)
+                .containsEntry("inFlight", 1);
+    }
+
+    @Test
+    void aCompletedRequestIsNotReused() {
+        CompletableFuture<DeviceData> first = new CompletableFuture<>();
+        CompletableFuture<DeviceData> second = new CompletableFuture<>();
+        when(fcmService.sendDeviceInfoRequest(PHONE)).thenReturn(first, second);
+
+        assertThat(service.search(PHONE).refresh()).isSameAs(first);
+        first.completeExceptionally(new IllegalStateException("device did not answer"));
+        assertThat(service.getStats()).containsEntry("inFlight", 0);
+
+        assertThat(service.search(PHONE).refresh()).isSameAs(second);
+        verify(fcmService, times(2)).sendDeviceInfoRequest(PHONE);
+    }
+
+    @Test
+    void anAlreadyCompletedRequestLeavesNothingInFlight() {
+        when(fcmService.sendDeviceInfoRequest(PHONE))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("rejected")));
+
+        service.search(PHONE);
+
+        assertThat(service.getStats()).containsEntry("inFlight", 0);
+    }
+
+    @Test
+    void freshStateIsServedWithoutContactingTheDevice() {
+        DeviceData device = device();
+        long observedAt = System.currentTimeMillis();
+        when(deviceStateCache.getByPhone(PHONE)).thenReturn(new DeviceStateCache.CachedDevice(device, observedAt, 0));
+
+        DeviceSearchService.SearchResult result = service.search(PHONE);
+
+        assertThat(result.device()).isSameAs(device);
+        assertThat(result.fetchedAt()).isEqualTo(observedAt);
+        assertThat(result.refreshing()).isFalse();
+        assertThat(result.refresh()).isNull();
+        verify(fcmService, never()).sendDeviceInfoRequest(anyString());
+        assertThat(service.getStats()).containsEntry("freshHits", 1L);
+    }
+
+    @Test
+    void staleStateIsServedWhileTheDeviceIsAsked() {
+        DeviceData device = device();
+        long observedAt = System.currentTimeMillis() - 60_000;
+        when(deviceStateCache.getByPhone(PHONE)).thenReturn(new DeviceStateCache.CachedDevice(device, observedAt, 0));
+        when(fcmService.sendDeviceInfoRequest(PHONE)).thenReturn(new CompletableFuture<>());
+
+        DeviceSearchService.SearchResult result = service.search(PHONE);
+
+        assertThat(result.device()).isSameAs(device);
+        assertThat(result.fetchedAt()).isEqualTo(observedAt);
+        assertThat(result.refreshing()).isTrue();
+        assertThat(service.getStats()).containsEntry("staleHits", 1L).containsEntry("fcmRequests", 1L);
+    }
+
+    @Test
+    void stateOfUnknownAgeComesFromTheStoreAndIsRefreshed() {
+        DeviceData device = device();
+        when(deviceService.findByPhoneNumber(PHONE)).thenReturn(device);
+        when(fcmService.sendDeviceInfoRequest(PHONE)).thenReturn(new CompletableFuture<>());
+
+        DeviceSearchService.SearchResult result = service.search(PHONE);
+
+        assertThat(result.device()).isSameAs(device);
+        assertThat(result.fetchedAt()).isZero();
+        assertThat(result.refreshing()).isTrue();
+        assertThat(service.getStats()).containsEntry("staleHits", 1L);
+    }
+
+    private static DeviceData device() {
+        DeviceData device = new DeviceData();
+        device.setDeviceId("D1");
+        device.setPhoneNumber(PHONE);
+        return device;
+    }
+}
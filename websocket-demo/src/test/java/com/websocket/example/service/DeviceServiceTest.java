@@ -0,0 +1,193 @@
+package com.websocket.example.service;
+
+import com.websocket.example.broker.BrokerMode;
+import com.websocket.example.cache.DeviceStateCache;
+import com.websocket.example.conflation.DeviceUpdateConflater;
+import com.websocket.example.fleet.CompactDeviceStore;
+import com.websocket.example.fleet.FleetAggregates;
+import com.websocket.example.history.TelemetryHistoryService;
+import com.websocket.example.listener.MongoChangeStreamListener;
+import com.websocket.example.model.DeviceData;
+import com.websocket.example.publish.DeviceUpdateFrame;
+import com.websocket.example.publish.LastValueCache;
+import com.websocket.example.publish.TopicPublisher;
+import com.websocket.example.session.FramePolicy;
+import com.websocket.example.session.SessionManager;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class DeviceServiceTest {
+
+    private static final String FIREHOSE = "/topic/device-updates";
+    private static final String PHONE_TOPIC = "/topic/device-updates/5550000001";
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final TopicPublisher topicPublisher = mock(TopicPublisher.class);
+    private final DeviceUpdateConflater updateConflater = mock(DeviceUpdateConflater.class);
+    private final SessionManager sessionManager = mock(SessionManager.class);
+    private final DeviceStateCache deviceStateCache = mock(DeviceStateCache.class);
+    private final CompactDeviceStore compactDeviceStore = mock(CompactDeviceStore.class);
+    private final FleetAggregates fleetAggregates = mock(FleetAggregates.class);
+    private final TelemetryHistoryService historyService = mock(TelemetryHistoryService.class);
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<MongoChangeStreamListener> changeStreamListener = mock(ObjectProvider.class);
+
+    private DeviceService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new DeviceService();
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "topicPublisher", topicPublisher);
+        ReflectionTestUtils.setField(service, "updateConflater", updateConflater);
+        ReflectionTestUtils.setField(service, "sessionManager", sessionManager);
+        ReflectionTestUtils.setField(service, "deviceStateCache", deviceStateCache);
+        ReflectionTestUtils.setField(service, "compactDeviceStore", compactDeviceStore);
+        ReflectionTestUtils.setField(service, "fleetAggregates", fleetAggregates);
+        ReflectionTestUtils.setField(service, "lastValueCache", mock(LastValueCache.class));
+        ReflectionTestUtils.setField(service, "historyService", historyService);
+        ReflectionTestUtils.setField(service, "changeStreamListener", changeStreamListener);
+        ReflectionTestUtils.setField(service, "brokerMode", BrokerMode.SIMPLE);
+    }
+
+    @Test
+    void upsertSetsOnlyTheReportedFieldsInOneRoundTrip() {
+        DeviceData partial = new DeviceData();
+        partial.setDeviceId("D1");
+        partial.setBatteryLevel(42);
+        DeviceData merged = device("D1", "5550000001");
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), eq(DeviceService.UPSERT_RETURN_NEW),
+                eq(DeviceData.class))).thenReturn(merged);
+        when(sessionManager.hasSubscribers(PHONE_TOPIC)).thenReturn(true);
+
+        assertThat(service.upsert(partial)).isSameAs(merged);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), eq(DeviceService.UPSERT_RETURN_NEW),
+                eq(DeviceData.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(new Document("deviceId", "D1"));
+        // Fields the device did not report are left alone, so concurrent partial updates cannot clobber each other
+        assertThat(update.getValue().getUpdateObject()).isEqualTo(new Document()
+                .append("$set", new Document("batteryLevel", 42))
+                .append("$setOnInsert", new Document("deviceId", "D1")));
+        verify(mongoTemplate, never()).findOne(any(Query.class), eq(DeviceData.class));
+
+        verify(historyService).record(partial);
+        verify(deviceStateCache).write(merged);
+        verify(compactDeviceStore).put(merged);
+        verify(updateConflater).submit(merged);
+    }
+
+    @Test
+    void bulkUpsertWritesOnceAndNotifiesTheMergedDocuments() throws Exception {
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DeviceData.class)).thenReturn(bulkOps);
+        DeviceData d1 = device("D1", "5550000001");
+        DeviceData d2 = device("D2", null);
+        when(mongoTemplate.find(any(Query.class), eq(DeviceData.class))).thenReturn(List.of(d1, d2));
+        when(sessionManager.hasSubscribers(PHONE_TOPIC)).thenReturn(true);
+        when(sessionManager.hasSubscribers(FIREHOSE)).thenReturn(true);
+
+        service.bulkUpsert(List.of(device("D1", "5550000001"), device("D2", null)));
+
+        verify(bulkOps, times(2)).upsert(any(Query.class), any(Update.class));
+        verify(bulkOps).execute();
+        // One read for the whole batch
+        verify(mongoTemplate).find(any(Query.class), eq(DeviceData.class));
+        verify(deviceStateCache).write(d1);
+        verify(deviceStateCache).write(d2);
+        verify(updateConflater).submit(d1);
+        verify(topicPublisher, times(2)).publish(eq(FIREHOSE), any(Object.class), anyMap());
+    }
+
+    @Test
+    void bulkUpsertLeavesNotificationToTheChangeStream() {
+        MongoChangeStreamListener listener = mock(MongoChangeStreamListener.class);
+        when(listener.isAvailable()).thenReturn(true);
+        when(changeStreamListener.getIfAvailable()).thenReturn(listener);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DeviceData.class)).thenReturn(mock(BulkOperations.class));
+
+        service.bulkUpsert(List.of(device("D1", "5550000001")));
+
+        verify(mongoTemplate, never()).find(any(Query.class), eq(DeviceData.class));
+        verify(deviceStateCache).invalidate("D1");
+        verifyNoInteractions(updateConflater, topicPublisher);
+    }
+
+    @Test
+    void bulkUpsertOfNothingDoesNotTouchMongo() {
+        service.bulkUpsert(List.of());
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void pushesAPhoneDeviceToItsTopicAndTheFirehose() throws Exception {
+        when(sessionManager.hasSubscribers(PHONE_TOPIC)).thenReturn(true);
+        when(sessionManager.hasSubscribers(FIREHOSE)).thenReturn(true);
+        DeviceData device = device("D1", "5550000001");
+
+        service.notifyFrontend(device);
+
+        verify(updateConflater).submit(device);
+        verify(topicPublisher).publish(eq(FIREHOSE), argThat((Object frame) ->
+                        frame instanceof DeviceUpdateFrame f && f.data() == device),
+                eq(Map.of(FramePolicy.COALESCE_KEY_HEADER, "D1")));
+    }
+
+    @Test
+    void pushesOnlyToTopicsSomeoneWatches() throws Exception {
+        when(sessionManager.hasSubscribers(FIREHOSE)).thenReturn(true);
+
+        service.notifyFrontend(device("D1", "5550000001"));
+        service.notifyFrontend(device("D2", null));
+
+        verify(updateConflater, never()).submit(any());
+        verify(topicPublisher).publish(eq(FIREHOSE), argThat((Object frame) ->
+                frame instanceof DeviceUpdateFrame f && "D1".equals(f.deviceId())), anyMap());
+        verify(topicPublisher).publish(eq(FIREHOSE), argThat((Object frame) ->
+                frame instanceof DeviceUpdateFrame f && "D2".equals(f.deviceId())), anyMap());
+    }
+
+    @Test
+    void skipsAllWorkWhenNobodyWatches() throws Exception {
+        service.notifyFrontend(device("D1", "5550000001"));
+        service.notifyFrontend(device("D2", null));
+
+        verify(updateConflater, never()).submit(any());
+        verify(topicPublisher, never()).publish(anyString(), any(Object.class), anyMap());
+    }
+
+    private static DeviceData device(String deviceId, String phoneNumber) {
+        DeviceData device = new DeviceData();
+        device.setDeviceId(deviceId);
+        device.setPhoneNumber(phoneNumber);
+        device.setBatteryLevel(80);
+        return device;
+    }
+}
@@ -0,0 +1,149 @@
+package com.websocket.example.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundQueueSessionDecoratorTest {
+
+    private static final String PHONE_TOPIC = "/topic/device-updates/5550000001";
+
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    private WebSocketSession socket;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // A client that stops reading: the first write blocks until released
+        socket = mock(WebSocketSession.class);
+        when(socket.getId()).thenReturn("slow");
+        when(socket.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            written.add(((WebSocketMessage<?>) invocation.getArgument(0)).getPayload().toString());
+            return null;
+        }).when(socket).sendMessage(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        writer.shutdownNow();
+    }
+
+    @Test
+    void aFullFrameReplacesEverythingQueuedUnderItsKey() throws Exception {
+        OutboundQueueSessionDecorator session = new OutboundQueueSessionDecorator(socket, policy(1000, 8 * 1024 * 1024));
+        Future<?> stuck = block(session);
+
+        send(session, full("sub-0", "D1"), "F5");
+        send(session, patch("sub-0", "D1"), "P6");
+        send(session, full("sub-0", "D2"), "other device");
+        send(session, patch("sub-0", "D1"), "P7");
+        send(session, full("sub-1", "D1"), "other subscription");
+        // Patches never replace anything
+        assertThat(session.getQueueDepth()).isEqualTo(5);
+        assertThat(session.getCoalesced()).isZero();
+
+        send(session, full("sub-0", "D1"), "F8");
+
+        assertThat(session.getQueueDepth()).isEqualTo(3);
+        assertThat(session.getCoalesced()).isEqualTo(3);
+        release.countDown();
+        stuck.get(5, TimeUnit.SECONDS);
+        assertThat(written).containsExactly("blocker", "other device", "other subscription", "F8");
+    }
+
+    @Test
+    void dropsTheOldestDroppableFramesOverTheLimit() throws Exception {
+        OutboundQueueSessionDecorator session = new OutboundQueueSessionDecorator(socket, policy(3, 8 * 1024 * 1024));
+        Future<?> stuck = block(session);
+
+        send(session, frame(PHONE_TOPIC, false), "t1");
+        send(session, frame(PHONE_TOPIC, true), "no-drop");
+        send(session, frame("/topic/fleet-stats", false), "other destination");
+        send(session, frame(PHONE_TOPIC, false), "t2");
+        send(session, frame(PHONE_TOPIC, false), "t3");
+        session.sendMessage(new TextMessage("receipt"));
+
+        // t3 survives its own arrival and goes to make room for the receipt; the rest are never dropped
+        assertThat(session.getDropped()).isEqualTo(3);
+        assertThat(session.getQueueDepth()).isEqualTo(3);
+        release.countDown();
+        stuck.get(5, TimeUnit.SECONDS);
+        assertThat(written).containsExactly("blocker", "no-drop", "other destination", "receipt");
+    }
+
+    @Test
+    void closesTheSessionPastTheDisconnectThreshold() throws Exception {
+        OutboundQueueSessionDecorator session = new OutboundQueueSessionDecorator(socket, policy(1000, 100));
+        block(session);
+
+        String body = "x".repeat(40);
+        send(session, frame(PHONE_TOPIC, true), body);
+        send(session, frame(PHONE_TOPIC, true), body);
+        verify(socket, never()).close(any(CloseStatus.class));
+
+        send(session, frame(PHONE_TOPIC, true), body);
+
+        verify(socket).close(any(CloseStatus.class));
+        assertThat(session.getQueueDepth()).isZero();
+        // Nothing is queued for a closed session
+        send(session, frame(PHONE_TOPIC, true), body);
+        assertThat(session.getQueueDepth()).isZero();
+    }
+
+    private Future<?> block(OutboundQueueSessionDecorator session) throws InterruptedException {
+        Future<?> stuck = writer.submit(() -> {
+            session.sendMessage(new TextMessage("blocker"));
+            return null;
+        });
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        return stuck;
+    }
+
+    private static void send(OutboundQueueSessionDecorator session, FramePolicy framePolicy, String payload) throws Exception {
+        session.forFrame(framePolicy).sendMessage(new TextMessage(payload));
+    }
+
+    private static FramePolicy full(String subscription, String deviceId) {
+        return new FramePolicy(PHONE_TOPIC, subscription, deviceId, false, true);
+    }
+
+    private static FramePolicy patch(String subscription, String deviceId) {
+        return new FramePolicy(PHONE_TOPIC, subscription, deviceId, true, true);
+    }
+
+    private static FramePolicy frame(String destination, boolean noDrop) {
+        return new FramePolicy(destination, "sub-0", null, false, noDrop);
+    }
+
+    private static OutboundPolicy policy(int queueLimitMessages, int disconnectThresholdBytes) {
+        return new OutboundPolicy(1024 * 1024, queueLimitMessages, disconnectThresholdBytes, 60_000,
+                List.of("/topic/device-updates"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.websocket.example.session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueueingSubProtocolWebSocketHandlerTest {
+
+    private static final String TOPIC = "/topic/device-updates/5550000001";
+
+    private final List<String> written = new CopyOnWriteArrayList<>();
+
+    private QueueingSubProtocolWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        WebSocketSession socket = mock(WebSocketSession.class);
+        when(socket.getId()).thenReturn("s1");
+        when(socket.isOpen()).thenReturn(true);
+        when(socket.getAttributes()).thenReturn(new HashMap<>());
+        doAnswer(invocation -> {
+            written.add(((WebSocketMessage<?>) invocation.getArgument(0)).getPayload().toString());
+            return null;
+        }).when(socket).sendMessage(any());
+
+        OutboundQueueSessionDecorator session = new OutboundQueueSessionDecorator(socket, new OutboundPolicy(1024 * 1024, 1000, 8 * 1024 * 1024,
+                60_000, List.of("/topic/device-updates")));
+        WebSocketSessionRegistry registry = new WebSocketSessionRegistry();
+        registry.register(session);
+
+        handler = new QueueingSubProtocolWebSocketHandler(mock(MessageChannel.class), mock(SubscribableChannel.class), registry);
+        handler.addProtocolHandler(new StompSubProtocolHandler());
+    }
+
+    @Test
+    void readsThePolicyHeadersAndKeepsThemOffTheWire() {
+        handler.handleMessage(message(Map.of(FramePolicy.COALESCE_KEY_HEADER, "D1",
+                FramePolicy.PATCH_HEADER, "true", FramePolicy.NO_DROP_HEADER, "true", "x-other", "kept")));
+
+        assertThat(written).singleElement().satisfies(frame -> {
+            assertThat(frame).startsWith("MESSAGE\n").contains("destination:" + TOPIC, "subscription:sub-0", "x-other:kept");
+            assertThat(frame).doesNotContain(FramePolicy.COALESCE_KEY_HEADER, FramePolicy.PATCH_HEADER,
+                    FramePolicy.NO_DROP_HEADER);
+        });
+    }
+
+    @Test
+    void readsThePolicyAndStripsACopyOfTheMessage() {
+        Message<byte[]> message = message(Map.of(FramePolicy.COALESCE_KEY_HEADER, "D1", FramePolicy.NO_DROP_HEADER, "true"));
+
+        assertThat(FramePolicy.of(message.getHeaders())).isEqualTo(new FramePolicy(TOPIC, "sub-0", "D1", false, true));
+        assertThat(FramePolicy.of(message(Map.of()).getHeaders())).isEqualTo(new FramePolicy(TOPIC, "sub-0", null, false, false));
+        // Stripping copies: the original message, possibly shared by a fan-out, keeps its headers
+        Message<?> stripped = FramePolicy.strip(message);
+        assertThat(FramePolicy.of(stripped.getHeaders())).isEqualTo(new FramePolicy(TOPIC, "sub-0", null, false, false));
+        assertThat(FramePolicy.of(message.getHeaders()).coalesceKey()).isEqualTo("D1");
+    }
+
+    private static Message<byte[]> message(Map<String, String> nativeHeaders) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination(TOPIC);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        nativeHeaders.forEach(accessor::setNativeHeader);
+        return MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
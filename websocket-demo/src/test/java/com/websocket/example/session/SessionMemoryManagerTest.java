@@ -0,0 +1,117 @@
+package com.websocket.example.session;
+
+import com.websocket.example.delta.DeviceDeltaTracker;
+import com.websocket.example.transfer.ChunkedTransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionMemoryManagerTest {
+
+    private static final OutboundPolicy POLICY = new OutboundPolicy(1024 * 1024, 1000, 8 * 1024 * 1024,
+            60_000, List.of("/topic/device-updates"));
+
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    private WebSocketSession socket;
+    private OutboundQueueSessionDecorator session;
+    private SessionMemoryManager manager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // A client that stops reading: the first write blocks until released
+        socket = mock(WebSocketSession.class);
+        when(socket.getId()).thenReturn("slow");
+        when(socket.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return null;
+        }).when(socket).sendMessage(any());
+
+        session = new OutboundQueueSessionDecorator(socket, POLICY);
+        WebSocketSessionRegistry registry = new WebSocketSessionRegistry();
+        registry.register(session);
+
+        manager = new SessionMemoryManager();
+        ReflectionTestUtils.setField(manager, "sessionRegistry", registry);
+        ReflectionTestUtils.setField(manager, "chunkedTransferService", mock(ChunkedTransferService.class));
+        ReflectionTestUtils.setField(manager, "deltaTracker", mock(DeviceDeltaTracker.class));
+        ReflectionTestUtils.setField(manager, "sessionBudgetBytes", 64 * 1024L);
+        ReflectionTestUtils.setField(manager, "globalBudgetBytes", 256 * 1024 * 1024L);
+        ReflectionTestUtils.setField(manager, "idleTimeoutMs", 120_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        writer.shutdownNow();
+    }
+
+    @Test
+    void chargesTheBacklogOfASlowReaderAndClosesItOverBudget() throws Exception {
+        TextMessage frame = frame("/topic/device-data", 10_000);
+
+        writer.submit(() -> {
+            session.sendMessage(frame);
+            return null;
+        });
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Other senders queue behind the stuck write and return straight away
+        for (int i = 0; i < 9; i++) {
+            session.sendMessage(frame);
+        }
+
+        assertThat(session.getQueueDepth()).isEqualTo(9);
+        assertThat(manager.sessionBytes("slow")).isEqualTo(10L * frame.getPayloadLength());
+
+        manager.sweep();
+
+        verify(socket).close(any(CloseStatus.class));
+        assertThat(manager.getStats()).containsEntry("overBudgetEvictions", 1L);
+    }
+
+    @Test
+    void keepsASessionWithinBudget() throws Exception {
+        TextMessage frame = frame("/topic/device-data", 1_000);
+
+        writer.submit(() -> {
+            session.sendMessage(frame);
+            return null;
+        });
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        session.sendMessage(frame);
+
+        assertThat(manager.sessionBytes("slow")).isEqualTo(2L * frame.getPayloadLength());
+
+        manager.sweep();
+
+        assertThat(manager.getStats()).containsEntry("overBudgetEvictions", 0L);
+        assertThat(manager.getStats()).containsEntry("sessionBytes", 2L * frame.getPayloadLength());
+    }
+
+    private static TextMessage frame(String destination, int bodyLength) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\n\n"
+                + "x".repeat(bodyLength) + "\u0000");
+    }
+}
@@ -0,0 +1,44 @@
+package com.websocket.example.simulator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SimulatorSettingsTest {
+
+    @Test
+    void acceptsTheDefaultsAndProbabilityBounds() {
+        assertThatCode(new SimulatorSettings()::validate).doesNotThrowAnyException();
+        assertThatCode(with(settings -> {
+            settings.setBurstProbability(1.0);
+            settings.setFirmwareUpgradeProbability(0.0);
+        })::validate).doesNotThrowAnyException();
+    }
+
+    @Test
+    void rejectsProbabilitiesOutsideZeroToOne() {
+        assertInvalid(settings -> settings.setBurstProbability(1.5), "burstProbability");
+        assertInvalid(settings -> settings.setBurstProbability(Double.NaN), "burstProbability");
+        assertInvalid(settings -> settings.setBatteryDrainProbability(-0.1), "batteryDrainProbability");
+        assertInvalid(settings -> settings.setChargeProbability(2), "chargeProbability");
+        assertInvalid(settings -> settings.setStorageGrowthProbability(-1), "storageGrowthProbability");
+        assertInvalid(settings -> settings.setWifiToggleProbability(1.01), "wifiToggleProbability");
+        assertInvalid(settings -> settings.setSignalChangeProbability(-0.5), "signalChangeProbability");
+        assertInvalid(settings -> settings.setFirmwareUpgradeProbability(Double.POSITIVE_INFINITY), "firmwareUpgradeProbability");
+    }
+
+    private static void assertInvalid(Consumer<SimulatorSettings> change, String field) {
+        assertThatThrownBy(with(change)::validate)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith(field);
+    }
+
+    private static SimulatorSettings with(Consumer<SimulatorSettings> change) {
+        SimulatorSettings settings = new SimulatorSettings();
+        change.accept(settings);
+        return settings;
+    }
+}
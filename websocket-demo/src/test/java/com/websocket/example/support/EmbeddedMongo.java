@@ -0,0 +1,80 @@
+package com.websocket.example.support;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.flapdoodle.embed.mongo.commands.MongodArguments;
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.config.Storage;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.Transition;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.transitions.Start;
+import org.bson.Document;
+
+import java.util.List;
+
+/**
+ * A throwaway mongod for tests: standalone, or a single-node replica set
+ * when change streams are needed.
+ */
+public final class EmbeddedMongo implements AutoCloseable {
+
+    private static final String REPLICA_SET = "rs0";
+
+    private final TransitionWalker.ReachedState<RunningMongodProcess> process;
+    private final String hosts;
+    private final String options;
+
+    private EmbeddedMongo(TransitionWalker.ReachedState<RunningMongodProcess> process, String hosts, String options) {
+        this.process = process;
+        this.hosts = hosts;
+        this.options = options;
+    }
+
+    public static EmbeddedMongo standalone() {
+        TransitionWalker.ReachedState<RunningMongodProcess> process = Mongod.instance().start(Version.Main.V7_0);
+        ServerAddress address = process.current().getServerAddress();
+        return new EmbeddedMongo(process, address.getHost() + ":" + address.getPort(), "");
+    }
+
+    public static EmbeddedMongo replicaSet() throws InterruptedException {
+        TransitionWalker.ReachedState<RunningMongodProcess> process = new Mongod() {
+            @Override
+            public Transition<MongodArguments> mongodArguments() {
+                return Start.to(MongodArguments.class).initializedWith(MongodArguments.defaults()
+                        .withUseNoJournal(false)
+                        .withReplication(Storage.of(REPLICA_SET, 64)));
+            }
+        }.start(Version.Main.V7_0);
+        ServerAddress address = process.current().getServerAddress();
+        String member = address.getHost() + ":" + address.getPort();
+
+        try (MongoClient client = MongoClients.create("mongodb://" + member + "/?directConnection=true")) {
+            client.getDatabase("admin").runCommand(new Document("replSetInitiate", new Document("_id", REPLICA_SET)
+                    .append("members", List.of(new Document("_id", 0).append("host", member)))));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (!Boolean.TRUE.equals(client.getDatabase("admin").runCommand(new Document("hello", 1)).getBoolean("isWritablePrimary"))) {
+                if (System.currentTimeMillis() > deadline) {
+                    process.close();
+                    throw new IllegalStateException("Replica set " + REPLICA_SET + " did not elect a primary");
+                }
+                Thread.sleep(100);
+            }
+        }
+        return new EmbeddedMongo(process, member, "?replicaSet=" + REPLICA_SET);
+    }
+
+    /**
+     * Connection string for a database on this server.
+     */
+    public String uri(String database) {
+        return "mongodb://" + hosts + "/" + database + options;
+    }
+
+    @Override
+    public void close() {
+        process.close();
+    }
+}
@@ -4,6 +4,7 @@ import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
 import { HttpClient } from '@angular/common/http';
 import { WebSocketService } from './service/websocket.service';
+import { PayloadDecoderService } from './service/payload-decoder.service';
 
 @Component({
   selector: 'app-root',
@@ -21,6 +22,8 @@ export class App implements OnInit {
   private currentSubscription: any = null;
   private stompClient: any = null;
   private chunkBuffer: Map<string, any[]> = new Map();
+  // Version of the last applied snapshot/patch on the current phone topic (0 = no base yet)
+  private currentVersion = 0;
   public payloadInfo = { compressed: false, size: 0, chunks: 0 };
   
   // Session tracking
@@ -34,6 +37,7 @@ export class App implements OnInit {
 
   constructor(
     private webSocketService: WebSocketService,
+    private payloadDecoder: PayloadDecoderService,
     private cdr: ChangeDetectorRef,
     private http: HttpClient
   ) {}
@@ -42,8 +46,8 @@ export class App implements OnInit {
     // Initialize session
     this.initializeSession();
     
-    // Initial WebSocket connection
-    this.initializeWebSocket();
+    // Shared dictionary for the deflate-dict codec, then the WebSocket connection
+    this.payloadDecoder.loadDictionary().finally(() => this.initializeWebSocket());
     
     // Set up periodic connection health check
     setInterval(() => {
@@ -96,6 +100,7 @@ export class App implements OnInit {
     // Ensure WebSocket is connected before proceeding
     this.ensureWebSocketConnection(() => {
       this.subscribeToPhoneNumber(this.phoneNumber);
+      this.resumePendingTransfers();
     });
 
     this.http
@@ -173,16 +178,24 @@ export class App implements OnInit {
       return;
     }
 
-    // Subscribe to general device updates topic
-    const topic = `/topic/device-updates`;
+    // Subscribe to the phone-specific topic; the server pushes exactly one update per write
+    const topic = `/topic/device-updates/${phoneNumber}`;
+    this.currentVersion = 0;
     console.log('Subscribing to topic:', topic);
 
-    this.currentSubscription = this.stompClient.subscribe(topic, (message: any) => {
+    const subscribeHeaders = this.webSocketService.useBinaryTransport
+      ? { 'accept-encoding': this.payloadDecoder.acceptEncoding() }
+      : {};
+
+    this.currentSubscription = this.stompClient.subscribe(topic, async (message: any) => {
       console.log('🔔 WebSocket message received!');
-      console.log('Raw message:', message.body);
       
       try {
-        const update = JSON.parse(message.body);
+        const update = await this.payloadDecoder.decode(message);
+        const encoding = message.headers['content-encoding'];
+        if (encoding) {
+          console.log('Decoded', encoding, 'payload:', message.headers['x-original-size'], 'bytes');
+        }
         console.log('📦 Parsed update:', update);
         console.log('📱 Update phone number:', update.phoneNumber);
         console.log('📱 Data phone number:', update.data?.phoneNumber);
@@ -192,42 +205,97 @@ export class App implements OnInit {
         if (update.phoneNumber === phoneNumber || update.data?.phoneNumber === phoneNumber) {
           console.log('✅ Phone number matches! Processing update...');
           this.handleLargePayload(update, phoneNumber);
+          if (encoding) {
+            this.payloadInfo = { ...this.payloadInfo, compressed: true, size: Number(message.headers['x-original-size']) };
+          }
         } else {
           console.log('❌ Phone number does not match, ignoring update');
         }
       } catch (error) {
         console.error('❌ Error parsing WebSocket message:', error);
       }
-    });
+    }, subscribeHeaders);
 
     console.log('Successfully subscribed to updates for phone:', phoneNumber);
   }
 
   private handleLargePayload(update: any, phoneNumber: string) {
+    if (update.delta) {
+      // Handle JSON merge patch against the last applied version
+      this.handleDeltaPayload(update, phoneNumber);
+      return;
+    }
+    if (update.version !== undefined) {
+      if (update.version < this.currentVersion) {
+        console.log('Ignoring stale snapshot version', update.version);
+        return;
+      }
+      this.currentVersion = update.version;
+    }
+
     if (update.chunked) {
       // Handle chunked payload
       this.handleChunkedPayload(update, phoneNumber);
-    } else if (update.compressed) {
-      // Handle compressed payload
-      this.handleCompressedPayload(update, phoneNumber);
     } else {
       // Handle regular payload
       this.handleRegularPayload(update, phoneNumber);
     }
   }
 
+  private handleDeltaPayload(update: any, phoneNumber: string) {
+    if (this.currentVersion === 0 || update.version !== this.currentVersion + 1) {
+      if (update.version <= this.currentVersion) {
+        return; // already applied
+      }
+      console.log('Version gap detected:', this.currentVersion, '->', update.version);
+      this.requestResync(phoneNumber);
+      return;
+    }
+
+    const merged = this.applyMergePatch({ ...this.deviceData }, update.patch);
+    this.currentVersion = update.version;
+    this.updateDeviceData(merged, phoneNumber);
+    this.payloadInfo = { compressed: false, size: JSON.stringify(update.patch).length, chunks: 0 };
+  }
+
+  // RFC 7386 JSON merge patch
+  private applyMergePatch(target: any, patch: any): any {
+    for (const key of Object.keys(patch)) {
+      const value = patch[key];
+      if (value === null) {
+        delete target[key];
+      } else if (typeof value === 'object' && !Array.isArray(value)) {
+        target[key] = this.applyMergePatch({ ...(target[key] || {}) }, value);
+      } else {
+        target[key] = value;
+      }
+    }
+    return target;
+  }
+
+  private requestResync(phoneNumber: string) {
+    if (!this.stompClient || !this.stompClient.connected || !this.currentSubscription) {
+      return;
+    }
+    this.stompClient.send(
+      `/app/device-updates/${phoneNumber}/resync`,
+      {},
+      JSON.stringify({ subscriptionId: this.currentSubscription.id, version: this.currentVersion })
+    );
+  }
+
   private handleChunkedPayload(update: any, phoneNumber: string) {
-    const sessionId = update.sessionId;
+    const transferId = update.transferId;
     const chunkIndex = update.chunkIndex;
     const totalChunks = update.totalChunks;
 
-    // Initialize chunk buffer for this session
-    if (!this.chunkBuffer.has(sessionId)) {
-      this.chunkBuffer.set(sessionId, new Array(totalChunks));
+    // Initialize chunk buffer for this transfer
+    if (!this.chunkBuffer.has(transferId)) {
+      this.chunkBuffer.set(transferId, new Array(totalChunks));
     }
 
     // Store chunk
-    const chunks = this.chunkBuffer.get(sessionId)!;
+    const chunks = this.chunkBuffer.get(transferId)!;
     chunks[chunkIndex] = update.data;
 
     // Check if all chunks received
@@ -235,20 +303,25 @@ export class App implements OnInit {
     this.payloadInfo.chunks = receivedChunks;
 
     if (receivedChunks === totalChunks) {
-      // Reconstruct complete payload
+      // Reconstruct complete payload and verify it against the transfer checksum
       const completeData = chunks.join('');
+      this.chunkBuffer.delete(transferId);
+      const bytes = new TextEncoder().encode(completeData);
+      if (this.crc32(bytes) !== update.checksum) {
+        console.error('Checksum mismatch for transfer', transferId, '- requesting it again');
+        this.requestTransferResume(transferId, 0);
+        return;
+      }
       try {
         const deviceData = JSON.parse(completeData);
         this.updateDeviceData(deviceData, phoneNumber);
-        this.payloadInfo = { compressed: false, size: completeData.length, chunks: totalChunks };
+        this.payloadInfo = { compressed: false, size: bytes.length, chunks: totalChunks };
 
-        // Clean up
-        this.chunkBuffer.delete(sessionId);
         console.log(
           'Chunked payload reconstructed:',
           totalChunks,
           'chunks,',
-          completeData.length,
+          bytes.length,
           'bytes'
         );
       } catch (error) {
@@ -259,30 +332,37 @@ export class App implements OnInit {
     }
   }
 
-  private handleCompressedPayload(update: any, phoneNumber: string) {
-    try {
-      // Decompress data (Base64 decode + GZIP decompress)
-      const compressedData = update.data;
-      const decompressedData = this.decompressData(compressedData);
-      const deviceData = JSON.parse(decompressedData);
-
-      this.updateDeviceData(deviceData, phoneNumber);
-      this.payloadInfo = {
-        compressed: true,
-        size: update.originalSize || decompressedData.length,
-        chunks: 0,
-      };
-
-      console.log(
-        'Compressed payload decompressed:',
-        update.compressedSize,
-        '->',
-        update.originalSize,
-        'bytes'
-      );
-    } catch (error) {
-      console.error('Error decompressing payload:', error);
+  // Ask the server to re-send incomplete transfers from the first missing chunk
+  private resumePendingTransfers() {
+    this.chunkBuffer.forEach((chunks, transferId) => {
+      let firstMissing = 0;
+      while (firstMissing < chunks.length && chunks[firstMissing] !== undefined) {
+        firstMissing++;
+      }
+      this.requestTransferResume(transferId, firstMissing);
+    });
+  }
+
+  private requestTransferResume(transferId: string, fromChunk: number) {
+    if (!this.stompClient || !this.stompClient.connected || !this.currentSubscription) {
+      return;
+    }
+    this.stompClient.send(
+      `/app/transfers/${transferId}/resume`,
+      {},
+      JSON.stringify({ subscriptionId: this.currentSubscription.id, fromChunk })
+    );
+  }
+
+  private crc32(bytes: Uint8Array): number {
+    let crc = -1;
+    for (let i = 0; i < bytes.length; i++) {
+      crc ^= bytes[i];
+      for (let k = 0; k < 8; k++) {
+        crc = (crc >>> 1) ^ (0xedb88320 & -(crc & 1));
+      }
     }
+    return (crc ^ -1) >>> 0;
   }
 
   private handleRegularPayload(update: any, phoneNumber: string) {
@@ -320,16 +400,6 @@ export class App implements OnInit {
     this.cdr.detectChanges();
   }
 
-  private decompressData(compressedData: string): string {
-    // Simple Base64 decode (in real implementation, you'd need proper GZIP decompression)
-    try {
-      return atob(compressedData);
-    } catch (error) {
-      console.error('Decompression error:', error);
-      return compressedData; // Fallback to original data
-    }
-  }
-
   private generateUUID(): string {
     return 'xxxxxxxx-xxxx-4xxx-yxxx-xxxxxxxxxxxx'.replace(/[xy]/g, function(c) {
       const r = Math.random() * 16 | 0;
@@ -0,0 +1,67 @@
+import { Injectable } from '@angular/core';
+
+declare var pako: any;
+
+/**
+ * Decodes STOMP message bodies sent by the server. Plain frames are JSON text;
+ * frames with a content-encoding header carry a binary body compressed with the
+ * codec negotiated on SUBSCRIBE (accept-encoding).
+ */
+@Injectable({
+  providedIn: 'root',
+})
+export class PayloadDecoderService {
+  private dictionary: Uint8Array | null = null;
+  private dictionaryId: string | null = null;
+
+  // Fetch the shared deflate dictionary; without it only gzip is negotiated
+  public async loadDictionary(): Promise<void> {
+    if (typeof pako === 'undefined') {
+      return; // deflate-dict needs pako for raw inflate with a preset dictionary
+    }
+    try {
+      const response = await fetch('http://localhost:8080/api/compression/dictionary');
+      this.dictionary = new Uint8Array(await response.arrayBuffer());
+      this.dictionaryId = response.headers.get('X-Dictionary-Id');
+    } catch (error) {
+      console.error('Could not load compression dictionary:', error);
+    }
+  }
+
+  public acceptEncoding(): string {
+    return this.dictionary ? 'deflate-dict,gzip' : 'gzip';
+  }
+
+  public async decode(message: any): Promise<any> {
+    const encoding = message.headers['content-encoding'];
+    if (!encoding) {
+      return JSON.parse(message.body);
+    }
+
+    const bytes = this.bodyBytes(message);
+    if (encoding === 'gzip') {
+      const stream = new Blob([bytes]).stream().pipeThrough(new DecompressionStream('gzip'));
+      return JSON.parse(await new Response(stream).text());
+    }
+    if (encoding === 'deflate-dict') {
+      if (!this.dictionary || message.headers['x-dictionary-id'] !== this.dictionaryId) {
+        throw new Error('Compression dictionary mismatch');
+      }
+      return JSON.parse(pako.inflateRaw(bytes, { dictionary: this.dictionary, to: 'string' }));
+    }
+    throw new Error('Unsupported content-encoding: ' + encoding);
+  }
+
+  private bodyBytes(message: any): Uint8Array {
+    if (message.binaryBody) {
+      return message.binaryBody;
+    }
+    // stomp.js 2.x hands binary frames over as a one-char-per-byte string
+    const body: string = message.body;
+    const bytes = new Uint8Array(body.length);
+    for (let i = 0; i < body.length; i++) {
+      bytes[i] = body.charCodeAt(i) & 0xff;
+    }
+    return bytes;
+  }
+}
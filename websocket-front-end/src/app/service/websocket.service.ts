@@ -7,10 +7,14 @@ declare var Stomp: any;
   providedIn: 'root',
 })
 export class WebSocketService {
+  // Plain WebSocket transport can carry binary (compressed) frames; SockJS is text only
+  public useBinaryTransport = typeof WebSocket !== 'undefined';
+
   public connect() {
     console.log('Connecting to WebSocket...');
-    const socket = new SockJS('http://localhost:8080/ws');
-    const stompClient = Stomp.over(socket);
+    const stompClient = this.useBinaryTransport
+      ? Stomp.client('ws://localhost:8080/socket-ws')
+      : Stomp.over(new SockJS('http://localhost:8080/ws'));
     stompClient.debug = (str: string) => console.log('STOMP: ' + str);
     return stompClient;
   }